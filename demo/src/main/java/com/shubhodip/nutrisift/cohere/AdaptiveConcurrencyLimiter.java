@@ -0,0 +1,272 @@
+package com.shubhodip.nutrisift.cohere;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// AIMD concurrency limit for outbound Cohere calls. A call that completes without congestion raises the limit by
+// 1/limit (about +1 per limit's worth of calls), but only while the limit is actually being used. A 429, 5xx or
+// timeout, or a latency above tolerance x that call kind's smoothed baseline, multiplies it by the backoff ratio.
+// Calls over the limit wait in per-flow (per-uid) queues and freed permits are handed out by deficit round robin:
+// each waiting flow gets `quantum` credit per round and a call costs its endpoint's weight, so one user flooding
+// cheap calls can't starve anyone else, and cheap interactive calls go out ahead of expensive batch-like ones.
+// A full flow queue, a full overall queue or a wait past maxWaitMs fails at once with CohereUnavailableException
+// (503). Permits are handed out as futures so async callers don't block a thread; cancelling a waiting future
+// gives up its place in the queue.
+public class AdaptiveConcurrencyLimiter {
+
+    // Weight of a new sample in the per-kind latency baseline
+    private static final double BASELINE_ALPHA = 0.05;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final int maxQueue;
+    private final int maxQueuePerFlow;
+    private final int quantum;
+    private final long maxWaitMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Flows with waiting calls, in round-robin order; a flow leaves as soon as its queue is empty
+    private final Map<String, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> activeFlows = new ArrayDeque<>();
+    private int queued;
+    private final Map<String, Double> baselineMs = new HashMap<>();
+    private final AtomicLong rejected = new AtomicLong();
+    private double limit;
+    private int inFlight;
+
+    // quantum has to be at least the largest call cost, so a flow's turn always dispatches something
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio,
+                                      double latencyTolerance, int maxQueue, int maxQueuePerFlow, int quantum, long maxWaitMs) {
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyTolerance = latencyTolerance;
+        this.maxQueue = maxQueue;
+        this.maxQueuePerFlow = maxQueuePerFlow;
+        this.quantum = quantum;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    // One admitted call. kind separates latency baselines (a streamed meal plan is not a slow recipe).
+    public static final class Permit {
+        private final String kind;
+        private final long startNanos = System.nanoTime();
+        private volatile boolean congested;
+
+        private Permit(String kind) {
+            this.kind = kind;
+        }
+
+        // Cohere pushed back during this call (429, 5xx or timeout), even if a retry later succeeded
+        public void markCongested() {
+            congested = true;
+        }
+    }
+
+    private static final class Waiter {
+        private final String kind;
+        private final Flow flow;
+        private final int cost;
+        private final CompletableFuture<Permit> future = new CompletableFuture<>();
+
+        private Waiter(String kind, Flow flow, int cost) {
+            this.kind = kind;
+            this.flow = flow;
+            this.cost = cost;
+        }
+    }
+
+    private static final class Flow {
+        private final String id;
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private int deficit;
+        private boolean turnStarted;
+
+        private Flow(String id) {
+            this.id = id;
+        }
+    }
+
+    // flow: whose call this is (the uid); cost: the call's weight in the round robin
+    public CompletableFuture<Permit> acquire(String kind, String flowId, int cost) {
+        Waiter waiter;
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(kind));
+            }
+            Flow flow = flows.get(flowId);
+            if (queued >= maxQueue || (flow != null && flow.waiters.size() >= maxQueuePerFlow)) {
+                rejected.incrementAndGet();
+                return CompletableFuture.failedFuture(new CohereUnavailableException(
+                    "Cohere concurrency limit reached (" + inFlight + " in flight, " + queued + " queued"
+                    + (flow != null ? ", " + flow.waiters.size() + " of them yours" : "") + ")"));
+            }
+            if (flow == null) {
+                flow = new Flow(flowId);
+                flows.put(flowId, flow);
+                activeFlows.add(flow);
+            }
+            waiter = new Waiter(kind, flow, cost);
+            flow.waiters.add(waiter);
+            queued++;
+        } finally {
+            lock.unlock();
+        }
+        CompletableFuture.delayedExecutor(maxWaitMs, TimeUnit.MILLISECONDS).execute(() -> expire(waiter));
+        waiter.future.whenComplete((permit, failure) -> {
+            if (waiter.future.isCancelled()) {
+                withdraw(waiter);
+            }
+        });
+        return waiter.future;
+    }
+
+    // succeeded: the call got a 2xx. Failures that say nothing about Cohere's load (bad request, unreadable
+    // reply, open circuit) leave the limit alone.
+    public void release(Permit permit, boolean succeeded) {
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - permit.startNanos);
+        List<Waiter> admitted = new ArrayList<>();
+        lock.lock();
+        try {
+            boolean saturated = inFlight * 2 >= limit;
+            inFlight--;
+            if (permit.congested) {
+                decrease();
+            } else if (succeeded) {
+                Double baseline = baselineMs.get(permit.kind);
+                baselineMs.put(permit.kind, baseline == null ? latencyMs : baseline + BASELINE_ALPHA * (latencyMs - baseline));
+                if (baseline != null && latencyMs > baseline * latencyTolerance) {
+                    decrease();
+                } else if (saturated) {
+                    limit = Math.min(maxLimit, limit + 1.0 / limit);
+                }
+            }
+            while (queued > 0 && inFlight < (int) limit) {
+                admitted.add(nextWaiter());
+                inFlight++;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // Completed outside the lock, the waiters' continuations may run right here. A waiter cancelled after it was
+        // picked never sees its permit, which goes straight back.
+        for (Waiter waiter : admitted) {
+            Permit admittedPermit = new Permit(waiter.kind);
+            if (!waiter.future.complete(admittedPermit)) {
+                release(admittedPermit, false);
+            }
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flows (users) with calls waiting
+    public int getWaitingFlows() {
+        lock.lock();
+        try {
+            return activeFlows.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Calls turned away with 503 because the queue was full or the wait ran out
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    // Deficit round robin over the waiting flows; call with the lock held and queued > 0
+    private Waiter nextWaiter() {
+        while (true) {
+            Flow flow = activeFlows.peek();
+            if (!flow.turnStarted) {
+                flow.deficit += quantum;
+                flow.turnStarted = true;
+            }
+            Waiter head = flow.waiters.peek();
+            if (head.cost <= flow.deficit) {
+                flow.waiters.poll();
+                flow.deficit -= head.cost;
+                queued--;
+                if (flow.waiters.isEmpty()) {
+                    removeFlow(flow);
+                }
+                return head;
+            }
+            // Out of credit, the flow keeps what's left for its next turn
+            flow.turnStarted = false;
+            activeFlows.poll();
+            activeFlows.add(flow);
+        }
+    }
+
+    private void removeFlow(Flow flow) {
+        activeFlows.remove(flow);
+        flows.remove(flow.id);
+    }
+
+    private void decrease() {
+        limit = Math.max(minLimit, limit * backoffRatio);
+    }
+
+    private void expire(Waiter waiter) {
+        if (withdraw(waiter)) {
+            rejected.incrementAndGet();
+            waiter.future.completeExceptionally(new CohereUnavailableException("Not admitted to Cohere within " + maxWaitMs + " ms"));
+        }
+    }
+
+    // Takes a waiter out of its queue; false when it was already admitted or withdrawn
+    private boolean withdraw(Waiter waiter) {
+        lock.lock();
+        try {
+            if (!waiter.flow.waiters.remove(waiter)) {
+                return false;
+            }
+            queued--;
+            if (waiter.flow.waiters.isEmpty()) {
+                removeFlow(waiter.flow);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package com.shubhodip.nutrisift.cohere;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shubhodip.nutrisift.cohere.AdaptiveConcurrencyLimiter.Permit;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+// Single shared client for the Cohere chat API.
+// One pooled HttpClient (keep-alive connections and TLS sessions are reused across requests),
+// a read timeout per calling endpoint, bounded retries with jittered exponential backoff on 429/5xx,
+// a circuit breaker so a degraded Cohere fails requests fast instead of holding Tomcat threads,
+// and an adaptive (AIMD) limit on how many calls are in flight at once.
+@Component
+public class CohereClient {
+
+    // Calling endpoints, each with its own read timeout
+    public static final String ENDPOINT_RECIPE = "recipe";
+    public static final String ENDPOINT_SEARCH = "search";
+    public static final String ENDPOINT_MEAL_PLAN = "meal-plan";
+    // One day of a fanned-out meal plan, or the replacement meals that de-duplicate it
+    public static final String ENDPOINT_MEAL_PLAN_DAY = "meal-plan-day";
+
+    public static final String MODEL = "command-a-03-2025";
+
+    @Value("${cohere.api.key}")
+    private String apiKey;
+
+    @Value("${cohere.api.url:https://api.cohere.com/v2/chat}")
+    private String apiUrl;
+
+    @Value("${cohere.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${cohere.timeout.recipe-ms:30000}")
+    private long recipeTimeoutMs;
+
+    @Value("${cohere.timeout.search-ms:60000}")
+    private long searchTimeoutMs;
+
+    @Value("${cohere.timeout.meal-plan-ms:120000}")
+    private long mealPlanTimeoutMs;
+
+    @Value("${cohere.timeout.meal-plan-day-ms:45000}")
+    private long mealPlanDayTimeoutMs;
+
+    // Upper bound for a whole streamed response (the per-endpoint timeouts only cover its start)
+    @Value("${cohere.timeout.stream-ms:180000}")
+    private long streamTimeoutMs;
+
+    // Attempts per call including the first one
+    @Value("${cohere.retry.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${cohere.retry.base-delay-ms:500}")
+    private long retryBaseDelayMs;
+
+    @Value("${cohere.retry.max-delay-ms:5000}")
+    private long retryMaxDelayMs;
+
+    // Consecutive failed calls that open the circuit, and how long it stays open before a trial call
+    @Value("${cohere.breaker.failure-threshold:5}")
+    private int breakerFailureThreshold;
+
+    @Value("${cohere.breaker.open-ms:30000}")
+    private long breakerOpenMs;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    // Adaptive concurrency limit: starting point and bounds, multiplicative backoff on 429/5xx/timeouts or on latency
+    // above tolerance x baseline, and the bounded queue (with its longest wait) for calls over the limit
+    @Value("${cohere.limiter.initial-limit:20}")
+    private int limiterInitialLimit;
+
+    @Value("${cohere.limiter.min-limit:2}")
+    private int limiterMinLimit;
+
+    @Value("${cohere.limiter.max-limit:200}")
+    private int limiterMaxLimit;
+
+    @Value("${cohere.limiter.backoff-ratio:0.75}")
+    private double limiterBackoffRatio;
+
+    @Value("${cohere.limiter.latency-tolerance:2.0}")
+    private double limiterLatencyTolerance;
+
+    @Value("${cohere.limiter.max-queue:100}")
+    private int limiterMaxQueue;
+
+    @Value("${cohere.limiter.max-wait-ms:10000}")
+    private long limiterMaxWaitMs;
+
+    // Fair queuing of calls waiting for the limit: per-user queue bound, round-robin credit per turn and what each
+    // endpoint's call costs (interactive /recipe cheapest, batch-like /meal-plan dearest)
+    @Value("${cohere.fair-queue.max-per-user:10}")
+    private int fairQueueMaxPerUser;
+
+    @Value("${cohere.fair-queue.quantum:4}")
+    private int fairQueueQuantum;
+
+    @Value("${cohere.fair-queue.cost.recipe:1}")
+    private int recipeCallCost;
+
+    @Value("${cohere.fair-queue.cost.search:2}")
+    private int searchCallCost;
+
+    @Value("${cohere.fair-queue.cost.meal-plan:4}")
+    private int mealPlanCallCost;
+
+    @Value("${cohere.fair-queue.cost.meal-plan-day:1}")
+    private int mealPlanDayCallCost;
+
+    private final Map<String, Integer> callCosts = new HashMap<>();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, Duration> timeouts = new HashMap<>();
+    private HttpClient httpClient;
+    private CircuitBreaker circuitBreaker;
+
+    // Closes streams that run past cohere.timeout.stream-ms
+    private final ScheduledExecutorService streamWatchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cohere-stream-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    private void init() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .version(HttpClient.Version.HTTP_2);
+        if (virtualThreads) {
+            // Async completions and the dependent stages they run happen on virtual threads too
+            builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+        }
+        httpClient = builder.build();
+        timeouts.put(ENDPOINT_RECIPE, Duration.ofMillis(recipeTimeoutMs));
+        timeouts.put(ENDPOINT_SEARCH, Duration.ofMillis(searchTimeoutMs));
+        timeouts.put(ENDPOINT_MEAL_PLAN, Duration.ofMillis(mealPlanTimeoutMs));
+        timeouts.put(ENDPOINT_MEAL_PLAN_DAY, Duration.ofMillis(mealPlanDayTimeoutMs));
+        circuitBreaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMs);
+
+        callCosts.put(ENDPOINT_RECIPE, recipeCallCost);
+        callCosts.put(ENDPOINT_SEARCH, searchCallCost);
+        callCosts.put(ENDPOINT_MEAL_PLAN, mealPlanCallCost);
+        callCosts.put(ENDPOINT_MEAL_PLAN_DAY, mealPlanDayCallCost);
+        int quantum = Math.max(fairQueueQuantum, Collections.max(callCosts.values()));
+        limiter = new AdaptiveConcurrencyLimiter(limiterInitialLimit, limiterMinLimit, limiterMaxLimit,
+                limiterBackoffRatio, limiterLatencyTolerance, limiterMaxQueue, fairQueueMaxPerUser, quantum, limiterMaxWaitMs);
+        Gauge.builder("cohere.limiter.limit", limiter, AdaptiveConcurrencyLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("cohere.limiter.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight).register(meterRegistry);
+        Gauge.builder("cohere.limiter.queue", limiter, AdaptiveConcurrencyLimiter::getQueueDepth).register(meterRegistry);
+        Gauge.builder("cohere.limiter.waiting-users", limiter, AdaptiveConcurrencyLimiter::getWaitingFlows).register(meterRegistry);
+        FunctionCounter.builder("cohere.limiter.rejected", limiter, AdaptiveConcurrencyLimiter::getRejectedCount).register(meterRegistry);
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        streamWatchdog.shutdownNow();
+    }
+
+    // Chat request body for a single user message; callers add sampling parameters as needed
+    public Map<String, Object> newChatRequest(String prompt) {
+        Map<String, Object> requestBody = new HashMap<>();
+        requestBody.put("stream", false);
+        requestBody.put("model", MODEL);
+
+        Map<String, Object> message = new HashMap<>();
+        message.put("role", "user");
+        message.put("content", prompt);
+
+        requestBody.put("messages", List.of(message));
+        return requestBody;
+    }
+
+    // Send a chat request and return the text of the first content block ("" when there is none).
+    // uid identifies whose call this is for fair queuing when Cohere is at its concurrency limit.
+    public String chat(String endpoint, String uid, Map<String, Object> requestBody) {
+        return extractText(send(endpoint, uid, requestBody));
+    }
+
+    // Non-blocking chat: the request goes out through HttpClient.sendAsync and no thread waits on Cohere, neither
+    // for the response nor for retry backoff (retries are scheduled with a delayed executor). Completes with the
+    // text of the first content block, or exceptionally with the same exceptions chat() throws.
+    public CompletableFuture<String> chatAsync(String endpoint, String uid, Map<String, Object> requestBody) {
+        return limiter.acquire(endpoint, flowId(uid), callCost(endpoint)).thenCompose(permit ->
+                exchangeAsync(endpoint, requestBody, HttpResponse.BodyHandlers.ofString(), permit)
+                        .whenComplete((response, error) -> limiter.release(permit, error == null)))
+                .thenApply(response -> extractText(response.body()));
+    }
+
+    // Send a chat request and return the raw response body
+    public String send(String endpoint, String uid, Map<String, Object> requestBody) {
+        Permit permit = awaitPermit(endpoint, uid, callCost(endpoint));
+        boolean succeeded = false;
+        try {
+            HttpResponse<String> response = exchange(endpoint, requestBody, HttpResponse.BodyHandlers.ofString(), permit);
+            succeeded = true;
+            return response.body();
+        } finally {
+            limiter.release(permit, succeeded);
+        }
+    }
+
+    // Streamed chat request: onText receives every content delta as Cohere produces it and the full text is
+    // returned once the stream ends. Retries only cover getting the response started; a stream that breaks
+    // off halfway (or outlives cohere.timeout.stream-ms) fails with CohereUnavailableException.
+    public String chatStream(String endpoint, String uid, Map<String, Object> requestBody, Consumer<String> onText) {
+        Map<String, Object> streamingBody = new HashMap<>(requestBody);
+        streamingBody.put("stream", true);
+
+        // The permit covers the whole stream, its latency baseline is kept apart from plain calls
+        Permit permit = awaitPermit(endpoint + "-stream", uid, callCost(endpoint));
+        boolean succeeded = false;
+        try {
+            String text = readStream(endpoint, exchange(endpoint, streamingBody, HttpResponse.BodyHandlers.ofLines(), permit), onText);
+            succeeded = true;
+            return text;
+        } finally {
+            limiter.release(permit, succeeded);
+        }
+    }
+
+    // Relay content deltas of an SSE response until message-end and return the full text
+    private String readStream(String endpoint, HttpResponse<Stream<String>> response, Consumer<String> onText) {
+        StringBuilder text = new StringBuilder();
+        Stream<String> lines = response.body();
+        ScheduledFuture<?> deadline = streamWatchdog.schedule(lines::close, streamTimeoutMs, TimeUnit.MILLISECONDS);
+        try (lines) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                if (!line.startsWith("data:")) {
+                    continue; // event names, comments and blank separators
+                }
+                String data = line.substring(5).trim();
+                if (data.isEmpty()) {
+                    continue;
+                }
+                JsonNode event = objectMapper.readTree(data);
+                String type = event.path("type").asText();
+                if ("content-delta".equals(type)) {
+                    String delta = event.path("delta").path("message").path("content").path("text").asText("");
+                    if (!delta.isEmpty()) {
+                        text.append(delta);
+                        onText.accept(delta);
+                    }
+                } else if ("message-end".equals(type)) {
+                    break;
+                }
+            }
+        } catch (IOException | UncheckedIOException | IllegalStateException e) {
+            throw new CohereUnavailableException("Cohere " + endpoint + " stream broke off after " + text.length() + " chars: " + e.getMessage(), e);
+        } finally {
+            deadline.cancel(false);
+        }
+        return text.toString();
+    }
+
+    // One call with retries and the circuit breaker; returns the first 2xx response
+    private <B> HttpResponse<B> exchange(String endpoint, Map<String, Object> requestBody, HttpResponse.BodyHandler<B> bodyHandler, Permit permit) {
+        // Built before asking the breaker, so an unserializable body can't take the half-open trial with it
+        HttpRequest request = buildRequest(endpoint, requestBody);
+        long ticket = circuitBreaker.allowRequest();
+        if (ticket < 0) {
+            throw new CohereUnavailableException("Cohere circuit is open, failing fast");
+        }
+        try {
+            return attempt(endpoint, request, bodyHandler, permit);
+        } finally {
+            // No-op once the call recorded its outcome; otherwise (interrupted, unexpected exception) the trial is
+            // handed back so the next call can try instead of the circuit staying shut
+            circuitBreaker.releaseTrial(ticket);
+        }
+    }
+
+    private <B> HttpResponse<B> attempt(String endpoint, HttpRequest request, HttpResponse.BodyHandler<B> bodyHandler, Permit permit) {
+        String lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            long retryAfterMs = -1;
+            try {
+                HttpResponse<B> response = httpClient.send(request, bodyHandler);
+                int status = response.statusCode();
+                if (status >= 200 && status < 300) {
+                    circuitBreaker.recordSuccess();
+                    return response;
+                }
+                lastError = "HTTP " + status;
+                String errorBody = bodyText(response.body());
+                if (status != 429 && status < 500) {
+                    // Our request is wrong (bad key, bad body): retrying won't help and Cohere itself is fine
+                    circuitBreaker.recordSuccess();
+                    throw new IllegalStateException("Cohere rejected the request (" + lastError + "): " + errorBody);
+                }
+                permit.markCongested();
+                retryAfterMs = response.headers().firstValue("Retry-After").map(CohereClient::parseRetryAfterMs).orElse(-1L);
+            } catch (HttpTimeoutException e) {
+                permit.markCongested();
+                lastError = "timeout after " + request.timeout().map(Duration::toMillis).orElse(0L) + " ms";
+            } catch (IOException e) {
+                lastError = e.getClass().getSimpleName() + ": " + e.getMessage();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CohereUnavailableException("Interrupted while calling Cohere", e);
+            }
+
+            if (attempt < maxAttempts && !sleep(backoffMs(attempt, retryAfterMs))) {
+                break;
+            }
+        }
+
+        circuitBreaker.recordFailure();
+        System.err.println("Cohere " + endpoint + " call failed after " + maxAttempts + " attempts: " + lastError);
+        throw new CohereUnavailableException("Cohere is unavailable (" + lastError + ")");
+    }
+
+    // Same retries and circuit breaker as exchange(), driven by callbacks instead of a blocked thread
+    private <B> CompletableFuture<HttpResponse<B>> exchangeAsync(String endpoint, Map<String, Object> requestBody, HttpResponse.BodyHandler<B> bodyHandler, Permit permit) {
+        HttpRequest request;
+        try {
+            request = buildRequest(endpoint, requestBody);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long ticket = circuitBreaker.allowRequest();
+        if (ticket < 0) {
+            return CompletableFuture.failedFuture(new CohereUnavailableException("Cohere circuit is open, failing fast"));
+        }
+
+        CompletableFuture<HttpResponse<B>> result = new CompletableFuture<>();
+        result.whenComplete((response, error) -> circuitBreaker.releaseTrial(ticket));
+        attemptAsync(endpoint, request, bodyHandler, permit, 1, result);
+        return result;
+    }
+
+    private <B> void attemptAsync(String endpoint, HttpRequest request, HttpResponse.BodyHandler<B> bodyHandler, Permit permit, int attempt, CompletableFuture<HttpResponse<B>> result) {
+        CompletableFuture<HttpResponse<B>> sent;
+        try {
+            sent = httpClient.sendAsync(request, bodyHandler);
+        } catch (RuntimeException e) {
+            // Thrown rather than returned (e.g. a shut down client); a retry scheduled on the delayed executor
+            // would otherwise lose it and never complete the result
+            result.completeExceptionally(e);
+            return;
+        }
+        sent.whenComplete((response, error) -> {
+            String lastError;
+            long retryAfterMs = -1;
+            if (error == null) {
+                int status = response.statusCode();
+                if (status >= 200 && status < 300) {
+                    circuitBreaker.recordSuccess();
+                    result.complete(response);
+                    return;
+                }
+                lastError = "HTTP " + status;
+                if (status != 429 && status < 500) {
+                    circuitBreaker.recordSuccess();
+                    result.completeExceptionally(new IllegalStateException("Cohere rejected the request (" + lastError + "): " + bodyText(response.body())));
+                    return;
+                }
+                permit.markCongested();
+                retryAfterMs = response.headers().firstValue("Retry-After").map(CohereClient::parseRetryAfterMs).orElse(-1L);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                if (cause instanceof HttpTimeoutException) {
+                    permit.markCongested();
+                }
+                lastError = cause instanceof HttpTimeoutException
+                        ? "timeout after " + request.timeout().map(Duration::toMillis).orElse(0L) + " ms"
+                        : cause.getClass().getSimpleName() + ": " + cause.getMessage();
+            }
+
+            if (attempt < maxAttempts) {
+                CompletableFuture.delayedExecutor(backoffMs(attempt, retryAfterMs), TimeUnit.MILLISECONDS)
+                        .execute(() -> attemptAsync(endpoint, request, bodyHandler, permit, attempt + 1, result));
+                return;
+            }
+
+            circuitBreaker.recordFailure();
+            System.err.println("Cohere " + endpoint + " call failed after " + maxAttempts + " attempts: " + lastError);
+            result.completeExceptionally(new CohereUnavailableException("Cohere is unavailable (" + lastError + ")"));
+        });
+    }
+
+    private HttpRequest buildRequest(String endpoint, Map<String, Object> requestBody) {
+        try {
+            return HttpRequest.newBuilder(URI.create(apiUrl))
+                    .timeout(timeouts.getOrDefault(endpoint, Duration.ofMillis(recipeTimeoutMs)))
+                    .header("Content-Type", "application/json")
+                    .header("Authorization", "Bearer " + apiKey)
+                    .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(requestBody)))
+                    .build();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unserializable Cohere request: " + e.getMessage(), e);
+        }
+    }
+
+    // Blocking callers wait for a permit here; the limiter's own deadline bounds the wait
+    private Permit awaitPermit(String kind, String uid, int cost) {
+        try {
+            return limiter.acquire(kind, flowId(uid), cost).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new CohereUnavailableException("Could not get a Cohere permit: " + cause, cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CohereUnavailableException("Interrupted while waiting for a Cohere permit", e);
+        }
+    }
+
+    private static String flowId(String uid) {
+        return uid != null ? uid : "anonymous";
+    }
+
+    private int callCost(String endpoint) {
+        return callCosts.getOrDefault(endpoint, 1);
+    }
+
+    // Error bodies for logging; streamed bodies are drained and closed
+    private static String bodyText(Object body) {
+        if (body instanceof Stream) {
+            try (Stream<?> lines = (Stream<?>) body) {
+                return lines.map(String::valueOf).collect(Collectors.joining("\n"));
+            }
+        }
+        return String.valueOf(body);
+    }
+
+    // Text of message.content[0].text in a v2 chat response
+    @SuppressWarnings("unchecked")
+    public String extractText(String responseBody) {
+        try {
+            Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
+            if (responseMap.containsKey("message")) {
+                Map<String, Object> messageObj = (Map<String, Object>) responseMap.get("message");
+                if (messageObj.containsKey("content")) {
+                    List<Map<String, Object>> contentList = (List<Map<String, Object>>) messageObj.get("content");
+                    if (!contentList.isEmpty()) {
+                        return (String) contentList.get(0).get("text");
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Unreadable Cohere response: " + e.getMessage());
+        }
+        return "";
+    }
+
+    public String getCircuitState() {
+        return circuitBreaker.state();
+    }
+
+    // Full jitter: uniform in [0, min(max, base * 2^(attempt-1))], but never shorter than a Retry-After hint
+    private long backoffMs(int attempt, long retryAfterMs) {
+        long ceiling = Math.min(retryMaxDelayMs, retryBaseDelayMs << Math.min(attempt - 1, 20));
+        long delay = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        return retryAfterMs > 0 ? Math.min(retryMaxDelayMs, Math.max(delay, retryAfterMs)) : delay;
+    }
+
+    private static long parseRetryAfterMs(String value) {
+        try {
+            return Long.parseLong(value.trim()) * 1000;
+        } catch (NumberFormatException e) {
+            return -1; // HTTP-date form, fall back to our own backoff
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Closed -> open after N consecutive failed calls; open -> half-open after the cool-down,
+    // where a single trial call decides between closing again and re-opening. A trial that ends without an
+    // outcome is released, so the next call becomes the trial.
+    // Guarded by a ReentrantLock rather than synchronized so virtual threads never pin their carrier here.
+    static class CircuitBreaker {
+        private final int failureThreshold;
+        private final long openMs;
+        private final ReentrantLock lock = new ReentrantLock();
+        private int consecutiveFailures;
+        private long openedAt = -1;
+        private boolean trialInFlight;
+        private long trials;
+
+        CircuitBreaker(int failureThreshold, long openMs) {
+            this.failureThreshold = failureThreshold;
+            this.openMs = openMs;
+        }
+
+        // -1 to fail fast, 0 for a call while closed, otherwise the ticket of the half-open trial to pass to
+        // releaseTrial once the call is over
+        long allowRequest() {
+            lock.lock();
+            try {
+                if (openedAt < 0) {
+                    return 0;
+                }
+                if (System.currentTimeMillis() - openedAt < openMs || trialInFlight) {
+                    return -1;
+                }
+                trialInFlight = true;
+                return ++trials;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Ends the trial with this ticket if it is still in flight, leaving the circuit half-open
+        void releaseTrial(long ticket) {
+            if (ticket <= 0) {
+                return;
+            }
+            lock.lock();
+            try {
+                if (trialInFlight && ticket == trials) {
+                    trialInFlight = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void recordSuccess() {
+            lock.lock();
+            try {
+                consecutiveFailures = 0;
+                openedAt = -1;
+                trialInFlight = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void recordFailure() {
+            int failures = -1;
+            lock.lock();
+            try {
+                consecutiveFailures++;
+                if (trialInFlight || consecutiveFailures >= failureThreshold) {
+                    if (openedAt < 0) {
+                        failures = consecutiveFailures;
+                    }
+                    openedAt = System.currentTimeMillis();
+                }
+                trialInFlight = false;
+            } finally {
+                lock.unlock();
+            }
+            // Logged outside the lock, console output can block
+            if (failures > 0) {
+                System.err.println("Cohere circuit opened after " + failures + " consecutive failures");
+            }
+        }
+
+        String state() {
+            lock.lock();
+            try {
+                if (openedAt < 0) {
+                    return "closed";
+                }
+                return System.currentTimeMillis() - openedAt < openMs ? "open" : "half-open";
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.shubhodip.nutrisift.cohere;
+
+// Cohere could not be reached in time: circuit open or retries exhausted on timeouts, 429 or 5xx.
+// Controllers answer 503 for it instead of a generic 500.
+public class CohereUnavailableException extends RuntimeException {
+
+    public CohereUnavailableException(String message) {
+        super(message);
+    }
+
+    public CohereUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,83 @@
+package com.shubhodip.nutrisift.cohere;
+
+import java.util.function.Consumer;
+
+// Incremental, brace-aware extractor for the objects of the first top-level JSON array in model output.
+// Text is fed in chunks as it streams in; each array element object is handed to the consumer as soon as
+// its closing brace arrives. Prose or code fences around the array are skipped, and braces/brackets inside
+// strings (including escaped quotes) are not counted. The objects are emitted as raw JSON text, unparsed.
+public class JsonArrayElementExtractor {
+
+    private final Consumer<String> onElement;
+    private final StringBuilder element = new StringBuilder();
+
+    // 0 = before the array, 1 = inside the array between elements, >1 = inside an element
+    private int depth;
+    private boolean inString;
+    private boolean escaped;
+    private boolean arrayClosed;
+    private int elementCount;
+
+    public JsonArrayElementExtractor(Consumer<String> onElement) {
+        this.onElement = onElement;
+    }
+
+    public void feed(CharSequence chunk) {
+        for (int i = 0; i < chunk.length() && !arrayClosed; i++) {
+            accept(chunk.charAt(i));
+        }
+    }
+
+    private void accept(char c) {
+        if (depth == 0) {
+            if (c == '[') {
+                depth = 1;
+            }
+            return;
+        }
+
+        if (depth > 1) {
+            element.append(c);
+        }
+
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return;
+        }
+
+        switch (c) {
+            case '"':
+                inString = depth > 1; // Only strings inside elements matter, a stray quote between them is ignored
+                break;
+            case '{':
+            case '[':
+                if (depth == 1) {
+                    // A new element starts (nested arrays as elements are skipped, only objects are emitted)
+                    element.setLength(0);
+                    element.append(c);
+                }
+                depth++;
+                break;
+            case '}':
+            case ']':
+                depth--;
+                if (depth == 1 && c == '}') {
+                    elementCount++;
+                    onElement.accept(element.toString());
+                    element.setLength(0);
+                } else if (depth == 0) {
+                    // An empty bracket pair in the prose ("[1]") isn't the result array, keep looking
+                    arrayClosed = elementCount > 0;
+                }
+                break;
+            default:
+                break;
+        }
+    }
+}
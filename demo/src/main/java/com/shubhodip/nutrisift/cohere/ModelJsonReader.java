@@ -0,0 +1,30 @@
+package com.shubhodip.nutrisift.cohere;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+// Binds the first JSON object in model output straight into a typed value in one pass. Everything before
+// the first '{' (prose, code fences) is skipped, then Jackson's streaming parser reads from there and stops
+// at the object's matching closing brace, so trailing text is never scanned and no intermediate String or
+// Map tree is built. Returns null when the output holds no object at all.
+public final class ModelJsonReader {
+
+    private ModelJsonReader() {
+    }
+
+    public static <T> T readFirstObject(ObjectReader reader, String content) throws IOException {
+        int start = content.indexOf('{');
+        if (start < 0) {
+            return null;
+        }
+
+        StringReader source = new StringReader(content);
+        source.skip(start);
+        try (JsonParser parser = reader.createParser(source)) {
+            return reader.readValue(parser);
+        }
+    }
+}
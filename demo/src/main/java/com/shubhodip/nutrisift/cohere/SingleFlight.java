@@ -0,0 +1,84 @@
+package com.shubhodip.nutrisift.cohere;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Coalesces identical in-flight calls: the first caller for a key starts the call, callers arriving while it runs
+// get (bounded) the same result or the same exception. Nobody blocks a thread on the flight.
+// The key is forgotten as soon as the call completes, so nothing is cached past the flight itself.
+public class SingleFlight<T> {
+
+    private final String name;
+    private final long maxWaitMs;
+    private final ConcurrentHashMap<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong led = new AtomicLong();
+    private final AtomicLong joined = new AtomicLong();
+
+    public SingleFlight(String name, long maxWaitMs) {
+        this.name = name;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    // The leader's call returns a future; followers get a view of it that fails with CohereUnavailableException
+    // after maxWaitMs.
+    public CompletableFuture<T> executeAsync(String key, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> flight = new CompletableFuture<>();
+        CompletableFuture<T> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            joined.incrementAndGet();
+            return existing.copy()
+                    .orTimeout(maxWaitMs, TimeUnit.MILLISECONDS)
+                    .exceptionallyCompose(e -> CompletableFuture.failedFuture(followerFailure(e)));
+        }
+
+        led.incrementAndGet();
+        CompletableFuture<T> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            return flight;
+        }
+        result.whenComplete((value, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.completeExceptionally(unwrap(e));
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight;
+    }
+
+    // Calls that ran for real
+    public long getLedCount() {
+        return led.get();
+    }
+
+    // Calls that shared another caller's result
+    public long getJoinedCount() {
+        return joined.get();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private Throwable followerFailure(Throwable e) {
+        Throwable cause = unwrap(e);
+        if (cause instanceof TimeoutException) {
+            return new CohereUnavailableException("Timed out after " + maxWaitMs + " ms waiting for an identical " + name + " request");
+        }
+        return cause;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
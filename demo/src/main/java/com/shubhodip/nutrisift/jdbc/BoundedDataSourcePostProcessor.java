@@ -0,0 +1,64 @@
+package com.shubhodip.nutrisift.jdbc;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// In virtual-thread mode (spring.threads.virtual.enabled) the application DataSource is wrapped in a
+// BoundedDataSource sized to the connection pool; on platform threads Tomcat's pool already bounds the callers.
+// jdbc.bulkhead.available and jdbc.bulkhead.waiting report each wrapper's free permits and queued callers; they
+// are registered once every singleton exists, since a post-processor can't depend on the MeterRegistry directly.
+@Component
+public class BoundedDataSourcePostProcessor implements BeanPostProcessor, SmartInitializingSingleton {
+
+    @Autowired
+    private ObjectProvider<MeterRegistry> meterRegistry;
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${jdbc.bulkhead.max-connections:${spring.datasource.hikari.maximum-pool-size:10}}")
+    private int maxConnections;
+
+    @Value("${jdbc.bulkhead.acquire-timeout-ms:30000}")
+    private long acquireTimeoutMs;
+
+    // Bean name -> wrapper, for the gauges
+    private final Map<String, BoundedDataSource> bounded = new LinkedHashMap<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (virtualThreads && bean instanceof DataSource && !(bean instanceof BoundedDataSource)) {
+            System.out.println("Bounding DataSource '" + beanName + "' to " + maxConnections + " concurrent connections for virtual threads");
+            BoundedDataSource dataSource = new BoundedDataSource((DataSource) bean, maxConnections, acquireTimeoutMs);
+            bounded.put(beanName, dataSource);
+            return dataSource;
+        }
+        return bean;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry == null) {
+            return;
+        }
+        for (Map.Entry<String, BoundedDataSource> entry : bounded.entrySet()) {
+            Gauge.builder("jdbc.bulkhead.available", entry.getValue(), BoundedDataSource::getAvailablePermits)
+                .tag("name", entry.getKey()).register(registry);
+            Gauge.builder("jdbc.bulkhead.waiting", entry.getValue(), BoundedDataSource::getWaitingCount)
+                .tag("name", entry.getKey()).register(registry);
+        }
+    }
+}
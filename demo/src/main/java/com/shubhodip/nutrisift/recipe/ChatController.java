@@ -1,17 +1,25 @@
 package com.shubhodip.nutrisift.recipe;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
+import org.springframework.core.task.AsyncTaskExecutor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -22,356 +30,633 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.shubhodip.nutrisift.cohere.CohereClient;
+import com.shubhodip.nutrisift.cohere.CohereUnavailableException;
+import com.shubhodip.nutrisift.cohere.JsonArrayElementExtractor;
+import com.shubhodip.nutrisift.cohere.ModelJsonReader;
+import com.shubhodip.nutrisift.cohere.SingleFlight;
+import com.shubhodip.nutrisift.recipe.RecipePayloadCache.RecipePayload;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 
 @RestController
 @RequestMapping("/recipe")
 public class ChatController {
 
-    private static final String COHERE_API_URL = "https://api.cohere.com/v2/chat";
-    @Value("${cohere.api.key}")
-    private String COHERE_API_KEY;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader recipeReader = objectMapper.readerFor(Recipe.class);
+    private final ObjectReader mealPlanReader = objectMapper.readerFor(MealPlan.class);
+
+    @Autowired
+    private CohereClient cohereClient;
+
+    // /recipe requests by outcome (log_match, semantic_match, llm, coalesced): LLM round trips per 1000 requests = llm / total * 1000,
+    // LLM calls avoided by the semantic cache = semantic_match, by joining an identical in-flight call = coalesced
+    private static final String GENERATE_REQUESTS_METRIC = "recipe.generate.requests";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private IngredientNormalizer ingredientNormalizer;
+
+    // Longest a request waits on an identical in-flight Cohere call before giving up with 503
+    @Value("${cohere.single-flight.max-wait-ms:120000}")
+    private long singleFlightMaxWaitMs;
+
+    // Streaming endpoints run on the shared application task executor and outlive the request thread
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor streamExecutor;
+
+    @Value("${recipe.stream.emitter-timeout-ms:240000}")
+    private long streamEmitterTimeoutMs;
+
+    // Parsing and recipe_logs/meal_plans writes after a Cohere reply run here, off both the Tomcat threads and the
+    // HttpClient's own threads; the queue is bounded and a full queue makes the completing thread do the write itself
+    @Value("${recipe.log-executor.threads:4}")
+    private int logExecutorThreads;
+
+    @Value("${recipe.log-executor.queue-capacity:1000}")
+    private int logExecutorQueueCapacity;
+
+    private ThreadPoolExecutor logExecutor;
+
+    // meal-plan.fan-out.enabled: /recipe/meal-plan generates the seven days as concurrent calls instead of one
+    @Autowired
+    private MealPlanFanOut mealPlanFanOut;
+
+    @Value("${meal-plan.fan-out.enabled:false}")
+    private boolean mealPlanFanOutEnabled;
+
+    // meal-plan.local.enabled: compose the week from earlier plans' logged meals first, Cohere only fills the slots
+    // the catalog can't. recipe.meal-plan.requests counts plans by outcome (local, local_llm, llm).
+    @Autowired
+    private LocalMealPlanner localMealPlanner;
 
+    @Autowired
+    private MealCatalog mealCatalog;
+
+    @Value("${meal-plan.local.enabled:true}")
+    private boolean localMealPlanEnabled;
+
+    private static final String MEAL_PLAN_REQUESTS_METRIC = "recipe.meal-plan.requests";
+
+    // Single meal / single day regenerations of a stored plan allowed per user and day
+    @Value("${meal-plan.regenerate.daily-limit:20}")
+    private int regenerateDailyLimit;
+
+    // meal-plan.cache.enabled: users with the same profile signature share a pool of generated plans (outcome "cache");
+    // a served plan doesn't count towards the daily generation limit
+    @Autowired
+    private MealPlanCache mealPlanCache;
+
+    @Value("${meal-plan.cache.enabled:true}")
+    private boolean mealPlanCacheEnabled;
+
+    // A plan MealPlanPregenerator made off-peak for this user and profile is served before anything else
+    // (outcome "pregenerated"); like a shared plan it doesn't count towards the daily generation limit
+    @Autowired
+    private MealPlanPregenerator mealPlanPregenerator;
+
+    // recipe.search-pool.enabled: filter-only searches are served 8-10 recipes the user hasn't seen from a pool per
+    // filter tuple (outcome "pool", counted towards the daily search limit like any search); a pool running low or
+    // going stale is refilled by one background call. recipe.search.requests counts searches by outcome.
+    @Autowired
+    private RecipeSearchPool recipeSearchPool;
+
+    @Value("${recipe.search-pool.enabled:true}")
+    private boolean recipeSearchPoolEnabled;
+
+    private static final String SEARCH_REQUESTS_METRIC = "recipe.search.requests";
+
+    // Fair-queue identity of every pool refill call
+    private static final String SEARCH_POOL_FAIR_QUEUE_KEY = "recipe-search-pool";
+
+    private SingleFlight<String> recipeFlights;
+    private SingleFlight<String> searchFlights;
+
+    @PostConstruct
+    private void initSingleFlights() {
+        recipeFlights = new SingleFlight<>("recipe", singleFlightMaxWaitMs);
+        searchFlights = new SingleFlight<>("search", singleFlightMaxWaitMs);
+        meterRegistry.gauge("cohere.singleflight.inflight", List.of(Tag.of("endpoint", "recipe")), recipeFlights, SingleFlight::getInFlightCount);
+        meterRegistry.gauge("cohere.singleflight.inflight", List.of(Tag.of("endpoint", "search")), searchFlights, SingleFlight::getInFlightCount);
+        FunctionCounter.builder("cohere.singleflight.joined", recipeFlights, SingleFlight::getJoinedCount).tag("endpoint", "recipe").register(meterRegistry);
+        FunctionCounter.builder("cohere.singleflight.joined", searchFlights, SingleFlight::getJoinedCount).tag("endpoint", "search").register(meterRegistry);
+    }
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @PostConstruct
+    private void initLogExecutor() {
+        // Same bound and queue either way; in virtual-thread mode the workers are virtual threads
+        ThreadFactory threadFactory;
+        if (virtualThreads) {
+            threadFactory = Thread.ofVirtual().name("recipe-log-", 1).factory();
+        } else {
+            AtomicInteger threadCount = new AtomicInteger();
+            threadFactory = runnable -> new Thread(runnable, "recipe-log-" + threadCount.incrementAndGet());
+        }
+        logExecutor = new ThreadPoolExecutor(logExecutorThreads, logExecutorThreads, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(logExecutorQueueCapacity),
+            threadFactory,
+            new ThreadPoolExecutor.CallerRunsPolicy());
+        logExecutor.allowCoreThreadTimeOut(true);
+        meterRegistry.gauge("recipe.log.queue", logExecutor, executor -> executor.getQueue().size());
+    }
+
+    @PreDestroy
+    private void shutdownLogExecutor() {
+        // Let queued log writes finish
+        logExecutor.shutdown();
+        try {
+            logExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Same normalized ingredients in any order and spelling -> same flight
+    private String ingredientFlightKey(String ingredients) {
+        return String.join(" ", new TreeSet<>(ingredientNormalizer.normalizeQuery(ingredients)));
+    }
+
+    private String searchFlightKey(RecipeSearchRequest request) {
+        return String.join("|",
+            String.valueOf(request.getQuery()).trim().toLowerCase(),
+            String.valueOf(request.getDiet()),
+            String.valueOf(request.getCuisine()),
+            String.valueOf(request.getCourse()),
+            String.valueOf(request.getCalorieRange()),
+            String.valueOf(request.getOrigin()));
+    }
+
+    // /recipe, /recipe/search and /recipe/meal-plan return futures: the Tomcat thread is released as soon as the
+    // Cohere call is sent, the reply arrives through HttpClient.sendAsync and is parsed and logged on logExecutor
     @PostMapping
-    public ResponseEntity<Object> generateRecipe(@RequestBody RecipeRequest request) {
+    public CompletableFuture<ResponseEntity<Object>> generateRecipe(@RequestBody RecipeRequest request) {
         try {
             // Track API usage without enforcing limits
             apiUsageDAO.trackApiUsage(request.getUid(), request.getMail(), "generate-recipe");
             
             // First try to find a matching recipe in the logs
-            List<String> possibleRecipes = savedRecipeDAO.findRecipesByIngredients(request.getIngredients());
-            
-            // If we found matching recipes in our logs
-            if (possibleRecipes != null && !possibleRecipes.isEmpty()) {
-                // Get the first (best) match
-                String recipeJson = possibleRecipes.get(0);
-                Map<String, Object> recipeMap = objectMapper.readValue(recipeJson, Map.class);
-                
-                // Ensure all required fields exist (with defaults if missing)
-                if (!recipeMap.containsKey("calories")) recipeMap.put("calories", "Not available");
-                if (!recipeMap.containsKey("diet")) recipeMap.put("diet", "Not specified");
-                if (!recipeMap.containsKey("origin")) recipeMap.put("origin", "Not specified");
-                if (!recipeMap.containsKey("course")) recipeMap.put("course", "Not specified");
-                if (!recipeMap.containsKey("cuisine")) recipeMap.put("cuisine", "Not specified");
-                
-                // Log that we served a cached recipe
-                savedRecipeDAO.saveRecipelogs(
-                    request.getUid(), 
-                    request.getMail(), 
-                    "Retrieved from logs", 
-                    request.getIngredients(), 
-                    objectMapper.writeValueAsString(recipeMap)
-                );
-                
-                return ResponseEntity.ok(recipeMap);
+            RecipePayload loggedRecipe = findLoggedRecipe(request);
+            if (loggedRecipe != null) {
+                return CompletableFuture.completedFuture(ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(loggedRecipe.getJson()));
             }
             
             // If no recipe found in logs, fallback to Cohere API
-            // Create enhanced prompt format with additional recipe information
-            String prompt = String.format(
-                "Suggest a creative recipe using only these ingredients: %s. " +
-                "Respond in this JSON format: " +
-                "{" +
-                "\"title\": \"Recipe Name\", " +
-                "\"ingredients\": [\"ingredient 1\", \"ingredient 2\", ...], " +
-                "\"steps\": [\"step 1\", \"step 2\", ...(in detail instructions)], " +
-                "\"calories\": \"approximate calories per serving\", " +
-                "\"diet\": \"dietary category (e.g., vegetarian, keto, vegan)\", " +
-                "\"origin\": \"specific geographical origin of the recipe\", " +
-                "\"course\": \"type of meal (e.g., appetizer, main dish, dessert)\", " +
-                "\"cuisine\": \"type of cuisine (e.g., Indian, Italian, Mexican)\"" +
-                "}",
-                request.getIngredients()
-            );
-
-            // Create HTTP headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + COHERE_API_KEY);
-
-            // Create request body
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("stream", false);
-            requestBody.put("model", "command-a-03-2025");
-            
-            Map<String, Object> message = new HashMap<>();
-            message.put("role", "user");
-            message.put("content", prompt);
-            
-            requestBody.put("messages", List.of(message));
+            String prompt = buildRecipePrompt(request.getIngredients());
 
-            // Create HTTP entity with headers and body
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            // Make the API call
-            RestTemplate restTemplate = new RestTemplate();
-            ResponseEntity<String> response = restTemplate.exchange(
-                COHERE_API_URL, 
-                HttpMethod.POST, 
-                entity, 
-                String.class
-            );
-            
-            // Extract the recipe JSON from the response
-            String responseBody = response.getBody();
-            Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-            
-            // Extract the message content from the Cohere response
-            String content = "";
-            if (responseMap.containsKey("message")) {
-                Map<String, Object> messageObj = (Map<String, Object>) responseMap.get("message");
-                if (messageObj.containsKey("content")) {
-                    List<Map<String, Object>> contentList = (List<Map<String, Object>>) messageObj.get("content");
-                    if (!contentList.isEmpty()) {
-                        content = (String) contentList.get(0).get("text");
-                    }
+            // Call Cohere through the shared client and take the message text.
+            // Identical ingredient lists already being generated join that call instead of making their own.
+            boolean[] calledCohere = new boolean[1];
+            return recipeFlights.executeAsync(ingredientFlightKey(request.getIngredients()), () -> {
+                calledCohere[0] = true;
+                return cohereClient.chatAsync(CohereClient.ENDPOINT_RECIPE, request.getUid(), cohereClient.newChatRequest(prompt));
+            }).thenApplyAsync(content -> {
+                String generateSource = calledCohere[0] ? RecipeDAO.SOURCE_GENERATE : RecipeDAO.SOURCE_COALESCED;
+                meterRegistry.counter(GENERATE_REQUESTS_METRIC, "outcome", calledCohere[0] ? "llm" : "coalesced").increment();
+                try {
+                    return ResponseEntity.<Object>ok(finishGeneratedRecipe(request, prompt, content, generateSource));
+                } catch (Exception e) {
+                    throw new CompletionException(e);
                 }
-            }
-            
-            // Extract JSON from the response using regex
-            Pattern pattern = Pattern.compile("\\{.*\\}", Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(content);
+            }, logExecutor).exceptionally(this::generateErrorResponse);
 
-            if (matcher.find()) {
-                String recipeJson = matcher.group();
-                Map<String, Object> recipeMap = objectMapper.readValue(recipeJson, Map.class);
-                
-                // Ensure all required fields exist (with defaults if missing)
-                if (!recipeMap.containsKey("calories")) recipeMap.put("calories", "Not available");
-                if (!recipeMap.containsKey("diet")) recipeMap.put("diet", "Not specified");
-                if (!recipeMap.containsKey("origin")) recipeMap.put("origin", "Not specified");
-                if (!recipeMap.containsKey("course")) recipeMap.put("course", "Not specified");
-                if (!recipeMap.containsKey("cuisine")) recipeMap.put("cuisine", "Not specified");
-                
-                // Save recipe logs using the DAO instance
-                savedRecipeDAO.saveRecipelogs(request.getUid(), request.getMail(), prompt, request.getIngredients(), objectMapper.writeValueAsString(recipeMap));
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(generateErrorResponse(e));
+        }
+    }
+
+    private ResponseEntity<Object> generateErrorResponse(Throwable failure) {
+        Throwable e = unwrap(failure);
+        // Cohere down or overloaded is a 503 so clients can tell it apart from our own failures
+        HttpStatus status = e instanceof CohereUnavailableException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("title", "Error");
+        errorResponse.put("ingredients", List.of());
+        errorResponse.put("steps", List.of("Sorry, there was an error generating your recipe: " + e.getMessage()));
+        errorResponse.put("calories", "Not available");
+        errorResponse.put("diet", "Not specified");
+        errorResponse.put("origin", "Not specified");
+        errorResponse.put("course", "Not specified");
+        errorResponse.put("cuisine", "Not specified");
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+
+    // Failures inside a future chain arrive wrapped in CompletionException
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    // Best logged recipe for the ingredients (exact index match, then semantic near miss), with its hit recorded; null on a miss
+    private RecipePayload findLoggedRecipe(RecipeRequest request) {
+        List<RecipePayload> possibleRecipes = savedRecipeDAO.findRecipesByIngredients(request.getIngredients());
+        String matchOutcome = "log_match";
         
-                return ResponseEntity.ok(recipeMap);
-            } else {
-                // Fallback if no JSON found
-                Map<String, Object> errorRecipe = new HashMap<>();
-                errorRecipe.put("title", "Recipe Not Found");
-                errorRecipe.put("ingredients", List.of());
-                errorRecipe.put("steps", List.of("Sorry, I couldn't generate a recipe."));
-                errorRecipe.put("calories", "Not available");
-                errorRecipe.put("diet", "Not specified");
-                errorRecipe.put("origin", "Not specified");
-                errorRecipe.put("course", "Not specified");
-                errorRecipe.put("cuisine", "Not specified");
-                return ResponseEntity.ok(errorRecipe);
+        // Near misses: fall back to the closest logged recipe by ingredient similarity
+        if (possibleRecipes == null || possibleRecipes.isEmpty()) {
+            RecipePayload similarRecipe = savedRecipeDAO.findSimilarRecipe(request.getIngredients());
+            if (similarRecipe != null) {
+                possibleRecipes = List.of(similarRecipe);
+                matchOutcome = "semantic_match";
             }
+        }
+        
+        if (possibleRecipes == null || possibleRecipes.isEmpty()) {
+            return null;
+        }
+        
+        // Get the first (best) match, already defaulted and serialized
+        RecipePayload recipe = possibleRecipes.get(0);
+        
+        // Log that we served a cached recipe (a hit row, not another copy of the recipe)
+        savedRecipeDAO.recordRecipeHit(request.getUid(), recipe, RecipeDAO.SOURCE_CACHE);
+        meterRegistry.counter(GENERATE_REQUESTS_METRIC, "outcome", matchOutcome).increment();
+        return recipe;
+    }
 
-        } catch (Exception e) {
-            Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("title", "Error");
-            errorResponse.put("ingredients", List.of());
-            errorResponse.put("steps", List.of("Sorry, there was an error generating your recipe: " + e.getMessage()));
-            errorResponse.put("calories", "Not available");
-            errorResponse.put("diet", "Not specified");
-            errorResponse.put("origin", "Not specified");
-            errorResponse.put("course", "Not specified");
-            errorResponse.put("cuisine", "Not specified");
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+    // Create enhanced prompt format with additional recipe information
+    private String buildRecipePrompt(String ingredients) {
+        return String.format(
+            "Suggest a creative recipe using only these ingredients: %s. " +
+            "Respond in this JSON format: " +
+            "{" +
+            "\"title\": \"Recipe Name\", " +
+            "\"ingredients\": [\"ingredient 1\", \"ingredient 2\", ...], " +
+            "\"steps\": [\"step 1\", \"step 2\", ...(in detail instructions)], " +
+            "\"calories\": \"approximate calories per serving\", " +
+            "\"diet\": \"dietary category (e.g., vegetarian, keto, vegan)\", " +
+            "\"origin\": \"specific geographical origin of the recipe\", " +
+            "\"course\": \"type of meal (e.g., appetizer, main dish, dessert)\", " +
+            "\"cuisine\": \"type of cuisine (e.g., Indian, Italian, Mexican)\"" +
+            "}",
+            ingredients
+        );
+    }
+
+    // Turn the generated text into the recipe response and log it; a "Recipe Not Found" placeholder when it holds no JSON
+    private Recipe finishGeneratedRecipe(RecipeRequest request, String prompt, String content, String source) throws Exception {
+        // Bind the first JSON object in the reply straight into a Recipe; missing fields get their defaults while binding
+        Recipe recipe = ModelJsonReader.readFirstObject(recipeReader, content);
+
+        if (recipe != null) {
+            // Save recipe logs using the DAO instance
+            logRecipe(request.getUid(), request.getMail(), prompt, request.getIngredients(), objectMapper.writeValueAsString(recipe), source);
+        
+            return recipe;
+        } else {
+            // Fallback if no JSON found
+            Recipe errorRecipe = new Recipe();
+            errorRecipe.setTitle("Recipe Not Found");
+            errorRecipe.setSteps(List.of("Sorry, I couldn't generate a recipe."));
+            return errorRecipe;
         }
     }
 
     @PostMapping("/search")
-    public ResponseEntity<Object> searchRecipes(@RequestBody RecipeSearchRequest request) {
+    public CompletableFuture<ResponseEntity<Object>> searchRecipes(@RequestBody RecipeSearchRequest request) {
         try {
             // Check if user has exceeded daily search limit (3 per day)
             if (!apiUsageDAO.checkAndUpdateApiUsage(request.getUid(), request.getMail(), "search", 3)) {
                 Map<String, Object> errorResponse = new HashMap<>();
                 errorResponse.put("error", "Rate Limit Exceeded, You have reached the daily limit (3) for recipe searches. Please try again tomorrow.");
-                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse);
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse));
             }
             
-            // Create search prompt for multiple recipes
-            StringBuilder promptBuilder = new StringBuilder();
+            // Pooled recipes for the same filters this user hasn't seen yet
+            String poolKey = searchPoolKey(request);
+            List<Recipe> pooledRecipes = poolKey != null ? takePooledRecipes(request, poolKey) : null;
+            if (pooledRecipes != null) {
+                return CompletableFuture.completedFuture(ResponseEntity.ok(pooledRecipes));
+            }
             
             // Add current timestamp to make each request unique
             long timestamp = System.currentTimeMillis();
+            String prompt = buildSearchPrompt(request, timestamp);
+            Map<String, Object> requestBody = newSearchChatRequest(prompt, timestamp);
             
-            // Request variety in recipes
-            promptBuilder.append("Find me 8-10 unique and different recipes (IMPORTANT: ensure variety and avoid repeating recipes from previous requests). ");
-            promptBuilder.append("This is request timestamp: ").append(timestamp).append(". ");
-            
-            // Add search criteria to the prompt
-            if (request.getQuery() != null && !request.getQuery().trim().isEmpty()) {
-                promptBuilder.append("Matching the search query: ").append(request.getQuery()).append(". ");
-            }
-            
-            // Add dietary preferences if specified
-            if (request.getDiet() != null && !request.getDiet().equals("any")) {
-                promptBuilder.append("Recipes should be ").append(request.getDiet()).append(". ");
-            }
-            
-            // Add cuisine type if specified
-            if (request.getCuisine() != null && !request.getCuisine().equals("any")) {
-                promptBuilder.append("From ").append(request.getCuisine()).append(" cuisine. ");
-            }
-            
-            // Add course type if specified
-            if (request.getCourse() != null && !request.getCourse().equals("any")) {
-                promptBuilder.append("For ").append(request.getCourse()).append(". ");
-            }
-            
-            // Add calorie range if specified
-            if (request.getCalorieRange() != null && !request.getCalorieRange().equals("any")) {
-                switch (request.getCalorieRange()) {
-                    case "under300":
-                        promptBuilder.append("Under 300 calories. ");
-                        break;
-                    case "300-500":
-                        promptBuilder.append("Between 300-500 calories. ");
-                        break;
-                    case "500-800":
-                        promptBuilder.append("Between 500-800 calories. ");
-                        break;
-                    case "over800":
-                        promptBuilder.append("Over 800 calories. ");
-                        break;
+            // Call Cohere through the shared client and take the message text.
+            // The prompt carries a timestamp, so identical searches are coalesced on their filter tuple instead.
+            boolean[] calledCohere = new boolean[1];
+            return searchFlights.executeAsync(searchFlightKey(request), () -> {
+                calledCohere[0] = true;
+                return cohereClient.chatAsync(CohereClient.ENDPOINT_SEARCH, request.getUid(), requestBody);
+            }).thenApplyAsync(content -> {
+                String searchSource = calledCohere[0] ? RecipeDAO.SOURCE_SEARCH : RecipeDAO.SOURCE_COALESCED;
+                meterRegistry.counter(SEARCH_REQUESTS_METRIC, "outcome", calledCohere[0] ? "llm" : "coalesced").increment();
+                try {
+                    return finishSearch(request, prompt, content, searchSource);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
                 }
+            }, logExecutor).exceptionally(this::searchErrorResponse);
+
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(searchErrorResponse(e));
+        }
+    }
+
+    // Parse and log the generated search results; a "No Recipes Found" placeholder when the reply holds none
+    private ResponseEntity<Object> finishSearch(RecipeSearchRequest request, String prompt, String content, String searchSource) throws Exception {
+        List<Recipe> recipes = parseSearchRecipes(request, prompt, content, searchSource);
+        
+        if (!recipes.isEmpty()) {
+            String poolKey = searchPoolKey(request);
+            if (poolKey != null) {
+                recipeSearchPool.add(poolKey, request.getUid(), recipes);
             }
+            return ResponseEntity.ok(recipes);
+        } else {
+            // Fallback if no JSON array found
+            List<Map<String, Object>> fallbackRecipes = new ArrayList<>();
+            Map<String, Object> errorRecipe = new HashMap<>();
+            errorRecipe.put("id", 1);
+            errorRecipe.put("title", "No Recipes Found");
+            errorRecipe.put("ingredients", List.of("Please try a different search query"));
+            errorRecipe.put("steps", List.of("Sorry, I couldn't find any recipes matching your criteria."));
+            errorRecipe.put("calories", "Not available");
+            errorRecipe.put("diet", "Not specified");
+            errorRecipe.put("origin", "Not specified");
+            errorRecipe.put("course", "Not specified");
+            errorRecipe.put("cuisine", "Not specified");
+            errorRecipe.put("prepTime", 0);
+            errorRecipe.put("cookTime", 0);
+            fallbackRecipes.add(errorRecipe);
             
-            // Add origin if specified
-            if (request.getOrigin() != null && !request.getOrigin().equals("any")) {
-                promptBuilder.append("From ").append(request.getOrigin()).append(" origin. ");
+            return ResponseEntity.ok(fallbackRecipes);
+        }
+    }
+
+    // Pull the recipe objects out of the reply with the brace-aware extractor and log each one;
+    // like the streaming search, an object that doesn't bind is skipped rather than failing the rest
+    private List<Recipe> parseSearchRecipes(RecipeSearchRequest request, String prompt, String content, String searchSource) throws Exception {
+        List<String> recipeObjects = new ArrayList<>();
+        new JsonArrayElementExtractor(recipeObjects::add).feed(content);
+        
+        List<Recipe> recipes = new ArrayList<>();
+        for (String recipeObject : recipeObjects) {
+            Recipe recipe;
+            try {
+                recipe = prepareSearchRecipe(recipeObject, recipes.size());
+            } catch (Exception e) {
+                System.err.println("Skipping unreadable search result: " + e.getMessage());
+                continue;
             }
-            
-            // Explicit instruction for variety
-            promptBuilder.append("IMPORTANT: Each recipe should be creative and different from one another. ");
-            
-            // Add JSON format specification
-            promptBuilder.append("Respond with an array of recipe objects in this JSON format: ");
-            promptBuilder.append("[{");
-            promptBuilder.append("\"title\": \"Recipe Name\", ");
-            promptBuilder.append("\"ingredients\": [\"ingredient 1\", \"ingredient 2\", ...], ");
-            promptBuilder.append("\"steps\": [\"step 1\", \"step 2\", ...], ");
-            promptBuilder.append("\"calories\": \"approximate calories per serving\", ");
-            promptBuilder.append("\"diet\": \"dietary category\", ");
-            promptBuilder.append("\"origin\": \"geographical origin\", ");
-            promptBuilder.append("\"course\": \"type of meal\", ");
-            promptBuilder.append("\"cuisine\": \"type of cuisine\", ");
-            promptBuilder.append("\"prepTime\": \"preparation time in minutes\", ");
-            promptBuilder.append("\"cookTime\": \"cooking time in minutes\"");
-            promptBuilder.append("}]");
-            
-            // Create HTTP headers
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + COHERE_API_KEY);
-
-            // Create request body with additional parameters to increase variety
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("stream", false);
-            requestBody.put("model", "command-a-03-2025");
-            requestBody.put("temperature", 0.9); // Higher temperature = more randomness
-            requestBody.put("p", 0.75); // Nucleus sampling for more variety
-            
-            // Add a seed based on timestamp to prevent repetitive outputs
-            requestBody.put("seed", timestamp % 1000000);
-            
-            Map<String, Object> message = new HashMap<>();
-            message.put("role", "user");
-            message.put("content", promptBuilder.toString());
-            
-            requestBody.put("messages", List.of(message));
+            logRecipe(request.getUid(), request.getMail(), prompt, objectMapper.writeValueAsString(recipe.getIngredients()), objectMapper.writeValueAsString(recipe), searchSource);
+            recipes.add(recipe);
+        }
+        return recipes;
+    }
 
-            // Create HTTP entity with headers and body
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            
-            // Make the API call
-            RestTemplate restTemplate = new RestTemplate();
-            ResponseEntity<String> response = restTemplate.exchange(
-                COHERE_API_URL, 
-                HttpMethod.POST, 
-                entity, 
-                String.class
-            );
-            
-            // Extract the recipe JSON from the response
-            String responseBody = response.getBody();
-            Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
-            
-            // Extract the message content from the Cohere response
-            String content = "";
-            if (responseMap.containsKey("message")) {
-                Map<String, Object> messageObj = (Map<String, Object>) responseMap.get("message");
-                if (messageObj.containsKey("content")) {
-                    List<Map<String, Object>> contentList = (List<Map<String, Object>>) messageObj.get("content");
-                    if (!contentList.isEmpty()) {
-                        content = (String) contentList.get(0).get("text");
+    // Only a flight's leader stores what Cohere returned; a coalesced follower parsed the same reply, so it records
+    // a hit on the leader's row instead of writing the recipe again
+    private void logRecipe(String uid, String mail, String prompt, String ingredients, String recipeJson, String source) {
+        if (RecipeDAO.SOURCE_COALESCED.equals(source)) {
+            savedRecipeDAO.recordResultHit(uid, recipeJson, source);
+        } else {
+            savedRecipeDAO.saveRecipelogs(uid, mail, prompt, ingredients, recipeJson, source);
+        }
+    }
+
+    // The search pool key, null when the pool is off or the request has a free-text query
+    private String searchPoolKey(RecipeSearchRequest request) {
+        return recipeSearchPoolEnabled ? RecipeSearchPool.key(request) : null;
+    }
+
+    // 8-10 pooled recipes the user hasn't seen, with fresh ids; null when the pool can't serve them.
+    // The caller has already counted the search against the user's daily limit.
+    private List<Recipe> takePooledRecipes(RecipeSearchRequest request, String poolKey) {
+        List<Recipe> recipes = recipeSearchPool.take(poolKey, request.getUid(), 8, 10);
+        if (recipes == null) {
+            return null;
+        }
+        for (int i = 0; i < recipes.size(); i++) {
+            recipes.get(i).setId(System.nanoTime() + i);
+        }
+        meterRegistry.counter(SEARCH_REQUESTS_METRIC, "outcome", "pool").increment();
+        refillSearchPool(request, poolKey);
+        return recipes;
+    }
+
+    // One background search for the same filters when the pool is running low or going stale.
+    // The results are logged under the user just served but not marked seen by them.
+    private void refillSearchPool(RecipeSearchRequest request, String poolKey) {
+        if (!recipeSearchPool.needsRefill(poolKey) || !recipeSearchPool.startRefill(poolKey)) {
+            return;
+        }
+        try {
+            long timestamp = System.currentTimeMillis();
+            String prompt = buildSearchPrompt(request, timestamp);
+            cohereClient.chatAsync(CohereClient.ENDPOINT_SEARCH, SEARCH_POOL_FAIR_QUEUE_KEY, newSearchChatRequest(prompt, timestamp))
+                .thenAcceptAsync(content -> {
+                    try {
+                        recipeSearchPool.add(poolKey, null, parseSearchRecipes(request, prompt, content, RecipeDAO.SOURCE_SEARCH));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
                     }
+                }, logExecutor)
+                .whenComplete((ignored, failure) -> {
+                    recipeSearchPool.endRefill(poolKey);
+                    if (failure != null) {
+                        System.err.println("Search pool refill failed: " + unwrap(failure).getMessage());
+                    }
+                });
+        } catch (Exception e) {
+            recipeSearchPool.endRefill(poolKey);
+            e.printStackTrace();
+        }
+    }
+
+    private ResponseEntity<Object> searchErrorResponse(Throwable failure) {
+        Throwable e = unwrap(failure);
+        e.printStackTrace();
+        HttpStatus status = e instanceof CohereUnavailableException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+        List<Map<String, Object>> errorResponse = new ArrayList<>();
+        Map<String, Object> errorRecipe = new HashMap<>();
+        errorRecipe.put("id", 0);
+        errorRecipe.put("title", "Error");
+        errorRecipe.put("ingredients", List.of());
+        errorRecipe.put("steps", List.of("Sorry, there was an error searching for recipes: " + e.getMessage()));
+        errorRecipe.put("calories", "Not available");
+        errorRecipe.put("diet", "Not specified");
+        errorRecipe.put("origin", "Not specified");
+        errorRecipe.put("course", "Not specified");
+        errorRecipe.put("cuisine", "Not specified");
+        errorRecipe.put("prepTime", 0);
+        errorRecipe.put("cookTime", 0);
+        errorResponse.add(errorRecipe);
+        
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+
+    // Streaming /recipe/search: every recipe object is sent as an SSE "recipe" event (and its log write queued)
+    // as soon as its closing brace arrives, instead of after the whole array has been generated.
+    // Events: status, recipe (one per result), done {"count": n}, error {"status", "error"}.
+    @PostMapping(value = "/search/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter searchRecipesStream(@RequestBody RecipeSearchRequest request) {
+        SseEmitter emitter = new SseEmitter(streamEmitterTimeoutMs);
+        streamExecutor.execute(() -> {
+            try {
+                sendEvent(emitter, "status", Map.of("stage", "preparing"));
+                
+                // Same daily limit and pool as /recipe/search
+                if (!apiUsageDAO.checkAndUpdateApiUsage(request.getUid(), request.getMail(), "search", 3)) {
+                    sendError(emitter, HttpStatus.TOO_MANY_REQUESTS, "Rate Limit Exceeded, You have reached the daily limit (3) for recipe searches. Please try again tomorrow.");
+                    return;
                 }
-            }
-            
-            // Extract JSON array from the response using regex
-            Pattern pattern = Pattern.compile("\\[\\s*\\{.*\\}\\s*\\]", Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(content);
-            
-            if (matcher.find()) {
-                String recipesJson = matcher.group();
-                List<Map<String, Object>> recipes = objectMapper.readValue(recipesJson, List.class);
                 
-                // Ensure all required fields exist for each recipe
-                for (Map<String, Object> recipe : recipes) {
-                    if (!recipe.containsKey("calories")) recipe.put("calories", "Not available");
-                    if (!recipe.containsKey("diet")) recipe.put("diet", "Not specified");
-                    if (!recipe.containsKey("origin")) recipe.put("origin", "Not specified");
-                    if (!recipe.containsKey("course")) recipe.put("course", "Not specified");
-                    if (!recipe.containsKey("cuisine")) recipe.put("cuisine", "Not specified");
-                    if (!recipe.containsKey("prepTime")) recipe.put("prepTime", 30);
-                    if (!recipe.containsKey("cookTime")) recipe.put("cookTime", 45);
-                    
-                    // Generate a unique ID for each recipe (simple solution for demo)
-                    recipe.put("id", System.nanoTime() + recipes.indexOf(recipe));
-                    
-                    savedRecipeDAO.saveRecipelogs(request.getUid(), request.getMail(), promptBuilder.toString(), objectMapper.writeValueAsString(recipe.get("ingredients")), objectMapper.writeValueAsString(recipe));
+                String poolKey = searchPoolKey(request);
+                List<Recipe> pooledRecipes = poolKey != null ? takePooledRecipes(request, poolKey) : null;
+                if (pooledRecipes != null) {
+                    for (Recipe recipe : pooledRecipes) {
+                        sendEvent(emitter, "recipe", recipe);
+                    }
+                    sendEvent(emitter, "done", Map.of("count", pooledRecipes.size()));
+                    emitter.complete();
+                    return;
                 }
                 
-                return ResponseEntity.ok(recipes);
-            } else {
-                // Fallback if no JSON array found
-                List<Map<String, Object>> fallbackRecipes = new ArrayList<>();
-                Map<String, Object> errorRecipe = new HashMap<>();
-                errorRecipe.put("id", 1);
-                errorRecipe.put("title", "No Recipes Found");
-                errorRecipe.put("ingredients", List.of("Please try a different search query"));
-                errorRecipe.put("steps", List.of("Sorry, I couldn't find any recipes matching your criteria."));
-                errorRecipe.put("calories", "Not available");
-                errorRecipe.put("diet", "Not specified");
-                errorRecipe.put("origin", "Not specified");
-                errorRecipe.put("course", "Not specified");
-                errorRecipe.put("cuisine", "Not specified");
-                errorRecipe.put("prepTime", 0);
-                errorRecipe.put("cookTime", 0);
-                fallbackRecipes.add(errorRecipe);
+                long timestamp = System.currentTimeMillis();
+                String prompt = buildSearchPrompt(request, timestamp);
+                sendEvent(emitter, "status", Map.of("stage", "generating"));
+                
+                List<Recipe> streamedRecipes = new ArrayList<>();
+                JsonArrayElementExtractor extractor = new JsonArrayElementExtractor(recipeObject -> {
+                    try {
+                        Recipe recipe = prepareSearchRecipe(recipeObject, 0);
+                        sendEvent(emitter, "recipe", recipe);
+                        streamedRecipes.add(recipe);
+                        String ingredientsJson = objectMapper.writeValueAsString(recipe.getIngredients());
+                        String recipeJson = objectMapper.writeValueAsString(recipe);
+                        logExecutor.execute(() -> savedRecipeDAO.saveRecipelogs(request.getUid(), request.getMail(), prompt, ingredientsJson, recipeJson, RecipeDAO.SOURCE_SEARCH));
+                    } catch (Exception e) {
+                        // One malformed object doesn't end the stream
+                        System.err.println("Skipping unreadable search result: " + e.getMessage());
+                    }
+                });
+                cohereClient.chatStream(CohereClient.ENDPOINT_SEARCH, request.getUid(), newSearchChatRequest(prompt, timestamp), extractor::feed);
+                meterRegistry.counter(SEARCH_REQUESTS_METRIC, "outcome", "llm").increment();
+                if (poolKey != null) {
+                    recipeSearchPool.add(poolKey, request.getUid(), streamedRecipes);
+                }
                 
-                return ResponseEntity.ok(fallbackRecipes);
+                sendEvent(emitter, "done", Map.of("count", streamedRecipes.size()));
+                emitter.complete();
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendError(emitter, e, "Sorry, there was an error searching for recipes: " + e.getMessage());
             }
+        });
+        return emitter;
+    }
 
-        } catch (Exception e) {
-            e.printStackTrace();
-            List<Map<String, Object>> errorResponse = new ArrayList<>();
-            Map<String, Object> errorRecipe = new HashMap<>();
-            errorRecipe.put("id", 0);
-            errorRecipe.put("title", "Error");
-            errorRecipe.put("ingredients", List.of());
-            errorRecipe.put("steps", List.of("Sorry, there was an error searching for recipes: " + e.getMessage()));
-            errorRecipe.put("calories", "Not available");
-            errorRecipe.put("diet", "Not specified");
-            errorRecipe.put("origin", "Not specified");
-            errorRecipe.put("course", "Not specified");
-            errorRecipe.put("cuisine", "Not specified");
-            errorRecipe.put("prepTime", 0);
-            errorRecipe.put("cookTime", 0);
-            errorResponse.add(errorRecipe);
-            
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+    // Search prompt for 8-10 varied recipes matching the filters
+    private String buildSearchPrompt(RecipeSearchRequest request, long timestamp) {
+        // Create search prompt for multiple recipes
+        StringBuilder promptBuilder = new StringBuilder();
+        
+        // Request variety in recipes
+        promptBuilder.append("Find me 8-10 unique and different recipes (IMPORTANT: ensure variety and avoid repeating recipes from previous requests). ");
+        promptBuilder.append("This is request timestamp: ").append(timestamp).append(". ");
+        
+        // Add search criteria to the prompt
+        if (request.getQuery() != null && !request.getQuery().trim().isEmpty()) {
+            promptBuilder.append("Matching the search query: ").append(request.getQuery()).append(". ");
         }
+        
+        // Add dietary preferences if specified
+        if (request.getDiet() != null && !request.getDiet().equals("any")) {
+            promptBuilder.append("Recipes should be ").append(request.getDiet()).append(". ");
+        }
+        
+        // Add cuisine type if specified
+        if (request.getCuisine() != null && !request.getCuisine().equals("any")) {
+            promptBuilder.append("From ").append(request.getCuisine()).append(" cuisine. ");
+        }
+        
+        // Add course type if specified
+        if (request.getCourse() != null && !request.getCourse().equals("any")) {
+            promptBuilder.append("For ").append(request.getCourse()).append(". ");
+        }
+        
+        // Add calorie range if specified
+        if (request.getCalorieRange() != null && !request.getCalorieRange().equals("any")) {
+            switch (request.getCalorieRange()) {
+                case "under300":
+                    promptBuilder.append("Under 300 calories. ");
+                    break;
+                case "300-500":
+                    promptBuilder.append("Between 300-500 calories. ");
+                    break;
+                case "500-800":
+                    promptBuilder.append("Between 500-800 calories. ");
+                    break;
+                case "over800":
+                    promptBuilder.append("Over 800 calories. ");
+                    break;
+            }
+        }
+        
+        // Add origin if specified
+        if (request.getOrigin() != null && !request.getOrigin().equals("any")) {
+            promptBuilder.append("From ").append(request.getOrigin()).append(" origin. ");
+        }
+        
+        // Explicit instruction for variety
+        promptBuilder.append("IMPORTANT: Each recipe should be creative and different from one another. ");
+        
+        // Add JSON format specification
+        promptBuilder.append("Respond with an array of recipe objects in this JSON format: ");
+        promptBuilder.append("[{");
+        promptBuilder.append("\"title\": \"Recipe Name\", ");
+        promptBuilder.append("\"ingredients\": [\"ingredient 1\", \"ingredient 2\", ...], ");
+        promptBuilder.append("\"steps\": [\"step 1\", \"step 2\", ...], ");
+        promptBuilder.append("\"calories\": \"approximate calories per serving\", ");
+        promptBuilder.append("\"diet\": \"dietary category\", ");
+        promptBuilder.append("\"origin\": \"geographical origin\", ");
+        promptBuilder.append("\"course\": \"type of meal\", ");
+        promptBuilder.append("\"cuisine\": \"type of cuisine\", ");
+        promptBuilder.append("\"prepTime\": \"preparation time in minutes\", ");
+        promptBuilder.append("\"cookTime\": \"cooking time in minutes\"");
+        promptBuilder.append("}]");
+        
+        return promptBuilder.toString();
+    }
+
+    private Map<String, Object> newSearchChatRequest(String prompt, long timestamp) {
+        // Create request body with additional parameters to increase variety
+        Map<String, Object> requestBody = cohereClient.newChatRequest(prompt);
+        requestBody.put("temperature", 0.9); // Higher temperature = more randomness
+        requestBody.put("p", 0.75); // Nucleus sampling for more variety
+        
+        // Add a seed based on timestamp to prevent repetitive outputs
+        requestBody.put("seed", timestamp % 1000000);
+        return requestBody;
+    }
+
+    // Parse one generated search result and fill in the fields every result carries
+    private Recipe prepareSearchRecipe(String recipeObject, int index) throws Exception {
+        // Common fields are defaulted while binding, search results also always carry times
+        Recipe recipe = recipeReader.readValue(recipeObject);
+        if (recipe.getPrepTime() == null) recipe.setPrepTime(30);
+        if (recipe.getCookTime() == null) recipe.setCookTime(45);
+        
+        // Generate a unique ID for each recipe (simple solution for demo)
+        recipe.setId(System.nanoTime() + index);
+        return recipe;
     }
 
     @Autowired
@@ -454,269 +739,458 @@ public class ChatController {
     }
 
     @PostMapping("/meal-plan")
-    public ResponseEntity<?> generateWeeklyMealPlan(@RequestBody MealPlanRequest request) {
+    public CompletableFuture<ResponseEntity<Object>> generateWeeklyMealPlan(@RequestBody MealPlanRequest request) {
         try {
-            // Check if user has exceeded daily meal plan limit (2 per day)
-            if (!apiUsageDAO.checkAndUpdateApiUsage(request.getUid(), request.getMail(), "meal-plan", 2)) {
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Rate Limit Exceeded, You have reached the daily limit (2) for generating meal plans. Please try again tomorrow.");
-                //errorResponse.put("message", "You have reached the daily limit (2) for generating meal plans. Please try again tomorrow.");
-                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse);
-            }
-            
             // 1. Retrieve user profile data
             UserProfile userProfile = savedRecipeDAO.getUserProfile(request.getUid(), request.getMail());
             
             if (userProfile == null) {
-                return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                        .body("User profile not found. Please complete your profile first.");
-            }
-            
-            // 2. Generate a prompt based on the user's profile
-            StringBuilder promptBuilder = new StringBuilder();
-            promptBuilder.append("Create a personalized 7-day meal plan (breakfast, morning snack, lunch, afternoon snack, dinner) for a user with these preferences: ");
-            
-            // Add user preferences to the prompt
-            if (userProfile.getDietaryPreference() != null) {
-                promptBuilder.append("Diet: ").append(userProfile.getDietaryPreference()).append(". ");
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("User profile not found. Please complete your profile first."));
             }
             
-            if (userProfile.getAllergies() != null && !userProfile.getAllergies().isEmpty()) {
-                promptBuilder.append("Allergies: ").append(userProfile.getAllergies()).append(". ");
+            String signature = mealPlanCache.signature(userProfile);
+            MealPlan pregeneratedPlan = mealPlanPregenerator.take(request.getUid(), request.getMail(), signature);
+            if (pregeneratedPlan != null) {
+                meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", "pregenerated").increment();
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ResponseEntity.<Object>ok(servePregeneratedMealPlan(request, userProfile, signature, pregeneratedPlan));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, logExecutor).exceptionally(this::mealPlanErrorResponse);
             }
             
-            if (userProfile.getCalorieGoal() > 0) {
-                promptBuilder.append("Daily calorie goal: ").append(userProfile.getCalorieGoal()).append(". ");
+            // A plan generated for a user with the same profile, not yet served to this one
+            MealPlan cachedPlan = mealPlanCacheEnabled ? mealPlanCache.take(signature, request.getUid()) : null;
+            if (cachedPlan != null) {
+                meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", "cache").increment();
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return ResponseEntity.<Object>ok(serveCachedMealPlan(request, cachedPlan));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, logExecutor).exceptionally(this::mealPlanErrorResponse);
             }
             
-            if (userProfile.getHealthGoals() != null) {
-                promptBuilder.append("Health goals: ").append(userProfile.getHealthGoals()).append(". ");
+            // Check if user has exceeded daily meal plan limit (2 per day)
+            if (!apiUsageDAO.checkAndUpdateApiUsage(request.getUid(), request.getMail(), "meal-plan", 2)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Rate Limit Exceeded, You have reached the daily limit (2) for generating meal plans. Please try again tomorrow.");
+                //errorResponse.put("message", "You have reached the daily limit (2) for generating meal plans. Please try again tomorrow.");
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse));
             }
             
-            if (userProfile.getCuisinePreferences() != null) {
-                promptBuilder.append("Preferred cuisines: ").append(userProfile.getCuisinePreferences()).append(". ");
+            CompletableFuture<MealPlan> generated;
+            MealPlan localPlan = localMealPlanEnabled ? localMealPlanner.plan(userProfile) : null;
+            if (localPlan != null) {
+                // 2-4. Composed from the meal catalog in-process; Cohere is only asked for the slots left open
+                int openSlots = LocalMealPlanner.countOpenSlots(localPlan);
+                meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", openSlots == 0 ? "local" : "local_llm").increment();
+                generated = finishMealPlanAsync(request, userProfile,
+                    mealPlanFanOut.fill(request.getUid(), MealPlanFanOut.buildPreferences(userProfile), localPlan, logExecutor));
+            } else if (mealPlanFanOutEnabled) {
+                // 2-4. One call per day, merged with repeated meals re-requested, then validated, logged and saved
+                meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", "llm").increment();
+                generated = finishMealPlanAsync(request, userProfile,
+                    mealPlanFanOut.generate(request.getUid(), MealPlanFanOut.buildPreferences(userProfile), logExecutor));
+            } else {
+                meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", "llm").increment();
+                
+                // 2. Generate a prompt based on the user's profile
+                String prompt = buildMealPlanPrompt(userProfile);
+                
+                // 3. Call Cohere API to generate the meal plan
+                Map<String, Object> requestBody = cohereClient.newChatRequest(prompt);
+                // Add some randomness for variety
+                requestBody.put("temperature", 0.7);
+                
+                // 4. Extract the meal plan JSON from the response once it arrives
+                generated = cohereClient.chatAsync(CohereClient.ENDPOINT_MEAL_PLAN, request.getUid(), requestBody).thenApplyAsync(content -> {
+                    try {
+                        return finishMealPlan(request, userProfile, content);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, logExecutor);
             }
             
-            // Add location information for regional recommendations
-            String userCity = userProfile.getCity() != null ? userProfile.getCity() : "Kolkata";
-            String userCountry = userProfile.getCountry() != null ? userProfile.getCountry() : "India";
+            return generated.thenApply(mealPlan -> {
+                if (mealPlan != null) {
+                    mealPlanCache.put(signature, request.getUid(), mealPlan);
+                    return ResponseEntity.<Object>ok(mealPlan);
+                } else {
+                    // Fallback if no JSON found
+                    Map<String, Object> errorResponse = new HashMap<>();
+                    errorResponse.put("error", "Failed to generate meal plan");
+                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).<Object>body(errorResponse);
+                }
+            }).exceptionally(this::mealPlanErrorResponse);
             
-            promptBuilder.append("User lives in ").append(userCity).append(", ").append(userCountry).append(". ");
-            promptBuilder.append("Include local and regional dishes popular in ").append(userCity);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(mealPlanErrorResponse(e));
+        }
+    }
+
+    private ResponseEntity<Object> mealPlanErrorResponse(Throwable failure) {
+        Throwable e = unwrap(failure);
+        e.printStackTrace();
+        HttpStatus status = e instanceof CohereUnavailableException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("error", "An error occurred: " + e.getMessage());
+        return ResponseEntity.status(status).body(errorResponse);
+    }
+
+    // Streaming variants of /recipe and /recipe/meal-plan. Same lookups, logging and persistence, but Cohere is
+    // called with stream=true and progress is relayed as Server-Sent Events:
+    //   status     {"stage": ...}             sent at once so the client gets its first bytes immediately
+    //   delta      {"text": ...}              each chunk of generated text as it arrives
+    //   recipe     the recipe object          once generation is complete and logged
+    //   meal-plan  the meal plan object       once generation is complete, logged and saved
+    //   error      {"status": ..., "error": ...}
+    // A client that disconnects mid-stream does not cancel the generation; the result is still logged.
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateRecipeStream(@RequestBody RecipeRequest request) {
+        SseEmitter emitter = new SseEmitter(streamEmitterTimeoutMs);
+        streamExecutor.execute(() -> {
+            try {
+                sendEvent(emitter, "status", Map.of("stage", "searching"));
+                apiUsageDAO.trackApiUsage(request.getUid(), request.getMail(), "generate-recipe");
+                
+                RecipePayload loggedRecipe = findLoggedRecipe(request);
+                if (loggedRecipe != null) {
+                    sendEvent(emitter, "recipe", loggedRecipe.getJson());
+                    emitter.complete();
+                    return;
+                }
+                
+                sendEvent(emitter, "status", Map.of("stage", "generating"));
+                String prompt = buildRecipePrompt(request.getIngredients());
+                String content = cohereClient.chatStream(CohereClient.ENDPOINT_RECIPE, request.getUid(), cohereClient.newChatRequest(prompt),
+                    text -> sendEvent(emitter, "delta", Map.of("text", text)));
+                meterRegistry.counter(GENERATE_REQUESTS_METRIC, "outcome", "llm").increment();
+                
+                sendEvent(emitter, "recipe", finishGeneratedRecipe(request, prompt, content, RecipeDAO.SOURCE_GENERATE));
+                emitter.complete();
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendError(emitter, e, "Sorry, there was an error generating your recipe: " + e.getMessage());
+            }
+        });
+        return emitter;
+    }
+
+    @PostMapping(value = "/meal-plan/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter generateWeeklyMealPlanStream(@RequestBody MealPlanRequest request) {
+        SseEmitter emitter = new SseEmitter(streamEmitterTimeoutMs);
+        streamExecutor.execute(() -> {
+            try {
+                sendEvent(emitter, "status", Map.of("stage", "preparing"));
+                
+                UserProfile userProfile = savedRecipeDAO.getUserProfile(request.getUid(), request.getMail());
+                if (userProfile == null) {
+                    sendError(emitter, HttpStatus.NOT_FOUND, "User profile not found. Please complete your profile first.");
+                    return;
+                }
+                
+                // Same pre-generated and shared plans and daily limit as /recipe/meal-plan
+                String signature = mealPlanCache.signature(userProfile);
+                MealPlan pregeneratedPlan = mealPlanPregenerator.take(request.getUid(), request.getMail(), signature);
+                if (pregeneratedPlan != null) {
+                    meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", "pregenerated").increment();
+                    sendEvent(emitter, "meal-plan", servePregeneratedMealPlan(request, userProfile, signature, pregeneratedPlan));
+                    emitter.complete();
+                    return;
+                }
+                MealPlan cachedPlan = mealPlanCacheEnabled ? mealPlanCache.take(signature, request.getUid()) : null;
+                if (cachedPlan != null) {
+                    meterRegistry.counter(MEAL_PLAN_REQUESTS_METRIC, "outcome", "cache").increment();
+                    sendEvent(emitter, "meal-plan", serveCachedMealPlan(request, cachedPlan));
+                    emitter.complete();
+                    return;
+                }
+                
+                if (!apiUsageDAO.checkAndUpdateApiUsage(request.getUid(), request.getMail(), "meal-plan", 2)) {
+                    sendError(emitter, HttpStatus.TOO_MANY_REQUESTS, "Rate Limit Exceeded, You have reached the daily limit (2) for generating meal plans. Please try again tomorrow.");
+                    return;
+                }
+                
+                sendEvent(emitter, "status", Map.of("stage", "generating"));
+                Map<String, Object> requestBody = cohereClient.newChatRequest(buildMealPlanPrompt(userProfile));
+                requestBody.put("temperature", 0.7);
+                String content = cohereClient.chatStream(CohereClient.ENDPOINT_MEAL_PLAN, request.getUid(), requestBody,
+                    text -> sendEvent(emitter, "delta", Map.of("text", text)));
+                
+                MealPlan mealPlan = finishMealPlan(request, userProfile, content);
+                if (mealPlan == null) {
+                    sendError(emitter, HttpStatus.INTERNAL_SERVER_ERROR, "Failed to generate meal plan");
+                    return;
+                }
+                mealPlanCache.put(signature, request.getUid(), mealPlan);
+                sendEvent(emitter, "meal-plan", mealPlan);
+                emitter.complete();
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendError(emitter, e, "An error occurred: " + e.getMessage());
+            }
+        });
+        return emitter;
+    }
+
+    // Send one SSE event; a client that went away only loses the event, the generation carries on
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (Exception e) {
+            // Client disconnected or emitter timed out
+        }
+    }
+
+    private void sendError(SseEmitter emitter, Exception e, String message) {
+        sendError(emitter, e instanceof CohereUnavailableException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR, message);
+    }
+
+    private void sendError(SseEmitter emitter, HttpStatus status, String message) {
+        Map<String, Object> errorResponse = new HashMap<>();
+        errorResponse.put("status", status.value());
+        errorResponse.put("error", message);
+        sendEvent(emitter, "error", errorResponse);
+        emitter.complete();
+    }
+
+    // Personalized 7-day plan prompt built from the user's profile
+    private String buildMealPlanPrompt(UserProfile userProfile) {
+        StringBuilder promptBuilder = new StringBuilder();
+        promptBuilder.append("Create a personalized 7-day meal plan (breakfast, morning snack, lunch, afternoon snack, dinner) for a user with these preferences: ");
+        promptBuilder.append(MealPlanFanOut.buildPreferences(userProfile));
+    
+        // Add specific instructions for snacks, variety, and detailed preparation steps
+        promptBuilder.append("Include two healthy snacks each day between main meals. ");
+        promptBuilder.append("IMPORTANT: Ensure there is significant variety in meals across the week - don't repeat the same meals on different days. ");
+        promptBuilder.append("For example, if oatmeal is suggested for Monday breakfast, don't suggest it for any other breakfast that week. ");
+        promptBuilder.append("For each meal and snack, include a title, brief description, detailed cooking instructions, approximate calories, country of origin, and key ingredients. ");
         
-            // Add specific instructions for snacks, variety, and detailed preparation steps
-            promptBuilder.append("Include two healthy snacks each day between main meals. ");
-            promptBuilder.append("IMPORTANT: Ensure there is significant variety in meals across the week - don't repeat the same meals on different days. ");
-            promptBuilder.append("For example, if oatmeal is suggested for Monday breakfast, don't suggest it for any other breakfast that week. ");
-            promptBuilder.append("For each meal and snack, include a title, brief description, detailed cooking instructions, approximate calories, country of origin, and key ingredients. ");
+        // Request JSON response format
+        promptBuilder.append("Respond with a JSON object in this exact format: ");
+        promptBuilder.append("{");
+        promptBuilder.append("\"weeklyPlan\": [");
+        promptBuilder.append("{");
+        promptBuilder.append("\"day\": \"Monday\",");
+        promptBuilder.append("\"meals\": [");
+        promptBuilder.append(MealPlanFanOut.DAY_MEALS_FORMAT);
+        promptBuilder.append("]");
+        promptBuilder.append("},");
+        promptBuilder.append("... (repeat for all 7 days)");
+        promptBuilder.append("]");
+        promptBuilder.append("}");
+        
+        return promptBuilder.toString();
+    }
+
+    // Validate, log every meal to recipe_logs and save the plan; null when the generated text holds no JSON object
+    private MealPlan finishMealPlan(MealPlanRequest request, UserProfile userProfile, String content) throws Exception {
+        // Bind the first JSON object in the reply straight into the typed plan; every meal gets its
+        // default instructions and origin while binding if the model left them out
+        MealPlan mealPlan = ModelJsonReader.readFirstObject(mealPlanReader, content);
+        if (mealPlan == null) {
+            return null;
+        }
+        return finishMealPlan(request, userProfile, mealPlan);
+    }
+
+    // A pooled plan goes into the user's saved plans like a generated one; its meals are already in recipe_logs
+    private MealPlan serveCachedMealPlan(MealPlanRequest request, MealPlan mealPlan) throws Exception {
+        apiUsageDAO.trackApiUsage(request.getUid(), request.getMail(), "meal-plan-cached");
+        savedRecipeDAO.saveMealPlan(request.getUid(), request.getMail(), objectMapper.writeValueAsString(mealPlan));
+        return mealPlan;
+    }
+
+    // A pre-generated plan is validated, logged and saved now, then shared like a freshly generated one.
+    // It was made for a profile with the same signature, so the current profile's diet is the plan's.
+    private MealPlan servePregeneratedMealPlan(MealPlanRequest request, UserProfile userProfile, String signature, MealPlan mealPlan) throws Exception {
+        apiUsageDAO.trackApiUsage(request.getUid(), request.getMail(), "meal-plan-pregenerated");
+        finishMealPlan(request, userProfile, mealPlan);
+        mealPlanCache.put(signature, request.getUid(), mealPlan);
+        return mealPlan;
+    }
+
+    private CompletableFuture<MealPlan> finishMealPlanAsync(MealPlanRequest request, UserProfile userProfile, CompletableFuture<MealPlan> mealPlan) {
+        return mealPlan.thenApplyAsync(plan -> {
+            try {
+                return finishMealPlan(request, userProfile, plan);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        }, logExecutor);
+    }
+
+    // Validate, log every meal to recipe_logs and save an already bound plan
+    private MealPlan finishMealPlan(MealPlanRequest request, UserProfile userProfile, MealPlan mealPlan) throws Exception {
+        // 5. Analyze the meal plan to check for variety
+        if (mealPlan.getWeeklyPlan() != null) {
+            validateMealPlanVariety(mealPlan);
             
-            // Request JSON response format
-            promptBuilder.append("Respond with a JSON object in this exact format: ");
-            promptBuilder.append("{");
-            promptBuilder.append("\"weeklyPlan\": [");
-            promptBuilder.append("{");
-            promptBuilder.append("\"day\": \"Monday\",");
-            promptBuilder.append("\"meals\": [");
-            promptBuilder.append("{\"type\": \"Breakfast\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\"], \"calories\": \"300\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]},");
-            promptBuilder.append("{\"type\": \"Morning Snack\", \"title\": \"Snack name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\"], \"calories\": \"150\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]},");
-            promptBuilder.append("{\"type\": \"Lunch\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\", \"step 4\"], \"calories\": \"500\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]},");
-            promptBuilder.append("{\"type\": \"Afternoon Snack\", \"title\": \"Snack name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\"], \"calories\": \"150\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]},");
-            promptBuilder.append("{\"type\": \"Dinner\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\", \"step 4\", \"step 5\"], \"calories\": \"600\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}");
-            promptBuilder.append("]");
-            promptBuilder.append("},");
-            promptBuilder.append("... (repeat for all 7 days)");
-            promptBuilder.append("]");
-            promptBuilder.append("}");
+            // Save each recipe individually to recipe_logs
+            for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+                for (Meal meal : dayPlan.getMeals()) {
+                    logMealPlanMeal(request.getUid(), request.getMail(), userProfile, dayPlan, meal);
+                }
+            }
+        }
+        
+        // 6. Save the full meal plan to the database (keep this for the complete plan)
+        savedRecipeDAO.saveMealPlan(
+            request.getUid(), 
+            request.getMail(), 
+            objectMapper.writeValueAsString(mealPlan)
+        );
+        
+        return mealPlan;
+    }
+
+    private void logMealPlanMeal(String uid, String mail, UserProfile userProfile, DayPlan dayPlan, Meal meal) throws Exception {
+        // Create a prompt description for this specific meal, with the diet the plan was generated for so the
+        // meal catalog only offers it to users that diet suits
+        String diet = LocalMealPlanner.dietOf(userProfile);
+        String mealPrompt = "Meal plan: " + meal.getType() + " for " + dayPlan.getDay() + " - " + meal.getTitle() + " | diet: " + diet;
+        
+        // Save each meal as a separate entry in recipe_logs
+        savedRecipeDAO.saveRecipelogs(
+            uid,
+            mail,
+            mealPrompt,
+            String.join(", ", meal.getIngredients()),
+            objectMapper.writeValueAsString(meal),
+            RecipeDAO.SOURCE_MEAL_PLAN
+        );
+        mealCatalog.add(meal, diet);
+    }
+
+    // Regenerate one meal (mealType set) or one whole day of a stored plan and patch meal_plans in place.
+    // Cohere only gets that slot or day plus the titles already in the plan to avoid, instead of a full
+    // 35-meal generation; counted against its own daily limit rather than the meal plan one. The update only
+    // applies to the version of the plan that was read, so a concurrent regeneration of the same plan gets a
+    // 409 instead of one of the two being silently overwritten.
+    @PostMapping("/meal-plan/{id}/regenerate")
+    public CompletableFuture<ResponseEntity<Object>> regenerateMealPlanPart(@PathVariable long id, @RequestBody MealPlanRegenerateRequest request) {
+        try {
+            if (request.getDay() == null || request.getDay().isBlank()) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "day is required");
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse));
+            }
             
-            // 3. Call Cohere API to generate the meal plan
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("Authorization", "Bearer " + COHERE_API_KEY);
-
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("stream", false);
-            requestBody.put("model", "command-a-03-2025");
-            // Add some randomness for variety
-            requestBody.put("temperature", 0.7);
+            Map<String, Object> storedPlan = savedRecipeDAO.getMealPlan(id, request.getUid(), request.getMail());
+            if (storedPlan == null) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Meal plan not found");
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse));
+            }
             
-            Map<String, Object> message = new HashMap<>();
-            message.put("role", "user");
-            message.put("content", promptBuilder.toString());
+            UserProfile userProfile = savedRecipeDAO.getUserProfile(request.getUid(), request.getMail());
+            if (userProfile == null) {
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body("User profile not found. Please complete your profile first."));
+            }
             
-            requestBody.put("messages", List.of(message));
-
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+            if (!apiUsageDAO.checkAndUpdateApiUsage(request.getUid(), request.getMail(), "meal-plan-regenerate", regenerateDailyLimit)) {
+                Map<String, Object> errorResponse = new HashMap<>();
+                errorResponse.put("error", "Rate Limit Exceeded, You have reached the daily limit (" + regenerateDailyLimit + ") for regenerating meals. Please try again tomorrow.");
+                return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse));
+            }
             
-            RestTemplate restTemplate = new RestTemplate();
-            ResponseEntity<String> response = restTemplate.exchange(
-                COHERE_API_URL, 
-                HttpMethod.POST, 
-                entity, 
-                String.class
-            );
+            MealPlan mealPlan = mealPlanReader.readValue((String) storedPlan.get("meal_plan"));
+            int version = (Integer) storedPlan.get("version");
+            // Meals already in the plan, so only the new ones get logged afterwards
+            Set<Meal> previousMeals = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+                previousMeals.addAll(dayPlan.getMeals());
+            }
             
-            // 4. Extract the meal plan JSON from the response
-            String responseBody = response.getBody();
-            Map<String, Object> responseMap = objectMapper.readValue(responseBody, Map.class);
+            String preferences = MealPlanFanOut.buildPreferences(userProfile);
+            CompletableFuture<MealPlan> regenerated = request.getMealType() != null && !request.getMealType().isBlank()
+                ? mealPlanFanOut.regenerateMeal(request.getUid(), preferences, mealPlan, request.getDay(), request.getMealType(), logExecutor)
+                : mealPlanFanOut.regenerateDay(request.getUid(), preferences, mealPlan, request.getDay(), logExecutor);
             
-            // Extract the message content from the Cohere response
-            String content = "";
-            if (responseMap.containsKey("message")) {
-                Map<String, Object> messageObj = (Map<String, Object>) responseMap.get("message");
-                if (messageObj.containsKey("content")) {
-                    List<Map<String, Object>> contentList = (List<Map<String, Object>>) messageObj.get("content");
-                    if (!contentList.isEmpty()) {
-                        content = (String) contentList.get(0).get("text");
+            return regenerated.thenApplyAsync(plan -> {
+                try {
+                    validateMealPlanVariety(plan);
+                    if (!savedRecipeDAO.updateMealPlan(id, objectMapper.writeValueAsString(plan), version)) {
+                        Map<String, Object> errorResponse = new HashMap<>();
+                        errorResponse.put("error", "The meal plan was changed while regenerating. Please reload it and try again.");
+                        return ResponseEntity.status(HttpStatus.CONFLICT).<Object>body(errorResponse);
                     }
-                }
-            }
-            
-            // Extract JSON from the response using regex
-            Pattern pattern = Pattern.compile("\\{.*\\}", Pattern.DOTALL);
-            Matcher matcher = pattern.matcher(content);
-
-            if (matcher.find()) {
-                String mealPlanJson = matcher.group();
-                Map<String, Object> mealPlanMap = objectMapper.readValue(mealPlanJson, Map.class);
-                
-                // 5. Analyze the meal plan to check for variety and completeness
-                if (mealPlanMap.containsKey("weeklyPlan")) {
-                    validateMealPlanVariety(mealPlanMap);
-                    ensureCompleteInstructions(mealPlanMap);
-                    
-                    // Add this new code to save each recipe individually to recipe_logs
-                    List<Map<String, Object>> weeklyPlan = (List<Map<String, Object>>) mealPlanMap.get("weeklyPlan");
-                    for (Map<String, Object> dayPlan : weeklyPlan) {
-                        String day = (String) dayPlan.get("day");
-                        List<Map<String, Object>> meals = (List<Map<String, Object>>) dayPlan.get("meals");
-                        
-                        for (Map<String, Object> meal : meals) {
-                            String mealType = (String) meal.get("type");
-                            String mealTitle = (String) meal.get("title");
-                            
-                            // Create a prompt description for this specific meal
-                            String mealPrompt = "Meal plan: " + mealType + " for " + day + " - " + mealTitle;
-                            
-                            // Get ingredients as a list and convert to string
-                            List<String> ingredientsList = (List<String>) meal.get("ingredients");
-                            String ingredientsString = String.join(", ", ingredientsList);
-                            
-                            // Save each meal as a separate entry in recipe_logs
-                            savedRecipeDAO.saveRecipelogs(
-                                request.getUid(),
-                                request.getMail(),
-                                mealPrompt,
-                                ingredientsString,
-                                objectMapper.writeValueAsString(meal)
-                            );
+                    for (DayPlan dayPlan : plan.getWeeklyPlan()) {
+                        for (Meal meal : dayPlan.getMeals()) {
+                            if (!previousMeals.contains(meal)) {
+                                logMealPlanMeal(request.getUid(), request.getMail(), userProfile, dayPlan, meal);
+                            }
                         }
                     }
+                    return ResponseEntity.<Object>ok(plan);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
                 }
-                
-                // 6. Save the full meal plan to the database (keep this for the complete plan)
-                savedRecipeDAO.saveMealPlan(
-                    request.getUid(), 
-                    request.getMail(), 
-                    objectMapper.writeValueAsString(mealPlanMap)
-                );
-                
-                return ResponseEntity.ok(mealPlanMap);
-            } else {
-                // Fallback if no JSON found
-                Map<String, Object> errorResponse = new HashMap<>();
-                errorResponse.put("error", "Failed to generate meal plan");
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
-            }
+            }, logExecutor).exceptionally(this::regenerateErrorResponse);
             
         } catch (Exception e) {
-            e.printStackTrace();
+            return CompletableFuture.completedFuture(regenerateErrorResponse(e));
+        }
+    }
+
+    private ResponseEntity<Object> regenerateErrorResponse(Throwable failure) {
+        Throwable e = unwrap(failure);
+        if (e instanceof IllegalArgumentException) {
+            // The day or meal type isn't in the stored plan
             Map<String, Object> errorResponse = new HashMap<>();
-            errorResponse.put("error", "An error occurred: " + e.getMessage());
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(errorResponse);
         }
+        return mealPlanErrorResponse(e);
     }
 
     // Helper method to validate meal plan variety
-    private void validateMealPlanVariety(Map<String, Object> mealPlanMap) {
-        try {
-            List<Map<String, Object>> weeklyPlan = (List<Map<String, Object>>) mealPlanMap.get("weeklyPlan");
-            Map<String, Integer> breakfastCounts = new HashMap<>();
-            Map<String, Integer> lunchCounts = new HashMap<>();
-            Map<String, Integer> dinnerCounts = new HashMap<>();
-            
-            // Count meal occurrences
-            for (Map<String, Object> dayPlan : weeklyPlan) {
-                List<Map<String, Object>> meals = (List<Map<String, Object>>) dayPlan.get("meals");
-                for (Map<String, Object> meal : meals) {
-                    String type = (String) meal.get("type");
-                    String title = (String) meal.get("title");
-                    
-                    if ("Breakfast".equals(type)) {
-                        breakfastCounts.put(title, breakfastCounts.getOrDefault(title, 0) + 1);
-                    } else if ("Lunch".equals(type)) {
-                        lunchCounts.put(title, lunchCounts.getOrDefault(title, 0) + 1);
-                    } else if ("Dinner".equals(type)) {
-                        dinnerCounts.put(title, dinnerCounts.getOrDefault(title, 0) + 1);
-                    }
+    private void validateMealPlanVariety(MealPlan mealPlan) {
+        Map<String, Integer> breakfastCounts = new HashMap<>();
+        Map<String, Integer> lunchCounts = new HashMap<>();
+        Map<String, Integer> dinnerCounts = new HashMap<>();
+        
+        // Count meal occurrences
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            for (Meal meal : dayPlan.getMeals()) {
+                String type = meal.getType();
+                String title = meal.getTitle();
+                
+                if ("Breakfast".equals(type)) {
+                    breakfastCounts.merge(title, 1, Integer::sum);
+                } else if ("Lunch".equals(type)) {
+                    lunchCounts.merge(title, 1, Integer::sum);
+                } else if ("Dinner".equals(type)) {
+                    dinnerCounts.merge(title, 1, Integer::sum);
                 }
             }
-            
-            // Add variety score to the meal plan (could be used for feedback)
-            double breakfastVariety = calculateVarietyScore(breakfastCounts);
-            double lunchVariety = calculateVarietyScore(lunchCounts);
-            double dinnerVariety = calculateVarietyScore(dinnerCounts);
-            double overallVariety = (breakfastVariety + lunchVariety + dinnerVariety) / 3.0;
-            
-            mealPlanMap.put("varietyScore", Math.round(overallVariety * 100) / 100.0);
-        } catch (Exception e) {
-            // Just log the error but don't fail the request
-            e.printStackTrace();
         }
+        
+        // Add variety score to the meal plan (could be used for feedback)
+        double breakfastVariety = calculateVarietyScore(breakfastCounts);
+        double lunchVariety = calculateVarietyScore(lunchCounts);
+        double dinnerVariety = calculateVarietyScore(dinnerCounts);
+        double overallVariety = (breakfastVariety + lunchVariety + dinnerVariety) / 3.0;
+        
+        mealPlan.setVarietyScore(Math.round(overallVariety * 100) / 100.0);
     }
 
     // Calculate variety score (1.0 = perfect variety, 0.0 = all identical)
     private double calculateVarietyScore(Map<String, Integer> mealCounts) {
         if (mealCounts.isEmpty()) return 1.0;
         
-        int totalMeals = mealCounts.values().stream().mapToInt(Integer::intValue).sum();
         int uniqueMeals = mealCounts.size();
         
         // Perfect variety would have 7 unique meals (one for each day)
         return Math.min(1.0, uniqueMeals / 7.0);
     }
-
-    // Add this new helper method to ensure complete instructions
-    private void ensureCompleteInstructions(Map<String, Object> mealPlanMap) {
-        try {
-            List<Map<String, Object>> weeklyPlan = (List<Map<String, Object>>) mealPlanMap.get("weeklyPlan");
-            for (Map<String, Object> dayPlan : weeklyPlan) {
-                List<Map<String, Object>> meals = (List<Map<String, Object>>) dayPlan.get("meals");
-                for (Map<String, Object> meal : meals) {
-                    // Check if instructions are missing or empty
-                    if (!meal.containsKey("instructions") || ((List<?>)meal.get("instructions")).isEmpty()) {
-                        // Generate basic instructions if missing
-                        List<String> basicInstructions = new ArrayList<>();
-                        basicInstructions.add("Gather all ingredients");
-                        basicInstructions.add("Prepare ingredients as needed (wash, chop, measure)");
-                        basicInstructions.add("Cook according to conventional methods for this dish");
-                        basicInstructions.add("Serve and enjoy");
-                        meal.put("instructions", basicInstructions);
-                    }
-                    
-                    // Check if origin information is missing
-                    if (!meal.containsKey("origin")) {
-                        Map<String, String> origin = new HashMap<>();
-                        origin.put("country", "International");
-                        origin.put("region", "Various");
-                        meal.put("origin", origin);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            // Just log the error but don't fail the request
-            e.printStackTrace();
-        }
-    }
     
     @GetMapping("/meal-plans/{uid}/{mail}")
     public ResponseEntity<?> getUserMealPlans(@PathVariable String uid, @PathVariable String mail) {
@@ -0,0 +1,51 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// One day of a generated meal plan
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"day", "meals"})
+public class DayPlan {
+    private String day;
+    private List<Meal> meals = new ArrayList<>();
+    private final Map<String, Object> other = new LinkedHashMap<>();
+
+    // Default constructor
+    public DayPlan() {
+    }
+
+    // Getters and setters
+    public String getDay() {
+        return day;
+    }
+
+    public void setDay(String day) {
+        this.day = day;
+    }
+
+    public List<Meal> getMeals() {
+        return meals;
+    }
+
+    public void setMeals(List<Meal> meals) {
+        this.meals = meals != null ? meals : new ArrayList<>();
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getOther() {
+        return other;
+    }
+
+    @JsonAnySetter
+    public void setOther(String name, Object value) {
+        other.put(name, value);
+    }
+}
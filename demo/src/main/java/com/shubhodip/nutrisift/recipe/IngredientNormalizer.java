@@ -0,0 +1,237 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+
+// Turns free-form ingredient text into comparable tokens, on both the stored and the request side:
+// "2 cups Tomatoes, bell-pepper" -> [tomato, capsicum]
+// Steps: lowercase, strip quantities/units/descriptors, fold plurals, apply the synonym dictionary.
+// Request tokens are additionally spell-corrected against the vocabulary of stored tokens.
+@Component
+public class IngredientNormalizer {
+
+    private static final Set<String> UNITS = Set.of(
+        "cup", "cups", "c", "tbsp", "tbs", "tablespoon", "tablespoons", "tsp", "teaspoon", "teaspoons",
+        "g", "gm", "gms", "gram", "grams", "kg", "kgs", "kilogram", "kilograms", "mg",
+        "ml", "millilitre", "milliliter", "millilitres", "milliliters", "l", "ltr", "litre", "liter", "litres", "liters",
+        "oz", "ounce", "ounces", "lb", "lbs", "pound", "pounds", "quart", "quarts", "pint", "pints",
+        "pinch", "pinches", "dash", "dashes", "handful", "handfuls", "piece", "pieces", "pc", "pcs",
+        "can", "cans", "packet", "packets", "pack", "bunch", "bunches", "sprig", "sprigs", "stick", "sticks", "x");
+
+    private static final Set<String> DESCRIPTORS = Set.of(
+        "of", "and", "or", "a", "an", "the", "to", "for", "with", "as", "some", "few", "little", "needed", "taste",
+        "optional", "fresh", "freshly", "chopped", "diced", "sliced", "minced", "grated", "crushed", "ground",
+        "large", "small", "medium", "big", "finely", "roughly", "thinly", "whole", "boneless", "skinless",
+        "raw", "cooked", "peeled");
+
+    private static final int MAX_PHRASE_WORDS = 3;
+
+    // Part of the fingerprint; bump when the folding rules above change what stored tokens look like
+    private static final int NORMALIZATION_VERSION = 1;
+
+    @Value("${recipe.normalizer.synonyms:classpath:ingredient-synonyms.properties}")
+    private Resource synonymsResource;
+
+    // Upper bound on spelling corrections; shorter tokens get fewer edits (see correctSpelling)
+    @Value("${recipe.normalizer.max-edit-distance:2}")
+    private int maxEditDistance;
+
+    // Normalized phrase -> normalized replacement, e.g. "bell pepper" -> "capsicum"
+    private final Map<String, String> synonyms = new HashMap<>();
+
+    // Known stored tokens with their frequency, bucketed by length for spell correction
+    private final Map<String, Integer> vocabulary = new ConcurrentHashMap<>();
+    private final Map<Integer, Set<String>> vocabularyByLength = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void loadSynonyms() {
+        if (synonymsResource == null || !synonymsResource.exists()) {
+            return;
+        }
+        try (InputStream in = synonymsResource.getInputStream()) {
+            Properties properties = new Properties();
+            properties.load(in);
+            for (String phrase : properties.stringPropertyNames()) {
+                // Keys and values go through the same folding as the ingredients they will be compared with
+                String from = String.join(" ", foldWords(phrase.replace('_', ' ')));
+                String to = String.join(" ", foldWords(properties.getProperty(phrase)));
+                if (!from.isEmpty() && !to.isEmpty()) {
+                    synonyms.put(from, to);
+                }
+            }
+            System.out.println("Loaded " + synonyms.size() + " ingredient synonyms");
+        } catch (Exception e) {
+            System.err.println("Error loading ingredient synonyms: " + e.getMessage());
+        }
+    }
+
+    // Stored side: normalized tokens joined by spaces, precomputed into recipe_logs.ingredient_norm
+    public String normalize(String ingredients) {
+        return String.join(" ", normalizeTokens(ingredients));
+    }
+
+    // Stored side: normalized tokens in order (duplicates kept)
+    public List<String> normalizeTokens(String ingredients) {
+        List<String> tokens = new ArrayList<>();
+        if (ingredients == null) {
+            return tokens;
+        }
+        // Each comma/newline separated item is folded on its own so phrases don't span items
+        for (String item : ingredients.toLowerCase().split("[,;\\n]+")) {
+            List<String> words = foldWords(item);
+            tokens.addAll(applySynonyms(words));
+        }
+        return tokens;
+    }
+
+    // Request side: normalized tokens, with unknown words corrected to the closest stored token
+    public List<String> normalizeQuery(String ingredients) {
+        List<String> tokens = normalizeTokens(ingredients);
+        for (int i = 0; i < tokens.size(); i++) {
+            tokens.set(i, correctSpelling(tokens.get(i)));
+        }
+        return tokens;
+    }
+
+    // Register stored tokens as spell-correction targets
+    public void learn(Collection<String> tokens) {
+        for (String token : tokens) {
+            if (vocabulary.merge(token, 1, Integer::sum) == 1) {
+                vocabularyByLength.computeIfAbsent(token.length(), k -> ConcurrentHashMap.newKeySet()).add(token);
+            }
+        }
+    }
+
+    // Identifies what stored-side normalization produces: changes with the synonym dictionary or the folding rules.
+    // recipe_logs rows and the index snapshot record it, and are re-normalized or discarded when it differs.
+    // Spell correction only applies to requests, so the edit distance is not part of it.
+    public int fingerprint() {
+        return synonyms.hashCode() * 31 + NORMALIZATION_VERSION;
+    }
+
+    // Lowercase, keep letters only, drop quantities/units/descriptors, fold plurals
+    private List<String> foldWords(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : text.toLowerCase().split("[^\\p{L}]+")) {
+            if (word.length() < 2 || UNITS.contains(word) || DESCRIPTORS.contains(word)) {
+                continue;
+            }
+            words.add(stem(word));
+        }
+        return words;
+    }
+
+    // Light plural folding: tomatoes -> tomato, berries -> berry, peaches -> peach, eggs -> egg
+    static String stem(String word) {
+        if (word.length() <= 3) {
+            return word;
+        }
+        if (word.endsWith("ies") && word.length() > 4) {
+            return word.substring(0, word.length() - 3) + "y";
+        }
+        if (word.endsWith("oes") || word.endsWith("ches") || word.endsWith("shes") || word.endsWith("xes") || word.endsWith("sses")) {
+            return word.substring(0, word.length() - 2);
+        }
+        if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is")) {
+            return word.substring(0, word.length() - 1);
+        }
+        return word;
+    }
+
+    // Replace the longest matching synonym phrase at each position
+    private List<String> applySynonyms(List<String> words) {
+        if (synonyms.isEmpty()) {
+            return words;
+        }
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        while (i < words.size()) {
+            int matched = 0;
+            for (int n = Math.min(MAX_PHRASE_WORDS, words.size() - i); n >= 1; n--) {
+                String replacement = synonyms.get(String.join(" ", words.subList(i, i + n)));
+                if (replacement != null) {
+                    for (String word : replacement.split(" ")) {
+                        result.add(word);
+                    }
+                    matched = n;
+                    break;
+                }
+            }
+            if (matched == 0) {
+                result.add(words.get(i));
+                matched = 1;
+            }
+            i += matched;
+        }
+        return result;
+    }
+
+    // Closest known token within the edit-distance bound (ties go to the more frequent token)
+    private String correctSpelling(String token) {
+        if (token.length() < 4 || vocabulary.containsKey(token) || vocabulary.isEmpty()) {
+            return token;
+        }
+        // One edit per three characters beyond the first (4-6 -> 1, 7-9 -> 2, 10-12 -> 3, ...) up to the configured maximum
+        int bound = Math.min(maxEditDistance, (token.length() - 1) / 3);
+        String best = token;
+        int bestDistance = bound + 1;
+        int bestFrequency = 0;
+        for (int length = token.length() - bound; length <= token.length() + bound; length++) {
+            Set<String> candidates = vocabularyByLength.get(length);
+            if (candidates == null) {
+                continue;
+            }
+            for (String candidate : candidates) {
+                int distance = boundedEditDistance(token, candidate, bound);
+                int frequency = vocabulary.getOrDefault(candidate, 0);
+                if (distance < bestDistance || (distance == bestDistance && frequency > bestFrequency)) {
+                    best = candidate;
+                    bestDistance = distance;
+                    bestFrequency = frequency;
+                }
+            }
+        }
+        return best;
+    }
+
+    // Levenshtein distance, or bound + 1 as soon as it is known to exceed bound
+    static int boundedEditDistance(String a, String b, int bound) {
+        if (Math.abs(a.length() - b.length()) > bound) {
+            return bound + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > bound) {
+                return bound + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], bound + 1);
+    }
+}
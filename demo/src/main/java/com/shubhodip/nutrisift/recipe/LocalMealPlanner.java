@@ -0,0 +1,381 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Builds a 7-day meal plan from the MealCatalog without calling Cohere.
+// Only meals from plans generated for a diet at least as strict as the user's are used: a word list can't know
+// every meat (ham, chorizo, lard, fish sauce, ...), but the model was told the source plan's diet. Meals whose
+// title or ingredients mention something the user's diet or allergies rule out are dropped on top of that
+// (substring match, so it errs on the side of excluding), preferred cuisines are tried first, and no title
+// repeats within a meal type across the week. With a calorie goal, each day's five meals are chosen as a
+// multiple-choice knapsack: one candidate per slot, total calories as close to the goal as possible.
+// Slots nothing fits are left open (a meal with only its type) for Cohere to fill.
+@Component
+public class LocalMealPlanner {
+
+    // Slot order within a day, as in the meal plan prompt, and the prompt's example calories for each slot
+    static final List<String> MEAL_TYPES = List.of("Breakfast", "Morning Snack", "Lunch", "Afternoon Snack", "Dinner");
+
+    // Diets recorded with logged meal plan meals, strictest first; a meal fits any diet at or after its own
+    static final String DIET_VEGAN = "vegan";
+    static final String DIET_VEGETARIAN = "vegetarian";
+    static final String DIET_PESCATARIAN = "pescatarian";
+    static final String DIET_ANY = "any";
+    private static final List<String> DIETS = List.of(DIET_VEGAN, DIET_VEGETARIAN, DIET_PESCATARIAN, DIET_ANY);
+    private static final int[] CALORIE_SHARES = {300, 150, 500, 150, 600};
+
+    private static final List<String> MEAT = List.of("chicken", "mutton", "lamb", "beef", "pork", "bacon", "turkey", "duck",
+        "goat", "sausage", "salami", "pepperoni", "prosciutto", "meat", "keema", "veal", "gelatin");
+    private static final List<String> SEAFOOD = List.of("fish", "salmon", "tuna", "prawn", "shrimp", "crab", "lobster", "hilsa",
+        "rohu", "sardine", "mackerel", "anchov", "squid", "oyster", "mussel", "clam", "scallop", "pomfret", "bhetki", "seafood");
+    private static final List<String> DAIRY = List.of("milk", "cheese", "butter", "ghee", "paneer", "yogurt", "yoghurt", "curd",
+        "cream", "dahi", "khoa", "whey", "lassi", "raita");
+    private static final List<String> GLUTEN = List.of("wheat", "flour", "bread", "pasta", "atta", "maida", "roti", "chapati",
+        "paratha", "naan", "semolina", "suji", "rava", "barley", "noodle", "couscous");
+
+    // Allergy (or "-free" diet) keyword -> words that give the allergen away
+    private static final Map<String, List<String>> ALLERGENS = Map.of(
+        "nut", List.of("nut", "almond", "cashew", "walnut", "pistachio", "hazelnut", "pecan"),
+        "peanut", List.of("peanut", "groundnut"),
+        "dairy", DAIRY,
+        "lactose", DAIRY,
+        "milk", DAIRY,
+        "gluten", GLUTEN,
+        "wheat", GLUTEN,
+        "egg", List.of("egg"),
+        "shellfish", List.of("shrimp", "prawn", "crab", "lobster", "oyster", "mussel", "clam", "scallop"),
+        "soy", List.of("soy", "tofu", "edamame", "tempeh"));
+
+    // Diet wording that doesn't restrict anything
+    private static final List<String> UNRESTRICTED_DIETS = List.of("omnivore", "no preference", "none", "any", "balanced",
+        "regular", "normal", "everything");
+
+    private static final Pattern NUMBER = Pattern.compile("\\d+");
+
+    @Autowired
+    private MealCatalog mealCatalog;
+
+    // Catalog meals considered per slot and day; the knapsack is candidates x calorie buckets per slot
+    @Value("${meal-plan.local.candidates-per-slot:40}")
+    private int candidatesPerSlot;
+
+    // More open slots than this and the whole plan is left to Cohere instead
+    @Value("${meal-plan.local.max-open-slots:7}")
+    private int maxOpenSlots;
+
+    // Calorie granularity of the knapsack
+    @Value("${meal-plan.local.calorie-step:10}")
+    private int calorieStep;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // The composed plan, or null when the catalog isn't loaded yet, the user's diet can't be checked
+    // against logged meals, or too many slots would be left open
+    public MealPlan plan(UserProfile userProfile) {
+        if (!mealCatalog.isReady()) {
+            return null;
+        }
+        Set<String> excluded = excludedWords(userProfile);
+        if (excluded == null) {
+            return null;
+        }
+        int diet = DIETS.indexOf(dietOf(userProfile));
+        List<String> preferred = preferredOrigins(userProfile);
+        int calorieGoal = userProfile.getCalorieGoal();
+
+        // Eligible meals per slot, shuffled for variety between users, then preferred cuisines first
+        List<List<Meal>> eligible = new ArrayList<>();
+        for (String type : MEAL_TYPES) {
+            List<Meal> meals = new ArrayList<>();
+            for (MealCatalog.CatalogMeal catalogMeal : mealCatalog.getMeals(type)) {
+                Meal meal = catalogMeal.getMeal();
+                int mealDiet = DIETS.indexOf(catalogMeal.getDiet());
+                if (mealDiet >= 0 && mealDiet <= diet && !mentionsAny(meal, excluded) && (calorieGoal <= 0 || calories(meal) > 0)) {
+                    meals.add(meal);
+                }
+            }
+            Collections.shuffle(meals);
+            meals.sort(Comparator.comparing(meal -> !isPreferred(meal, preferred)));
+            eligible.add(meals);
+        }
+
+        List<Set<String>> usedTitles = new ArrayList<>();
+        for (int t = 0; t < MEAL_TYPES.size(); t++) {
+            usedTitles.add(new HashSet<>());
+        }
+        List<DayPlan> weeklyPlan = new ArrayList<>();
+        int openSlots = 0;
+        for (String day : MealPlanFanOut.DAYS) {
+            List<List<Meal>> candidates = new ArrayList<>();
+            for (int t = 0; t < MEAL_TYPES.size(); t++) {
+                List<Meal> slotCandidates = new ArrayList<>();
+                for (Meal meal : eligible.get(t)) {
+                    if (slotCandidates.size() == candidatesPerSlot) {
+                        break;
+                    }
+                    if (!usedTitles.get(t).contains(titleKey(meal))) {
+                        slotCandidates.add(meal);
+                    }
+                }
+                candidates.add(slotCandidates);
+            }
+
+            Meal[] picked = calorieGoal > 0 ? balance(candidates, calorieGoal) : firstCandidates(candidates);
+            DayPlan dayPlan = new DayPlan();
+            dayPlan.setDay(day);
+            for (int t = 0; t < MEAL_TYPES.size(); t++) {
+                if (picked[t] == null) {
+                    Meal open = new Meal();
+                    open.setType(MEAL_TYPES.get(t));
+                    dayPlan.getMeals().add(open);
+                    openSlots++;
+                } else {
+                    usedTitles.get(t).add(titleKey(picked[t]));
+                    // Catalog meals are shared, the plan gets its own copy
+                    dayPlan.getMeals().add(objectMapper.convertValue(picked[t], Meal.class));
+                }
+            }
+            weeklyPlan.add(dayPlan);
+        }
+
+        if (openSlots > maxOpenSlots) {
+            return null;
+        }
+        MealPlan mealPlan = new MealPlan();
+        mealPlan.setWeeklyPlan(weeklyPlan);
+        return mealPlan;
+    }
+
+    public static int countOpenSlots(MealPlan mealPlan) {
+        int openSlots = 0;
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            for (Meal meal : dayPlan.getMeals()) {
+                if (meal.getTitle() == null) {
+                    openSlots++;
+                }
+            }
+        }
+        return openSlots;
+    }
+
+    // One meal per slot with the day's calories as close to the goal as possible: a multiple-choice knapsack
+    // over calorie buckets. Slots without candidates stay null and their usual share comes off the target.
+    private Meal[] balance(List<List<Meal>> candidates, int calorieGoal) {
+        int slots = candidates.size();
+        int shareTotal = Arrays.stream(CALORIE_SHARES).sum();
+        int openShare = 0;
+        int capacity = 0;
+        // Calorie buckets of every candidate, parsed once
+        int[][] weights = new int[slots][];
+        for (int t = 0; t < slots; t++) {
+            List<Meal> slotCandidates = candidates.get(t);
+            if (slotCandidates.isEmpty()) {
+                openShare += CALORIE_SHARES[t];
+            }
+            weights[t] = new int[slotCandidates.size()];
+            int slotMax = 0;
+            for (int i = 0; i < slotCandidates.size(); i++) {
+                weights[t][i] = (int) Math.round(calories(slotCandidates.get(i)) / (double) calorieStep);
+                slotMax = Math.max(slotMax, weights[t][i]);
+            }
+            capacity += slotMax;
+        }
+        int target = (int) Math.round(calorieGoal * (shareTotal - openShare) / (double) shareTotal / calorieStep);
+
+        // choices[t][b]: candidate of slot t that first reached calorie bucket b (-1 when b isn't reachable)
+        int[][] choices = new int[slots][];
+        boolean[] reachable = new boolean[capacity + 1];
+        reachable[0] = true;
+        for (int t = 0; t < slots; t++) {
+            if (weights[t].length == 0) {
+                continue;
+            }
+            boolean[] next = new boolean[capacity + 1];
+            int[] choice = new int[capacity + 1];
+            Arrays.fill(choice, -1);
+            for (int b = 0; b <= capacity; b++) {
+                if (!reachable[b]) {
+                    continue;
+                }
+                for (int i = 0; i < weights[t].length; i++) {
+                    int reached = b + weights[t][i];
+                    if (!next[reached]) {
+                        next[reached] = true;
+                        choice[reached] = i;
+                    }
+                }
+            }
+            choices[t] = choice;
+            reachable = next;
+        }
+
+        int best = -1;
+        for (int b = 0; b <= capacity; b++) {
+            if (reachable[b] && (best < 0 || Math.abs(b - target) < Math.abs(best - target))) {
+                best = b;
+            }
+        }
+
+        // Walk back from the best total, one slot at a time
+        Meal[] picked = new Meal[slots];
+        for (int t = slots - 1; t >= 0 && best >= 0; t--) {
+            if (choices[t] == null) {
+                continue;
+            }
+            int choice = choices[t][best];
+            picked[t] = candidates.get(t).get(choice);
+            best -= weights[t][choice];
+        }
+        return picked;
+    }
+
+    private static Meal[] firstCandidates(List<List<Meal>> candidates) {
+        Meal[] picked = new Meal[candidates.size()];
+        for (int t = 0; t < picked.length; t++) {
+            picked[t] = candidates.get(t).isEmpty() ? null : candidates.get(t).get(0);
+        }
+        return picked;
+    }
+
+    // First number in the calories text ("350", "350 kcal", "300-350"); 0 when there is none
+    static int calories(Meal meal) {
+        if (meal.getCalories() == null) {
+            return 0;
+        }
+        Matcher matcher = NUMBER.matcher(meal.getCalories());
+        return matcher.find() ? Integer.parseInt(matcher.group()) : 0;
+    }
+
+    // The diet a plan generated for this profile respects, as recorded with its logged meals
+    public static String dietOf(UserProfile userProfile) {
+        String diet = userProfile.getDietaryPreference() != null ? userProfile.getDietaryPreference().toLowerCase() : "";
+        if (diet.matches(".*non[- ]?veg.*")) {
+            return DIET_ANY;
+        } else if (diet.contains("vegan")) {
+            return DIET_VEGAN;
+        } else if (diet.contains("pescatarian") || diet.contains("pescetarian")) {
+            return DIET_PESCATARIAN;
+        } else if (diet.contains("vegetarian")) {
+            return DIET_VEGETARIAN;
+        }
+        return DIET_ANY;
+    }
+
+    // Words a meal's title and ingredients must not contain for this user; null for a diet that can't be
+    // checked against ingredient lists (keto, low-carb, ...), which is left to Cohere
+    static Set<String> excludedWords(UserProfile userProfile) {
+        Set<String> excluded = new HashSet<>();
+        String diet = userProfile.getDietaryPreference() != null ? userProfile.getDietaryPreference().toLowerCase() : "";
+
+        if (diet.matches(".*non[- ]?veg.*")) {
+            diet = diet.replaceAll("non[- ]?veg\\w*", " ");
+        } else if (diet.contains("vegan")) {
+            excluded.addAll(MEAT);
+            excluded.addAll(SEAFOOD);
+            excluded.addAll(DAIRY);
+            excluded.add("egg");
+            excluded.add("honey");
+            diet = diet.replace("vegan", " ");
+        } else if (diet.contains("pescatarian") || diet.contains("pescetarian")) {
+            excluded.addAll(MEAT);
+            diet = diet.replaceAll("pesc[ae]tarian", " ");
+        } else if (diet.contains("vegetarian")) {
+            excluded.addAll(MEAT);
+            excluded.addAll(SEAFOOD);
+            excluded.add("egg");
+            diet = diet.replace("vegetarian", " ");
+        }
+        for (Map.Entry<String, List<String>> allergen : ALLERGENS.entrySet()) {
+            Pattern freeFrom = Pattern.compile(allergen.getKey() + "[- ]free");
+            if (freeFrom.matcher(diet).find()) {
+                excluded.addAll(allergen.getValue());
+                diet = freeFrom.matcher(diet).replaceAll(" ");
+            }
+        }
+        for (String unrestricted : UNRESTRICTED_DIETS) {
+            diet = diet.replace(unrestricted, " ");
+        }
+        if (!diet.replaceAll("[^a-z]", "").isEmpty()) {
+            return null;
+        }
+
+        if (userProfile.getAllergies() != null) {
+            for (String allergy : userProfile.getAllergies().toLowerCase().split("[,;/]|\\band\\b")) {
+                allergy = allergy.trim();
+                if (allergy.isEmpty() || allergy.equals("none") || allergy.equals("no") || allergy.equals("nil") || allergy.equals("n/a")) {
+                    continue;
+                }
+                // "peanuts" -> "peanut"
+                excluded.add(allergy.length() > 3 && allergy.endsWith("s") ? allergy.substring(0, allergy.length() - 1) : allergy);
+                for (Map.Entry<String, List<String>> allergen : ALLERGENS.entrySet()) {
+                    if (allergy.contains(allergen.getKey())) {
+                        excluded.addAll(allergen.getValue());
+                    }
+                }
+                if (allergy.contains("fish")) {
+                    excluded.addAll(SEAFOOD);
+                }
+            }
+        }
+        return excluded;
+    }
+
+    private static boolean mentionsAny(Meal meal, Set<String> words) {
+        if (words.isEmpty()) {
+            return false;
+        }
+        String text = (meal.getTitle() + " " + String.join(" ", meal.getIngredients())).toLowerCase();
+        for (String word : words) {
+            if (text.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Preferred cuisines plus the user's city, matched against a meal's origin country and region
+    private static List<String> preferredOrigins(UserProfile userProfile) {
+        List<String> preferred = new ArrayList<>();
+        if (userProfile.getCuisinePreferences() != null) {
+            for (String cuisine : userProfile.getCuisinePreferences().toLowerCase().split("[,;/]")) {
+                if (!cuisine.isBlank()) {
+                    preferred.add(cuisine.trim());
+                }
+            }
+        }
+        if (userProfile.getCity() != null && !userProfile.getCity().isBlank()) {
+            preferred.add(userProfile.getCity().trim().toLowerCase());
+        }
+        return preferred;
+    }
+
+    private static boolean isPreferred(Meal meal, List<String> preferred) {
+        MealOrigin origin = meal.getOrigin();
+        String text = (origin.getCountry() + " " + origin.getRegion()).toLowerCase();
+        for (String word : preferred) {
+            if (text.contains(word)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String titleKey(Meal meal) {
+        return meal.getTitle().trim().toLowerCase();
+    }
+}
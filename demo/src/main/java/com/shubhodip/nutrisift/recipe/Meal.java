@@ -0,0 +1,118 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+// One meal or snack of a generated meal plan. Missing or empty instructions and a missing origin get
+// their defaults while binding, so every meal in a plan comes out complete. Instructions and ingredients
+// written as objects are flattened to text (ModelTextDeserializer).
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"type", "title", "description", "instructions", "calories", "origin", "ingredients"})
+public class Meal {
+    private String type;
+    private String title;
+    private String description;
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    @JsonDeserialize(contentUsing = ModelTextDeserializer.class)
+    private List<String> instructions = defaultInstructions();
+    private String calories;
+    private MealOrigin origin = defaultOrigin();
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    @JsonDeserialize(contentUsing = ModelTextDeserializer.class)
+    private List<String> ingredients = new ArrayList<>();
+    private final Map<String, Object> other = new LinkedHashMap<>();
+
+    // Default constructor
+    public Meal() {
+    }
+
+    // Getters and setters
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String description) {
+        this.description = description;
+    }
+
+    public List<String> getInstructions() {
+        return instructions;
+    }
+
+    public void setInstructions(List<String> instructions) {
+        this.instructions = instructions == null || instructions.isEmpty() ? defaultInstructions() : instructions;
+    }
+
+    public String getCalories() {
+        return calories;
+    }
+
+    public void setCalories(String calories) {
+        this.calories = calories;
+    }
+
+    public MealOrigin getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(MealOrigin origin) {
+        this.origin = origin != null ? origin : defaultOrigin();
+    }
+
+    public List<String> getIngredients() {
+        return ingredients;
+    }
+
+    public void setIngredients(List<String> ingredients) {
+        this.ingredients = ingredients != null ? ingredients : new ArrayList<>();
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getOther() {
+        return other;
+    }
+
+    @JsonAnySetter
+    public void setOther(String name, Object value) {
+        other.put(name, value);
+    }
+
+    // Basic instructions for a meal the model gave none for
+    private static List<String> defaultInstructions() {
+        List<String> basicInstructions = new ArrayList<>();
+        basicInstructions.add("Gather all ingredients");
+        basicInstructions.add("Prepare ingredients as needed (wash, chop, measure)");
+        basicInstructions.add("Cook according to conventional methods for this dish");
+        basicInstructions.add("Serve and enjoy");
+        return basicInstructions;
+    }
+
+    private static MealOrigin defaultOrigin() {
+        return new MealOrigin("International", "Various");
+    }
+}
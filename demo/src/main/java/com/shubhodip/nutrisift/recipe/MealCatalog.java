@@ -0,0 +1,112 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+// Typed catalog of the breakfasts, snacks, lunches and dinners earlier meal plans logged to recipe_logs,
+// for LocalMealPlanner. Each meal carries the diet of the plan it came from (LocalMealPlanner.dietOf), since
+// that is what the model was told to respect. One entry per meal type, diet and title (case-insensitive);
+// loaded once the application is up, then every newly saved plan adds its meals. Each type keeps its most
+// recently seen meals, up to a bound.
+@Component
+public class MealCatalog {
+
+    @Autowired
+    private RecipeDAO recipeDAO;
+
+    // Most recent logged meal plan meals read at startup
+    @Value("${meal-plan.catalog.load-limit:20000}")
+    private int loadLimit;
+
+    @Value("${meal-plan.catalog.max-meals-per-type:2000}")
+    private int maxMealsPerType;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Meal type -> diet and lowercased title -> meal, oldest first
+    private final Map<String, LinkedHashMap<String, CatalogMeal>> mealsByType = new HashMap<>();
+    private volatile boolean ready;
+
+    public static class CatalogMeal {
+        private final Meal meal;
+        private final String diet;
+
+        public CatalogMeal(Meal meal, String diet) {
+            this.meal = meal;
+            this.diet = diet;
+        }
+
+        public Meal getMeal() { return meal; }
+        public String getDiet() { return diet; }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        List<CatalogMeal> meals = recipeDAO.findMealPlanMeals(loadLimit);
+        // Newest first from the DAO, so add in reverse to keep the newest when a type overflows
+        for (int i = meals.size() - 1; i >= 0; i--) {
+            add(meals.get(i).getMeal(), meals.get(i).getDiet());
+        }
+        ready = true;
+        System.out.println("Meal catalog loaded: " + size() + " meals from " + meals.size() + " rows in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    // Meals without a type or title can't be placed in a plan and are ignored
+    public void add(Meal meal, String diet) {
+        if (meal == null || meal.getType() == null || meal.getTitle() == null || meal.getTitle().isBlank()) {
+            return;
+        }
+        String key = diet + "|" + meal.getTitle().trim().toLowerCase();
+        lock.writeLock().lock();
+        try {
+            LinkedHashMap<String, CatalogMeal> meals = mealsByType.computeIfAbsent(meal.getType(), type -> new LinkedHashMap<>());
+            // Re-adding moves the meal to the newest end
+            meals.remove(key);
+            meals.put(key, new CatalogMeal(meal, diet));
+            if (meals.size() > maxMealsPerType) {
+                meals.remove(meals.keySet().iterator().next());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Snapshot of one type's meals; callers must copy a meal before changing it
+    public List<CatalogMeal> getMeals(String type) {
+        lock.readLock().lock();
+        try {
+            LinkedHashMap<String, CatalogMeal> meals = mealsByType.get(type);
+            return meals != null ? new ArrayList<>(meals.values()) : new ArrayList<>();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            int size = 0;
+            for (LinkedHashMap<String, CatalogMeal> meals : mealsByType.values()) {
+                size += meals.size();
+            }
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.shubhodip.nutrisift.recipe;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Where a meal plan dish comes from; a plain string from the model is taken as the country
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MealOrigin {
+    private String country;
+    private String region;
+
+    // Default constructor
+    public MealOrigin() {
+    }
+
+    public MealOrigin(String country) {
+        this.country = country;
+    }
+
+    public MealOrigin(String country, String region) {
+        this.country = country;
+        this.region = region;
+    }
+
+    // Getters and setters
+    public String getCountry() {
+        return country;
+    }
+
+    public void setCountry(String country) {
+        this.country = country;
+    }
+
+    public String getRegion() {
+        return region;
+    }
+
+    public void setRegion(String region) {
+        this.region = region;
+    }
+}
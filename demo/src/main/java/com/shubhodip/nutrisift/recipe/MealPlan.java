@@ -0,0 +1,50 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+
+// A generated weekly meal plan as bound from the model's JSON, plus the variety score worked out for it
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"weeklyPlan", "varietyScore"})
+public class MealPlan {
+    private List<DayPlan> weeklyPlan;
+    private Double varietyScore;
+    private final Map<String, Object> other = new LinkedHashMap<>();
+
+    // Default constructor
+    public MealPlan() {
+    }
+
+    // Getters and setters
+    public List<DayPlan> getWeeklyPlan() {
+        return weeklyPlan;
+    }
+
+    public void setWeeklyPlan(List<DayPlan> weeklyPlan) {
+        this.weeklyPlan = weeklyPlan;
+    }
+
+    public Double getVarietyScore() {
+        return varietyScore;
+    }
+
+    public void setVarietyScore(Double varietyScore) {
+        this.varietyScore = varietyScore;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getOther() {
+        return other;
+    }
+
+    @JsonAnySetter
+    public void setOther(String name, Object value) {
+        other.put(name, value);
+    }
+}
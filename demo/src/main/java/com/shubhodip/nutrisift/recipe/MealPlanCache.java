@@ -0,0 +1,169 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Generated meal plans shared between users whose profiles would produce the same prompt.
+// The key is a canonical signature of every UserProfile field the meal plan prompt uses (lowercased, list
+// fields as sorted sets, the calorie goal quantized into buckets). Each key holds a small rotating pool of
+// plans: a new plan replaces the oldest once the pool is full, plans expire after a TTL, and the least
+// recently used keys are evicted past a bound. A user is only ever handed a plan they haven't been served.
+@Component
+public class MealPlanCache {
+
+    @Value("${meal-plan.cache.max-profiles:5000}")
+    private int maxProfiles;
+
+    @Value("${meal-plan.cache.pool-size:5}")
+    private int poolSize;
+
+    @Value("${meal-plan.cache.ttl-ms:604800000}")
+    private long ttlMs;
+
+    // Calorie goals within the same bucket share plans
+    @Value("${meal-plan.cache.calorie-bucket:200}")
+    private int calorieBucket;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Signature -> pool, in access order for LRU eviction
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, List<CachedPlan>> pools = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<CachedPlan>> eldest) {
+            return size() > maxProfiles;
+        }
+    };
+
+    private static class CachedPlan {
+        private final String json;
+        private final long createdAt;
+        private final Set<String> servedTo = new HashSet<>();
+
+        private CachedPlan(String json, long createdAt) {
+            this.json = json;
+            this.createdAt = createdAt;
+        }
+    }
+
+    // Canonical profile signature: users with equal signatures get the same meal plan prompt (up to the calorie bucket)
+    public String signature(UserProfile userProfile) {
+        int calorieGoal = userProfile.getCalorieGoal();
+        return String.join("|",
+            canonical(userProfile.getDietaryPreference()),
+            canonicalSet(userProfile.getAllergies()),
+            calorieGoal > 0 ? String.valueOf(Math.round(calorieGoal / (double) calorieBucket) * calorieBucket) : "",
+            canonicalSet(userProfile.getHealthGoals()),
+            canonicalSet(userProfile.getCuisinePreferences()),
+            // Same defaults as the prompt
+            userProfile.getCity() != null ? canonical(userProfile.getCity()) : "kolkata",
+            userProfile.getCountry() != null ? canonical(userProfile.getCountry()) : "india");
+    }
+
+    // A pooled plan uid hasn't been served yet (marked served now), as a fresh copy; null when there is none
+    public MealPlan take(String signature, String uid) {
+        String json = null;
+        lock.lock();
+        try {
+            List<CachedPlan> pool = pools.get(signature);
+            if (pool == null) {
+                return null;
+            }
+            removeExpired(pool);
+            for (CachedPlan plan : pool) {
+                if (!plan.servedTo.contains(uid)) {
+                    plan.servedTo.add(uid);
+                    json = plan.json;
+                    break;
+                }
+            }
+            if (pool.isEmpty()) {
+                pools.remove(signature);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, MealPlan.class);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Pool a plan just generated for uid (who has then already seen it)
+    public void put(String signature, String uid, MealPlan mealPlan) {
+        CachedPlan plan;
+        try {
+            plan = new CachedPlan(objectMapper.writeValueAsString(mealPlan), System.currentTimeMillis());
+        } catch (Exception e) {
+            e.printStackTrace();
+            return;
+        }
+        plan.servedTo.add(uid);
+        lock.lock();
+        try {
+            List<CachedPlan> pool = pools.computeIfAbsent(signature, key -> new ArrayList<>());
+            removeExpired(pool);
+            pool.add(plan);
+            if (pool.size() > poolSize) {
+                pool.remove(0);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            int size = 0;
+            for (Collection<CachedPlan> pool : pools.values()) {
+                size += pool.size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void removeExpired(List<CachedPlan> pool) {
+        long oldest = System.currentTimeMillis() - ttlMs;
+        for (Iterator<CachedPlan> it = pool.iterator(); it.hasNext();) {
+            if (it.next().createdAt < oldest) {
+                it.remove();
+            }
+        }
+    }
+
+    private static String canonical(String value) {
+        return value != null ? value.trim().toLowerCase().replaceAll("\\s+", " ") : "";
+    }
+
+    // "Peanuts, dairy" and "dairy,peanuts" sign the same; "none" counts as empty
+    private static String canonicalSet(String value) {
+        Set<String> items = new TreeSet<>();
+        for (String item : canonical(value).split("\\s*[,;/]\\s*")) {
+            if (!item.isEmpty() && !item.equals("none") && !item.equals("n/a")) {
+                items.add(item);
+            }
+        }
+        return String.join(",", items);
+    }
+}
@@ -0,0 +1,388 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.shubhodip.nutrisift.cohere.CohereClient;
+import com.shubhodip.nutrisift.cohere.JsonArrayElementExtractor;
+import com.shubhodip.nutrisift.cohere.ModelJsonReader;
+
+// Weekly meal plan generated as seven concurrent one-day Cohere calls instead of one 35-meal document.
+// Generation time grows with output length, so the plan arrives in about the time of its slowest day.
+// The days are merged in order, then breakfasts, lunches and dinners repeated on a later day (the meals
+// validateMealPlanVariety scores) are re-requested together in one small call, with every title already
+// in the plan excluded. Only the colliding slots are replaced; the rest of the plan is kept as generated.
+// The same slot call fills whatever a LocalMealPlanner plan left open, and regenerates a single meal or day
+// of a stored plan in place.
+@Component
+public class MealPlanFanOut {
+
+    public static final List<String> DAYS = List.of("Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday");
+
+    // Meal types whose repeats across the week count against variety
+    private static final Set<String> VARIETY_TYPES = Set.of("Breakfast", "Lunch", "Dinner");
+
+    // The five meals of one day in the JSON format the model is asked for (also used by the single-call prompt)
+    static final String DAY_MEALS_FORMAT =
+        "{\"type\": \"Breakfast\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\"], \"calories\": \"300\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}," +
+        "{\"type\": \"Morning Snack\", \"title\": \"Snack name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\"], \"calories\": \"150\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}," +
+        "{\"type\": \"Lunch\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\", \"step 4\"], \"calories\": \"500\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}," +
+        "{\"type\": \"Afternoon Snack\", \"title\": \"Snack name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\"], \"calories\": \"150\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}," +
+        "{\"type\": \"Dinner\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\", \"step 4\", \"step 5\"], \"calories\": \"600\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}";
+
+    @Autowired
+    private CohereClient cohereClient;
+
+    // How many times colliding slots are re-requested before the plan is returned with its repeats
+    @Value("${meal-plan.fan-out.repair-rounds:1}")
+    private int repairRounds;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectReader dayReader = objectMapper.readerFor(DayPlan.class);
+    private final ObjectReader mealReader = objectMapper.readerFor(Meal.class);
+
+    // A meal to ask Cohere for: one repeating an earlier day's dish, or one a local plan left open
+    private static class Slot {
+        private final DayPlan day;
+        private final int index;
+
+        private Slot(DayPlan day, int index) {
+            this.day = day;
+            this.index = index;
+        }
+
+        private Meal meal() {
+            return day.getMeals().get(index);
+        }
+    }
+
+    // The user's preferences and location, shared by the single-call and the per-day meal plan prompts and the
+    // off-peak pre-generation
+    static String buildPreferences(UserProfile userProfile) {
+        StringBuilder promptBuilder = new StringBuilder();
+        
+        // Add user preferences to the prompt
+        if (userProfile.getDietaryPreference() != null) {
+            promptBuilder.append("Diet: ").append(userProfile.getDietaryPreference()).append(". ");
+        }
+        
+        if (userProfile.getAllergies() != null && !userProfile.getAllergies().isEmpty()) {
+            promptBuilder.append("Allergies: ").append(userProfile.getAllergies()).append(". ");
+        }
+        
+        if (userProfile.getCalorieGoal() > 0) {
+            promptBuilder.append("Daily calorie goal: ").append(userProfile.getCalorieGoal()).append(". ");
+        }
+        
+        if (userProfile.getHealthGoals() != null) {
+            promptBuilder.append("Health goals: ").append(userProfile.getHealthGoals()).append(". ");
+        }
+        
+        if (userProfile.getCuisinePreferences() != null) {
+            promptBuilder.append("Preferred cuisines: ").append(userProfile.getCuisinePreferences()).append(". ");
+        }
+        
+        // Add location information for regional recommendations
+        String userCity = userProfile.getCity() != null ? userProfile.getCity() : "Kolkata";
+        String userCountry = userProfile.getCountry() != null ? userProfile.getCountry() : "India";
+        
+        promptBuilder.append("User lives in ").append(userCity).append(", ").append(userCountry).append(". ");
+        promptBuilder.append("Include local and regional dishes popular in ").append(userCity);
+        
+        return promptBuilder.toString();
+    }
+
+    // preferences is the profile part of the prompt, shared by every call. Replies are parsed on parseExecutor.
+    // Completes with the merged, de-duplicated plan (not yet scored or saved), or exceptionally when a day fails.
+    public CompletableFuture<MealPlan> generate(String uid, String preferences, Executor parseExecutor) {
+        List<CompletableFuture<DayPlan>> days = new ArrayList<>();
+        for (String day : DAYS) {
+            Map<String, Object> requestBody = cohereClient.newChatRequest(buildDayPrompt(day, preferences, List.of()));
+            requestBody.put("temperature", 0.7);
+            days.add(cohereClient.chatAsync(CohereClient.ENDPOINT_MEAL_PLAN_DAY, uid, requestBody)
+                .thenApplyAsync(content -> parseDay(day, content), parseExecutor));
+        }
+
+        return CompletableFuture.allOf(days.toArray(new CompletableFuture[0])).thenCompose(done -> {
+            List<DayPlan> weeklyPlan = new ArrayList<>();
+            for (CompletableFuture<DayPlan> day : days) {
+                weeklyPlan.add(day.join());
+            }
+            MealPlan mealPlan = new MealPlan();
+            mealPlan.setWeeklyPlan(weeklyPlan);
+            return repair(uid, preferences, mealPlan, repairRounds, parseExecutor);
+        });
+    }
+
+    private DayPlan parseDay(String day, String content) {
+        DayPlan dayPlan;
+        try {
+            dayPlan = ModelJsonReader.readFirstObject(dayReader, content);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+        if (dayPlan == null || dayPlan.getMeals().isEmpty()) {
+            throw new IllegalStateException("No meals generated for " + day);
+        }
+        dayPlan.setDay(day);
+        return dayPlan;
+    }
+
+    // Fill the slots a LocalMealPlanner plan left open (a type, no title) in one call, then the usual repair
+    // rounds. Fails when a slot is still open afterwards, since the plan can't be served with gaps.
+    public CompletableFuture<MealPlan> fill(String uid, String preferences, MealPlan mealPlan, Executor parseExecutor) {
+        List<Slot> open = findOpenSlots(mealPlan);
+        if (open.isEmpty()) {
+            return CompletableFuture.completedFuture(mealPlan);
+        }
+        return requestSlots(uid, preferences, mealPlan, open, parseExecutor).thenCompose(filled -> {
+            if (filled < open.size()) {
+                throw new IllegalStateException("Only " + filled + " of " + open.size() + " open meal plan slots could be filled");
+            }
+            return repair(uid, preferences, mealPlan, repairRounds, parseExecutor);
+        });
+    }
+
+    // Replace one meal of a stored plan, everything else in the plan excluded (the disliked meal included).
+    // Fails with IllegalArgumentException when the plan has no such day or meal type.
+    public CompletableFuture<MealPlan> regenerateMeal(String uid, String preferences, MealPlan mealPlan, String day, String mealType, Executor parseExecutor) {
+        DayPlan dayPlan = findDay(mealPlan, day);
+        int index = -1;
+        for (int i = 0; dayPlan != null && i < dayPlan.getMeals().size(); i++) {
+            if (mealType.equalsIgnoreCase(dayPlan.getMeals().get(i).getType())) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No " + mealType + " on " + day + " in this meal plan"));
+        }
+
+        return requestSlots(uid, preferences, mealPlan, List.of(new Slot(dayPlan, index)), parseExecutor).thenApply(replaced -> {
+            if (replaced == 0) {
+                throw new IllegalStateException("No replacement meal generated");
+            }
+            return mealPlan;
+        });
+    }
+
+    // Replace one day of a stored plan. The day's prompt lists every title of the other days (and of the day
+    // being replaced) as excluded; meals that still repeat another day are re-requested once.
+    public CompletableFuture<MealPlan> regenerateDay(String uid, String preferences, MealPlan mealPlan, String day, Executor parseExecutor) {
+        DayPlan oldDay = findDay(mealPlan, day);
+        if (oldDay == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("No " + day + " in this meal plan"));
+        }
+
+        Map<String, Object> requestBody = cohereClient.newChatRequest(buildDayPrompt(oldDay.getDay(), preferences, titles(mealPlan)));
+        requestBody.put("temperature", 0.9);
+        return cohereClient.chatAsync(CohereClient.ENDPOINT_MEAL_PLAN_DAY, uid, requestBody)
+            .thenApplyAsync(content -> parseDay(oldDay.getDay(), content), parseExecutor)
+            .thenCompose(newDay -> {
+                mealPlan.getWeeklyPlan().set(mealPlan.getWeeklyPlan().indexOf(oldDay), newDay);
+                List<Slot> repeats = findRepeatsOf(mealPlan, newDay);
+                if (repeats.isEmpty()) {
+                    return CompletableFuture.completedFuture(mealPlan);
+                }
+                return requestSlots(uid, preferences, mealPlan, repeats, parseExecutor)
+                    .exceptionally(e -> {
+                        System.err.println("Meal plan repair failed, keeping repeated meals: " + e.getMessage());
+                        return 0;
+                    })
+                    .thenApply(replaced -> mealPlan);
+            });
+    }
+
+    // Re-request the colliding slots until there are none or the rounds run out. A failed repair call
+    // keeps the plan as it is: repeats cost variety, not the whole plan.
+    private CompletableFuture<MealPlan> repair(String uid, String preferences, MealPlan mealPlan, int roundsLeft, Executor parseExecutor) {
+        List<Slot> repeats = findRepeats(mealPlan);
+        if (repeats.isEmpty() || roundsLeft <= 0) {
+            return CompletableFuture.completedFuture(mealPlan);
+        }
+
+        return requestSlots(uid, preferences, mealPlan, repeats, parseExecutor)
+            .exceptionally(e -> {
+                System.err.println("Meal plan repair failed, keeping repeated meals: " + e.getMessage());
+                return 0;
+            })
+            // A failed or empty repair ends the rounds
+            .thenCompose(replaced -> replaced > 0
+                ? repair(uid, preferences, mealPlan, roundsLeft - 1, parseExecutor)
+                : CompletableFuture.completedFuture(mealPlan));
+    }
+
+    // New meals for the given slots in one call, with every title already in the plan excluded.
+    // Completes with how many slots got a meal.
+    private CompletableFuture<Integer> requestSlots(String uid, String preferences, MealPlan mealPlan, List<Slot> slots, Executor parseExecutor) {
+        Map<String, Object> requestBody = cohereClient.newChatRequest(buildReplacementPrompt(preferences, mealPlan, slots));
+        requestBody.put("temperature", 0.9);
+        return cohereClient.chatAsync(CohereClient.ENDPOINT_MEAL_PLAN_DAY, uid, requestBody)
+            .thenApplyAsync(content -> {
+                List<Meal> replacements = parseMeals(content);
+                int replaced = 0;
+                for (int i = 0; i < slots.size() && i < replacements.size(); i++) {
+                    Slot slot = slots.get(i);
+                    Meal replacement = replacements.get(i);
+                    if (replacement != null) {
+                        replacement.setType(slot.meal().getType());
+                        slot.day.getMeals().set(slot.index, replacement);
+                        replaced++;
+                    }
+                }
+                System.out.println("Meal plan: Cohere filled " + replaced + " of " + slots.size() + " requested meals");
+                return replaced;
+            }, parseExecutor);
+    }
+
+    // Breakfast, lunch and dinner slots of one day whose title another day already has
+    private static List<Slot> findRepeatsOf(MealPlan mealPlan, DayPlan target) {
+        Set<String> elsewhere = new HashSet<>();
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            if (dayPlan != target) {
+                for (Meal meal : dayPlan.getMeals()) {
+                    if (VARIETY_TYPES.contains(meal.getType()) && meal.getTitle() != null) {
+                        elsewhere.add(meal.getType() + "|" + meal.getTitle().trim().toLowerCase());
+                    }
+                }
+            }
+        }
+        List<Slot> repeats = new ArrayList<>();
+        for (int i = 0; i < target.getMeals().size(); i++) {
+            Meal meal = target.getMeals().get(i);
+            if (meal.getTitle() != null && elsewhere.contains(meal.getType() + "|" + meal.getTitle().trim().toLowerCase())) {
+                repeats.add(new Slot(target, i));
+            }
+        }
+        return repeats;
+    }
+
+    private static DayPlan findDay(MealPlan mealPlan, String day) {
+        if (mealPlan.getWeeklyPlan() == null || day == null) {
+            return null;
+        }
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            if (day.trim().equalsIgnoreCase(dayPlan.getDay())) {
+                return dayPlan;
+            }
+        }
+        return null;
+    }
+
+    private static Set<String> titles(MealPlan mealPlan) {
+        Set<String> titles = new LinkedHashSet<>();
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            for (Meal meal : dayPlan.getMeals()) {
+                if (meal.getTitle() != null) {
+                    titles.add(meal.getTitle());
+                }
+            }
+        }
+        return titles;
+    }
+
+    private static List<Slot> findOpenSlots(MealPlan mealPlan) {
+        List<Slot> open = new ArrayList<>();
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            for (int i = 0; i < dayPlan.getMeals().size(); i++) {
+                if (dayPlan.getMeals().get(i).getTitle() == null) {
+                    open.add(new Slot(dayPlan, i));
+                }
+            }
+        }
+        return open;
+    }
+
+    // Breakfast, lunch and dinner slots whose title already appeared earlier in the week, in plan order.
+    // Titles are compared case-insensitively; the first occurrence is the one that stays.
+    private static List<Slot> findRepeats(MealPlan mealPlan) {
+        List<Slot> repeats = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (DayPlan dayPlan : mealPlan.getWeeklyPlan()) {
+            List<Meal> meals = dayPlan.getMeals();
+            for (int i = 0; i < meals.size(); i++) {
+                Meal meal = meals.get(i);
+                if (!VARIETY_TYPES.contains(meal.getType()) || meal.getTitle() == null) {
+                    continue;
+                }
+                if (!seen.add(meal.getType() + "|" + meal.getTitle().trim().toLowerCase())) {
+                    repeats.add(new Slot(dayPlan, i));
+                }
+            }
+        }
+        return repeats;
+    }
+
+    // Replacement meals in reply order; null for one that doesn't bind, so the others still line up with their slots
+    private List<Meal> parseMeals(String content) {
+        List<Meal> meals = new ArrayList<>();
+        JsonArrayElementExtractor extractor = new JsonArrayElementExtractor(element -> {
+            try {
+                meals.add(mealReader.readValue(element));
+            } catch (Exception e) {
+                // Skip a replacement that doesn't bind; its slot keeps the repeat
+                meals.add(null);
+            }
+        });
+        extractor.feed(content);
+        return meals;
+    }
+
+    // One day of the week. Without excluded titles the other days are being generated at the same time,
+    // so the prompt can't list their dishes; when regenerating a day of a stored plan it lists them all.
+    private String buildDayPrompt(String day, String preferences, Collection<String> excludedTitles) {
+        StringBuilder promptBuilder = new StringBuilder();
+        promptBuilder.append("Create a personalized one-day meal plan for ").append(day)
+            .append(" (breakfast, morning snack, lunch, afternoon snack, dinner) for a user with these preferences: ");
+        promptBuilder.append(preferences).append(". ");
+        promptBuilder.append("Include two healthy snacks between main meals. ");
+        if (excludedTitles.isEmpty()) {
+            promptBuilder.append("This is day ").append(DAYS.indexOf(day) + 1).append(" of a 7-day plan whose other days are planned separately, ");
+            promptBuilder.append("so avoid the most common everyday dishes and pick meals that suit ").append(day).append(" specifically. ");
+        } else {
+            promptBuilder.append("This day replaces ").append(day).append(" of an existing 7-day plan. ");
+            promptBuilder.append("Every meal must be a different dish from all of these, which are already in the plan: ");
+            promptBuilder.append(String.join(", ", excludedTitles)).append(". ");
+        }
+        promptBuilder.append("For each meal and snack, include a title, brief description, detailed cooking instructions, approximate calories, country of origin, and key ingredients. ");
+        promptBuilder.append("Respond with a JSON object in this exact format: ");
+        promptBuilder.append("{\"day\": \"").append(day).append("\", \"meals\": [");
+        promptBuilder.append(DAY_MEALS_FORMAT);
+        promptBuilder.append("]}");
+        return promptBuilder.toString();
+    }
+
+    private String buildReplacementPrompt(String preferences, MealPlan mealPlan, List<Slot> slots) {
+        Set<String> plannedTitles = titles(mealPlan);
+        List<String> slotNames = new ArrayList<>();
+        for (Slot slot : slots) {
+            slotNames.add(slot.day.getDay() + " " + slot.meal().getType());
+        }
+
+        StringBuilder promptBuilder = new StringBuilder();
+        promptBuilder.append("Suggest replacement meals for a weekly meal plan for a user with these preferences: ");
+        promptBuilder.append(preferences).append(". ");
+        promptBuilder.append("Replace exactly these ").append(slots.size()).append(" meals, in this order: ");
+        promptBuilder.append(String.join(", ", slotNames)).append(". ");
+        promptBuilder.append("Every replacement must be a different dish from the others and from all of these dishes already in the plan: ");
+        promptBuilder.append(String.join(", ", plannedTitles)).append(". ");
+        promptBuilder.append("For each meal, include a title, brief description, detailed cooking instructions, approximate calories, country of origin, and key ingredients. ");
+        promptBuilder.append("Respond with a JSON array of ").append(slots.size()).append(" meal objects in the same order, each in this exact format: ");
+        promptBuilder.append("[{\"type\": \"Breakfast\", \"title\": \"Recipe name\", \"description\": \"Brief description\", \"instructions\": [\"step 1\", \"step 2\", \"step 3\"], \"calories\": \"300\", \"origin\": {\"country\": \"Country name\", \"region\": \"Regional cuisine style\"}, \"ingredients\": [\"ingredient1\", \"ingredient2\"]}]");
+        return promptBuilder.toString();
+    }
+}
@@ -0,0 +1,230 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+// Generates the next weekly meal plan of active users ahead of time, during off-peak windows, so /recipe/meal-plan
+// can return it at once. Active means logged in (users.last_login) and asked for a meal plan (api_usage_logs)
+// within the last few days. At most max-concurrent generations run at a time; each tick only tops the running
+// ones back up to that budget. All of them share one fair-queue key, so together they never get more of Cohere
+// than a single interactive user would. Plans wait in meal_plan_pregen with the profile signature they were made
+// for: a profile update deletes the row, and a plan whose signature no longer matches is discarded when taken.
+@Component
+public class MealPlanPregenerator {
+
+    // Fair-queue identity of every pre-generation call
+    static final String FAIR_QUEUE_KEY = "meal-plan-pregen";
+
+    // recipe.meal-plan.pregen by outcome (generated, failed, served, discarded)
+    private static final String PREGEN_METRIC = "recipe.meal-plan.pregen";
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final ZoneId INDIAN_ZONE = ZoneId.of("Asia/Kolkata");
+
+    @Autowired
+    private RecipeDAO recipeDAO;
+
+    @Autowired
+    private LocalMealPlanner localMealPlanner;
+
+    @Autowired
+    private MealPlanFanOut mealPlanFanOut;
+
+    @Autowired
+    private MealPlanCache mealPlanCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Replies are parsed off the HttpClient threads, like the streaming endpoints' work
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private AsyncTaskExecutor parseExecutor;
+
+    @Value("${meal-plan.pregen.enabled:false}")
+    private boolean enabled;
+
+    // Comma separated HH:mm-HH:mm windows in Indian time; a window may wrap past midnight (23:00-02:00)
+    @Value("${meal-plan.pregen.windows:01:00-05:00}")
+    private String windowsSpec;
+
+    @Value("${meal-plan.pregen.max-concurrent:2}")
+    private int maxConcurrent;
+
+    // Logged in and used meal plans within this many days
+    @Value("${meal-plan.pregen.active-days:7}")
+    private int activeDays;
+
+    // Candidates read per tick; users in flight or failed today are skipped
+    @Value("${meal-plan.pregen.batch-size:50}")
+    private int batchSize;
+
+    // A waiting plan older than this is no longer served and gets generated again
+    @Value("${meal-plan.pregen.ttl-ms:172800000}")
+    private long ttlMs;
+
+    @Value("${meal-plan.local.enabled:true}")
+    private boolean localMealPlanEnabled;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private Semaphore permits;
+    private final List<LocalTime[]> windows = new ArrayList<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    // Users whose generation failed, by the day it failed; not retried until the next day
+    private final Map<String, LocalDate> failedOn = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    private void init() {
+        permits = new Semaphore(maxConcurrent);
+        meterRegistry.gauge("recipe.meal-plan.pregen.inflight", inFlight, Set::size);
+        for (String window : windowsSpec.split(",")) {
+            if (window.isBlank()) {
+                continue;
+            }
+            try {
+                String[] bounds = window.trim().split("-");
+                windows.add(new LocalTime[] { LocalTime.parse(bounds[0].trim()), LocalTime.parse(bounds[1].trim()) });
+            } catch (Exception e) {
+                System.err.println("Ignoring meal plan pre-generation window '" + window + "': " + e.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(initialDelayString = "${meal-plan.pregen.interval-ms:60000}",
+               fixedDelayString = "${meal-plan.pregen.interval-ms:60000}")
+    public void run() {
+        if (!enabled || !isOffPeak(LocalTime.now(INDIAN_ZONE)) || permits.availablePermits() == 0) {
+            return;
+        }
+        LocalDate today = LocalDate.now(INDIAN_ZONE);
+        failedOn.values().removeIf(day -> !day.equals(today));
+
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> candidates = recipeDAO.findPregenCandidates(
+            now - activeDays * 86400000L,
+            today.minusDays(activeDays).format(DATE_FORMATTER),
+            now - ttlMs,
+            batchSize);
+        for (Map<String, Object> candidate : candidates) {
+            String uid = (String) candidate.get("uid");
+            if (inFlight.contains(uid) || failedOn.containsKey(uid)) {
+                continue;
+            }
+            if (!permits.tryAcquire()) {
+                break; // Budget spent; the rest wait for a later tick
+            }
+            start(uid, (String) candidate.get("mail"));
+        }
+    }
+
+    boolean isOffPeak(LocalTime time) {
+        for (LocalTime[] window : windows) {
+            boolean inside = window[0].isBefore(window[1])
+                ? !time.isBefore(window[0]) && time.isBefore(window[1])
+                : !time.isBefore(window[0]) || time.isBefore(window[1]);
+            if (inside) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Called holding a permit; the permit is released when the generation ends either way
+    private void start(String uid, String mail) {
+        inFlight.add(uid);
+        CompletableFuture<MealPlan> generated;
+        String signature;
+        try {
+            UserProfile userProfile = recipeDAO.getUserProfile(uid, mail);
+            if (userProfile == null) {
+                finish(uid, false);
+                return;
+            }
+            signature = mealPlanCache.signature(userProfile);
+            String preferences = MealPlanFanOut.buildPreferences(userProfile);
+            // Same order as /recipe/meal-plan: the local catalog first, Cohere for what it can't fill. Otherwise one call
+            // per day regardless of meal-plan.fan-out.enabled; small calls interleave with interactive ones in the fair queue.
+            MealPlan localPlan = localMealPlanEnabled ? localMealPlanner.plan(userProfile) : null;
+            generated = localPlan != null
+                ? mealPlanFanOut.fill(FAIR_QUEUE_KEY, preferences, localPlan, parseExecutor)
+                : mealPlanFanOut.generate(FAIR_QUEUE_KEY, preferences, parseExecutor);
+        } catch (Exception e) {
+            e.printStackTrace();
+            finish(uid, false);
+            return;
+        }
+
+        generated.whenComplete((mealPlan, failure) -> {
+            boolean saved = false;
+            if (failure == null && mealPlan != null) {
+                try {
+                    recipeDAO.savePregeneratedMealPlan(uid, mail, signature, objectMapper.writeValueAsString(mealPlan));
+                    saved = true;
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            } else if (failure != null) {
+                System.err.println("Meal plan pre-generation failed for " + uid + ": " + failure.getMessage());
+            }
+            finish(uid, saved);
+        });
+    }
+
+    private void finish(String uid, boolean saved) {
+        if (!saved) {
+            failedOn.put(uid, LocalDate.now(INDIAN_ZONE));
+        }
+        meterRegistry.counter(PREGEN_METRIC, "outcome", saved ? "generated" : "failed").increment();
+        inFlight.remove(uid);
+        permits.release();
+    }
+
+    // The user's waiting plan if it was made for the profile with this signature and isn't past its TTL; the row
+    // is removed either way. The plan's meals are not in recipe_logs yet.
+    public MealPlan take(String uid, String mail, String signature) {
+        if (!enabled) {
+            return null;
+        }
+        Map<String, Object> pregenerated = recipeDAO.takePregeneratedMealPlan(uid, mail);
+        if (pregenerated == null) {
+            return null;
+        }
+        Timestamp createdAt = (Timestamp) pregenerated.get("created_at");
+        if (!signature.equals(pregenerated.get("profile_signature")) || createdAt.getTime() < System.currentTimeMillis() - ttlMs) {
+            meterRegistry.counter(PREGEN_METRIC, "outcome", "discarded").increment();
+            return null;
+        }
+        try {
+            MealPlan mealPlan = objectMapper.readValue((String) pregenerated.get("meal_plan"), MealPlan.class);
+            meterRegistry.counter(PREGEN_METRIC, "outcome", "served").increment();
+            return mealPlan;
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+}
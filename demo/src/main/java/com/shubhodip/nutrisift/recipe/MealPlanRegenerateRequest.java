@@ -0,0 +1,19 @@
+package com.shubhodip.nutrisift.recipe;
+
+// Which part of a stored meal plan to regenerate: a whole day, or one meal of it when mealType is set
+public class MealPlanRegenerateRequest {
+    private String uid;
+    private String mail;
+    private String day;
+    private String mealType;
+    
+    // Getters and setters
+    public String getUid() { return uid; }
+    public void setUid(String uid) { this.uid = uid; }
+    public String getMail() { return mail; }
+    public void setMail(String mail) { this.mail = mail; }
+    public String getDay() { return day; }
+    public void setDay(String day) { this.day = day; }
+    public String getMealType() { return mealType; }
+    public void setMealType(String mealType) { this.mealType = mealType; }
+}
@@ -0,0 +1,42 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+
+// Text fields of model output that the model sometimes writes as objects or arrays instead of strings
+// ({"name": "rice", "quantity": "2 cups"} for an ingredient, {"country": ..., "region": ...} for an origin).
+// Anything that isn't a string is flattened to its scalar values joined by ", " rather than failing the bind.
+class ModelTextDeserializer extends StdDeserializer<String> {
+
+    ModelTextDeserializer() {
+        super(String.class);
+    }
+
+    @Override
+    public String deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        return text(parser.readValueAsTree());
+    }
+
+    static String text(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        }
+        if (node.isValueNode()) {
+            return node.asText();
+        }
+        List<String> parts = new ArrayList<>();
+        for (JsonNode child : node) {
+            String part = text(child);
+            if (part != null && !part.isBlank()) {
+                parts.add(part);
+            }
+        }
+        return String.join(", ", parts);
+    }
+}
@@ -0,0 +1,150 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+// A generated recipe as bound from the model's JSON. Fields the model leaves out keep the defaults below,
+// so they are filled in while binding; fields it adds beyond these are carried through unchanged. Text fields the
+// model writes as objects (an ingredient as {"name", "quantity"}) are flattened by ModelTextDeserializer.
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonPropertyOrder({"id", "title", "ingredients", "steps", "calories", "diet", "origin", "course", "cuisine", "prepTime", "cookTime"})
+public class Recipe {
+    public static final String NOT_AVAILABLE = "Not available";
+    public static final String NOT_SPECIFIED = "Not specified";
+
+    private Long id;
+    @JsonDeserialize(using = ModelTextDeserializer.class)
+    private String title;
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    @JsonDeserialize(contentUsing = ModelTextDeserializer.class)
+    private List<String> ingredients = new ArrayList<>();
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    @JsonDeserialize(contentUsing = ModelTextDeserializer.class)
+    private List<String> steps = new ArrayList<>();
+    @JsonDeserialize(using = ModelTextDeserializer.class)
+    private String calories = NOT_AVAILABLE;
+    @JsonDeserialize(using = ModelTextDeserializer.class)
+    private String diet = NOT_SPECIFIED;
+    @JsonDeserialize(using = ModelTextDeserializer.class)
+    private String origin = NOT_SPECIFIED;
+    @JsonDeserialize(using = ModelTextDeserializer.class)
+    private String course = NOT_SPECIFIED;
+    @JsonDeserialize(using = ModelTextDeserializer.class)
+    private String cuisine = NOT_SPECIFIED;
+    private Object prepTime;
+    private Object cookTime;
+    private final Map<String, Object> other = new LinkedHashMap<>();
+
+    // Default constructor
+    public Recipe() {
+    }
+
+    // Getters and setters
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public void setTitle(String title) {
+        this.title = title;
+    }
+
+    public List<String> getIngredients() {
+        return ingredients;
+    }
+
+    public void setIngredients(List<String> ingredients) {
+        this.ingredients = ingredients != null ? ingredients : new ArrayList<>();
+    }
+
+    public List<String> getSteps() {
+        return steps;
+    }
+
+    public void setSteps(List<String> steps) {
+        this.steps = steps != null ? steps : new ArrayList<>();
+    }
+
+    public String getCalories() {
+        return calories;
+    }
+
+    public void setCalories(String calories) {
+        this.calories = calories != null ? calories : NOT_AVAILABLE;
+    }
+
+    public String getDiet() {
+        return diet;
+    }
+
+    public void setDiet(String diet) {
+        this.diet = diet != null ? diet : NOT_SPECIFIED;
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public void setOrigin(String origin) {
+        this.origin = origin != null ? origin : NOT_SPECIFIED;
+    }
+
+    public String getCourse() {
+        return course;
+    }
+
+    public void setCourse(String course) {
+        this.course = course != null ? course : NOT_SPECIFIED;
+    }
+
+    public String getCuisine() {
+        return cuisine;
+    }
+
+    public void setCuisine(String cuisine) {
+        this.cuisine = cuisine != null ? cuisine : NOT_SPECIFIED;
+    }
+
+    // Times stay as the model wrote them ("30", 30 or "30 minutes")
+    public Object getPrepTime() {
+        return prepTime;
+    }
+
+    public void setPrepTime(Object prepTime) {
+        this.prepTime = prepTime;
+    }
+
+    public Object getCookTime() {
+        return cookTime;
+    }
+
+    public void setCookTime(Object cookTime) {
+        this.cookTime = cookTime;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getOther() {
+        return other;
+    }
+
+    @JsonAnySetter
+    public void setOther(String name, Object value) {
+        other.put(name, value);
+    }
+}
@@ -3,17 +3,37 @@ package com.shubhodip.nutrisift.recipe;
 import java.util.List;
 import java.util.Map;
 
+import com.shubhodip.nutrisift.recipe.MealCatalog.CatalogMeal;
+import com.shubhodip.nutrisift.recipe.RecipePayloadCache.RecipePayload;
+
 public interface RecipeDAO {
+    // Sources recorded in recipe_log_hits
+    String SOURCE_GENERATE = "generate";
+    String SOURCE_CACHE = "cache";
+    String SOURCE_SEARCH = "search";
+    String SOURCE_MEAL_PLAN = "meal-plan";
+    String SOURCE_COALESCED = "coalesced"; // Shared another request's in-flight Cohere call
+
     int saveRecipe(SavedRecipe recipe);
     SavedRecipe getRecipeById(long id);
     List<SavedRecipe> getRecipesByUserId(String uid);
     boolean deleteRecipe(long id);
-    List<String> findRecipesByIngredients(String ingredients);
+    List<RecipePayload> findRecipesByIngredients(String ingredients);
+    RecipePayload findSimilarRecipe(String ingredients);
     UserProfile getUserProfile(String uid, String mail);
     void saveMealPlan(String uid, String mail, String mealPlanJson);
-    String saveRecipelogs(String uid, String mail, String prompt, String ingredients, String result);
+    String saveRecipelogs(String uid, String mail, String prompt, String ingredients, String result, String source);
+    void recordRecipeHit(String uid, RecipePayload recipe, String source);
+    void recordResultHit(String uid, String result, String source); // A hit on the recipe with this result JSON, stored or not
     List<Map<String, Object>> getUserMealPlans(String uid, String mail);
+    List<CatalogMeal> findMealPlanMeals(int limit); // Meals logged by meal plan generation with their plan's diet, newest first
     boolean deleteMealPlan(long id);
+    Map<String, Object> getMealPlan(long id, String uid, String mail); // The plan's JSON (meal_plan) and version, null when it isn't this user's
+    boolean updateMealPlan(long id, String mealPlanJson, int version); // false when the plan was updated since version was read
+    // Active users (uid, mail) without a pre-generated plan newer than pregeneratedAfter, most recent login first
+    List<Map<String, Object>> findPregenCandidates(long loggedInAfter, String usedMealPlansSince, long pregeneratedAfter, int limit);
+    void savePregeneratedMealPlan(String uid, String mail, String profileSignature, String mealPlanJson);
+    Map<String, Object> takePregeneratedMealPlan(String uid, String mail); // Removes and returns the waiting plan, null when there is none
     
     // Add this new method for recipe discovery
     List<SavedRecipe> discoverRecipes(String calorieRange, String diet, String origin, String course, String cuisine);
@@ -1,22 +1,48 @@
 package com.shubhodip.nutrisift.recipe;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.shubhodip.nutrisift.recipe.MealCatalog.CatalogMeal;
+import com.shubhodip.nutrisift.recipe.RecipePayloadCache.RecipePayload;
+
+import jakarta.annotation.PostConstruct;
 
 @Repository
 public class RecipeDAOImpl implements RecipeDAO {
@@ -27,6 +53,72 @@ public class RecipeDAOImpl implements RecipeDAO {
     @Autowired
     private ObjectMapper objectMapper; // Add ObjectMapper for JSON processing
 
+    @Autowired
+    private RecipeMatchIndex recipeMatchIndex;
+
+    @Autowired
+    private IngredientNormalizer ingredientNormalizer;
+
+    @Autowired
+    private RecipeVectorIndex recipeVectorIndex;
+
+    @Autowired
+    private RecipeIndexSnapshot recipeIndexSnapshot;
+
+    @Autowired
+    private RecipePayloadCache recipePayloadCache;
+
+    // Minimum bidirectional score for a logged recipe to count as a match
+    private static final double MATCH_THRESHOLD = 0.8;
+
+    // Number of best matches returned (ChatController only serves the first one)
+    @Value("${recipe.match.top-k:1}")
+    private int matchTopK;
+
+    // Rows per round trip when streaming recipe_logs without the index
+    @Value("${recipe.match.fetch-size:500}")
+    private int matchFetchSize;
+
+    // "memory" scores against the in-memory RecipeMatchIndex, "tokens" filters candidates in SQL via recipe_log_tokens
+    @Value("${recipe.match.strategy:memory}")
+    private String matchStrategy;
+
+    // Fill ingredient_norm and recipe_log_tokens for rows written before they existed
+    @Value("${recipe.tokens.backfill.enabled:false}")
+    private boolean tokenBackfillEnabled;
+
+    // Hash legacy recipe_logs rows and fold duplicates into recipe_log_hits (deletes rows, off by default)
+    @Value("${recipe.logs.dedupe.enabled:false}")
+    private boolean dedupeBackfillEnabled;
+
+    // Sorted keys so equal recipes serialize (and hash) identically
+    private ObjectWriter canonicalJsonWriter;
+
+    @PostConstruct
+    private void initCanonicalJsonWriter() {
+        canonicalJsonWriter = objectMapper.writer().with(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS);
+    }
+
+    // Serve the nearest logged recipe (cosine similarity over hashed ingredient vectors) when no exact match is found
+    @Value("${recipe.semantic-cache.enabled:true}")
+    private boolean semanticCacheEnabled;
+
+    @Value("${recipe.semantic-cache.min-similarity:0.85}")
+    private double semanticMinSimilarity;
+
+    private static final String STRATEGY_TOKENS = "tokens";
+    private static final int MAX_TOKEN_LENGTH = 191; // recipe_log_tokens.token column size
+    private static final int MAX_SUBSTRING_PARAMS = 1000;
+    private static final int TOKEN_GRAM_SIZE = 3; // recipe_log_token_grams.gram column size
+
+    // Tokens whose grams this process has already written; a token's grams only need inserting once
+    private final Set<String> grammedTokens = ConcurrentHashMap.newKeySet();
+    private static final int TOKEN_BACKFILL_BATCH_SIZE = 1000;
+    private static final String META_NORMALIZER_FINGERPRINT = "ingredient_normalizer_fingerprint";
+    private static final int DEDUPE_BATCH_SIZE = 1000;
+    private static final String SOURCE_LEGACY = "legacy";
+    private static final Pattern MEAL_PLAN_DIET = Pattern.compile("\\| diet: (\\w+)$");
+
     @Override
     public int saveRecipe(SavedRecipe recipe) {
         try {
@@ -162,7 +254,7 @@ public class RecipeDAOImpl implements RecipeDAO {
     }
 
     @Override
-    public String saveRecipelogs(String uid, String mail, String prompt, String ingredients, String result) {
+    public String saveRecipelogs(String uid, String mail, String prompt, String ingredients, String result, String source) {
         try {
             // Validate required fields
             if (uid == null || mail == null) {
@@ -175,18 +267,55 @@ public class RecipeDAOImpl implements RecipeDAO {
             String sanitizedIngredients = ingredients != null ? ingredients.replace("'", "''") : null;
             String sanitizedResult = result != null ? result.replace("'", "''") : null;
             
-            String sql = "INSERT INTO recipe_logs (uid, mail, prompt, ingredient, result) VALUES (?, ?, ?, ?, ?)";
+            String resultHash = contentHash(sanitizedResult);
             
-            jdbcTemplate.update(
-                sql,
-                uid,
-                mail,
-                sanitizedPrompt,
-                sanitizedIngredients,
-                sanitizedResult
-            );
+            // Normalized ingredient tokens are computed once here rather than on every lookup
+            List<String> normalizedTokens = ingredientNormalizer.normalizeTokens(ingredients);
+            String normalizedIngredients = String.join(" ", normalizedTokens);
+            
+            // Each recipe is stored once under its unique content hash; a repeat fails on the key and only records a hit.
+            // A plain INSERT, not INSERT IGNORE, which would also turn truncation and NOT NULL errors into warnings.
+            String sql = "INSERT INTO recipe_logs (uid, mail, prompt, ingredient, ingredient_norm, result, result_hash) VALUES (?, ?, ?, ?, ?, ?, ?)";
             
-            return "Recipe log saved successfully";
+            KeyHolder keyHolder = new GeneratedKeyHolder();
+            int inserted;
+            try {
+                inserted = jdbcTemplate.update(con -> {
+                    PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+                    ps.setString(1, uid);
+                    ps.setString(2, mail);
+                    ps.setString(3, sanitizedPrompt);
+                    ps.setString(4, sanitizedIngredients);
+                    ps.setString(5, normalizedIngredients);
+                    ps.setString(6, sanitizedResult);
+                    ps.setString(7, resultHash);
+                    return ps;
+                }, keyHolder);
+            } catch (DuplicateKeyException e) {
+                inserted = 0;
+            }
+            
+            Number logId = inserted > 0 ? keyHolder.getKey() : null;
+            if (logId != null) {
+                saveRecipeLogTokens(logId.longValue(), normalizedTokens);
+                ingredientNormalizer.learn(normalizedTokens);
+                
+                // Keep the in-memory indexes current with the new row
+                if (usesMemoryIndex()) {
+                    recipeMatchIndex.add(logId.longValue(), normalizedIngredients);
+                }
+                if (semanticCacheEnabled) {
+                    recipeVectorIndex.add(logId.longValue(), normalizedTokens);
+                }
+                if (sanitizedResult != null) {
+                    recipePayloadCache.ingest(logId.longValue(), sanitizedResult, resultHash);
+                }
+            }
+            if (resultHash != null) {
+                insertRecipeHit(uid, resultHash, source);
+            }
+            
+            return inserted > 0 ? "Recipe log saved successfully" : "Recipe log already stored, hit recorded";
             
         } catch (Exception e) {
             //System.err.println("Error in saveRecipelogs: " + e.getMessage());
@@ -195,50 +324,312 @@ public class RecipeDAOImpl implements RecipeDAO {
         }
     }
 
+    // Record that an already logged recipe (as returned by findRecipesByIngredients) was served again
+    @Override
+    public void recordRecipeHit(String uid, RecipePayload recipe, String source) {
+        try {
+            if (uid != null && recipe != null && recipe.getResultHash() != null) {
+                insertRecipeHit(uid, recipe.getResultHash(), source);
+            }
+        } catch (Exception e) {
+            System.err.println("Error recording recipe hit: " + e.getMessage());
+        }
+    }
+
+    // Coalesced followers share the leader's reply, which the leader stores; hashed the way saveRecipelogs does
     @Override
-    public List<String> findRecipesByIngredients(String ingredients) {
-        List<String> matchingRecipes = new ArrayList<>();
-        Map<String, Double> recipeScores = new HashMap<>();
+    public void recordResultHit(String uid, String result, String source) {
+        try {
+            String resultHash = contentHash(result != null ? result.replace("'", "''") : null);
+            if (uid != null && resultHash != null) {
+                insertRecipeHit(uid, resultHash, source);
+            }
+        } catch (Exception e) {
+            System.err.println("Error recording recipe hit: " + e.getMessage());
+        }
+    }
+
+    private void insertRecipeHit(String uid, String resultHash, String source) {
+        String sql = "INSERT INTO recipe_log_hits (uid, recipe_hash, source) VALUES (?, ?, ?)";
+        jdbcTemplate.update(sql, uid, resultHash, source);
+    }
+
+    // SHA-256 over the recipe JSON with sorted keys and without the per-response "id" field,
+    // so the same recipe always hashes the same however it was serialized
+    private String contentHash(String recipeJson) {
+        if (recipeJson == null) {
+            return null;
+        }
+        String normalized;
+        try {
+            Object tree = objectMapper.readValue(recipeJson, Object.class);
+            if (tree instanceof Map) {
+                ((Map<?, ?>) tree).remove("id");
+            }
+            normalized = canonicalJsonWriter.writeValueAsString(tree);
+        } catch (Exception e) {
+            normalized = recipeJson.trim(); // Not valid JSON, hash the raw text
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public List<RecipePayload> findRecipesByIngredients(String ingredients) {
+        List<String> requestedIngredientsList = ingredientNormalizer.normalizeQuery(ingredients);
+        TopKRecipeScores topK = new TopKRecipeScores(matchTopK);
         
-        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
-            // Normalize and split the requested ingredients
-            String normalizedRequestIngredients = ingredients.toLowerCase().trim();
-            List<String> requestedIngredientsList = java.util.Arrays.asList(
-                normalizedRequestIngredients.split("[,\\s]+"));
+        if (STRATEGY_TOKENS.equals(matchStrategy)) {
+            // Let the database pick the candidate rows from recipe_log_tokens
+            streamTokenCandidates(requestedIngredientsList, topK);
+        } else if (recipeMatchIndex.isReady()) {
+            // Only recipes sharing at least one matching token are scored
+            recipeMatchIndex.search(requestedIngredientsList, MATCH_THRESHOLD, topK);
+        } else {
+            // Index still building (or failed to build) - stream the whole table instead
+            streamTopRecipes(requestedIngredientsList, topK);
+        }
+        
+        return loadRecipeResults(topK.logIdsByScore());
+    }
+
+    // Score only the rows whose stored tokens equal, contain or are contained in a requested token.
+    // "requested contains stored" is an indexed IN over every substring of the requested tokens. "stored contains
+    // requested" seeks recipe_log_token_grams on one 3-gram of the requested token and checks containment on the
+    // few tokens sharing it; requested tokens shorter than a gram fall back to a LIKE scan of the token index.
+    private void streamTokenCandidates(List<String> requestedIngredientsList, TopKRecipeScores topK) {
+        if (requestedIngredientsList.isEmpty()) {
+            return;
+        }
+        
+        Set<String> substrings = new LinkedHashSet<>();
+        for (String reqIng : requestedIngredientsList) {
+            for (int begin = 0; begin < reqIng.length(); begin++) {
+                for (int end = begin + 1; end <= Math.min(reqIng.length(), begin + MAX_TOKEN_LENGTH); end++) {
+                    substrings.add(reqIng.substring(begin, end));
+                }
+            }
+        }
+        
+        StringBuilder where = new StringBuilder();
+        List<Object> params = new ArrayList<>();
+        if (substrings.size() <= MAX_SUBSTRING_PARAMS) {
+            where.append("t.token IN (").append(String.join(", ", Collections.nCopies(substrings.size(), "?"))).append(")");
+            params.addAll(substrings);
+        } else {
+            // Very long request tokens: let the database test containment directly
+            for (String reqIng : requestedIngredientsList) {
+                where.append(params.isEmpty() ? "" : " OR ").append("LOCATE(t.token, ?) > 0");
+                params.add(reqIng);
+            }
+        }
+        for (String reqIng : requestedIngredientsList) {
+            if (reqIng.length() >= TOKEN_GRAM_SIZE) {
+                where.append(" OR t.token IN (SELECT g.token FROM recipe_log_token_grams g WHERE g.gram = ? AND g.token LIKE ?)");
+                params.add(reqIng.substring(0, TOKEN_GRAM_SIZE));
+            } else {
+                where.append(" OR t.token LIKE ?");
+            }
+            params.add("%" + escapeLike(reqIng) + "%");
+        }
+        
+        String sql = "SELECT l.id, l.ingredient, l.ingredient_norm FROM recipe_logs l WHERE l.id IN " +
+                     "(SELECT t.log_id FROM recipe_log_tokens t WHERE " + where + ")";
+        
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(matchFetchSize);
+            for (int i = 0; i < params.size(); i++) {
+                stmt.setObject(i + 1, params.get(i));
+            }
             
-            // Filter out empty strings
-            requestedIngredientsList = requestedIngredientsList.stream()
-                .filter(ing -> !ing.isEmpty())
-                .collect(Collectors.toList());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    double matchScore = calculateBidirectionalMatchScore(normalizedIngredients(rs), requestedIngredientsList);
+                    if (matchScore >= MATCH_THRESHOLD) {
+                        topK.offer(rs.getLong("id"), matchScore);
+                        if (topK.isSaturated()) {
+                            break; // Already holding K perfect matches
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Normalized ingredients of a recipe_logs row, computed on the fly for rows written before ingredient_norm existed
+    private String normalizedIngredients(ResultSet rs) throws SQLException {
+        String normalized = rs.getString("ingredient_norm");
+        return normalized != null ? normalized : ingredientNormalizer.normalize(rs.getString("ingredient"));
+    }
+
+    // Store the distinct normalized ingredient tokens of one recipe_logs row
+    private void saveRecipeLogTokens(long logId, List<String> normalizedTokens) {
+        try {
+            List<Object[]> rows = new ArrayList<>();
+            for (String token : new LinkedHashSet<>(normalizedTokens)) {
+                // Longer tokens are still scored, they just can't be used as a candidate filter
+                if (token.length() <= MAX_TOKEN_LENGTH) {
+                    rows.add(new Object[] { logId, token });
+                }
+            }
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate("INSERT IGNORE INTO recipe_log_tokens (log_id, token) VALUES (?, ?)", rows);
+            }
             
-            // Query to get all recipes
-            String sql = "SELECT ingredient, result FROM recipe_logs";
-            try (PreparedStatement stmt = conn.prepareStatement(sql);
-                 ResultSet rs = stmt.executeQuery()) {
+            List<String> newTokens = new ArrayList<>();
+            for (Object[] row : rows) {
+                if (!grammedTokens.contains(row[1])) {
+                    newTokens.add((String) row[1]);
+                }
+            }
+            saveTokenGrams(newTokens);
+        } catch (Exception e) {
+            System.err.println("Error saving recipe log tokens for log " + logId + ": " + e.getMessage());
+        }
+    }
+
+    // Store the 3-grams of tokens not yet in recipe_log_token_grams (tokens shorter than a gram have none)
+    private void saveTokenGrams(List<String> tokens) {
+        List<Object[]> rows = new ArrayList<>();
+        for (String token : tokens) {
+            Set<String> grams = new LinkedHashSet<>();
+            for (int i = 0; i + TOKEN_GRAM_SIZE <= token.length(); i++) {
+                grams.add(token.substring(i, i + TOKEN_GRAM_SIZE));
+            }
+            for (String gram : grams) {
+                rows.add(new Object[] { gram, token });
+            }
+        }
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate("INSERT IGNORE INTO recipe_log_token_grams (gram, token) VALUES (?, ?)", rows);
+        }
+        grammedTokens.addAll(tokens);
+    }
+
+    // Grams for tokens stored before recipe_log_token_grams existed
+    private void backfillTokenGrams() {
+        try {
+            List<String> tokens = jdbcTemplate.queryForList("SELECT DISTINCT t.token FROM recipe_log_tokens t " +
+                "WHERE NOT EXISTS (SELECT 1 FROM recipe_log_token_grams g WHERE g.token = t.token)", String.class);
+            for (int from = 0; from < tokens.size(); from += TOKEN_BACKFILL_BATCH_SIZE) {
+                saveTokenGrams(tokens.subList(from, Math.min(tokens.size(), from + TOKEN_BACKFILL_BATCH_SIZE)));
+            }
+            if (!tokens.isEmpty()) {
+                System.out.println("Recipe log token gram backfill done: " + tokens.size() + " tokens");
+            }
+        } catch (Exception e) {
+            System.err.println("Error backfilling recipe log token grams: " + e.getMessage());
+        }
+    }
+
+    // Near-miss lookup: the closest logged recipe by hashed ingredient vector, if similar enough
+    @Override
+    public RecipePayload findSimilarRecipe(String ingredients) {
+        if (!semanticCacheEnabled) {
+            return null;
+        }
+        try {
+            RecipeVectorIndex.Match match = recipeVectorIndex.nearest(ingredientNormalizer.normalizeQuery(ingredients));
+            if (match == null || match.getSimilarity() < semanticMinSimilarity) {
+                return null;
+            }
+            List<RecipePayload> results = loadRecipeResults(List.of(match.getLogId()));
+            return results.isEmpty() ? null : results.get(0);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Stream (id, ingredient) rows with a forward-only cursor and keep only the best K row ids
+    private void streamTopRecipes(List<String> requestedIngredientsList, TopKRecipeScores topK) {
+        if (requestedIngredientsList.isEmpty()) {
+            return;
+        }
+        
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            String sql = "SELECT id, ingredient, ingredient_norm FROM recipe_logs";
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(matchFetchSize);
                 
-                while (rs.next()) {
-                    String storedIngredients = rs.getString("ingredient");
-                    String recipeJson = rs.getString("result");
-                    
-                    // Calculate match score with improved algorithm
-                    double matchScore = calculateBidirectionalMatchScore(
-                        storedIngredients, 
-                        requestedIngredientsList
-                    );
-                    
-                    // Only consider recipes with at least 80% match
-                    if (matchScore >= 0.8) {
-                        recipeScores.put(recipeJson, matchScore);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        // Calculate match score with improved algorithm
+                        double matchScore = calculateBidirectionalMatchScore(
+                            normalizedIngredients(rs), 
+                            requestedIngredientsList
+                        );
+                        
+                        // Only consider recipes with at least 80% match
+                        if (matchScore >= MATCH_THRESHOLD) {
+                            topK.offer(rs.getLong("id"), matchScore);
+                            if (topK.isSaturated()) {
+                                break; // Already holding K perfect matches
+                            }
+                        }
                     }
                 }
             }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Payloads of the winning rows only, keeping score order. Rows already in the payload cache are not re-read.
+    private List<RecipePayload> loadRecipeResults(List<Long> logIds) {
+        List<RecipePayload> matchingRecipes = new ArrayList<>();
+        if (logIds.isEmpty()) {
+            return matchingRecipes;
+        }
+        
+        try {
+            Map<Long, RecipePayload> payloadsById = new HashMap<>();
+            List<Long> missing = new ArrayList<>();
+            for (Long logId : logIds) {
+                RecipePayload cached = recipePayloadCache.get(logId);
+                if (cached != null) {
+                    payloadsById.put(logId, cached);
+                } else {
+                    missing.add(logId);
+                }
+            }
             
-            // Sort recipes by match score (highest first)
-            matchingRecipes = recipeScores.entrySet().stream()
-                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toList());
+            if (!missing.isEmpty()) {
+                String placeholders = String.join(", ", Collections.nCopies(missing.size(), "?"));
+                String sql = "SELECT id, result, result_hash FROM recipe_logs WHERE id IN (" + placeholders + ")";
+                jdbcTemplate.query(sql, rs -> {
+                    long logId = rs.getLong("id");
+                    String result = rs.getString("result");
+                    if (result == null) {
+                        return;
+                    }
+                    // Rows written before result_hash existed are hashed once here
+                    String resultHash = rs.getString("result_hash");
+                    RecipePayload payload = recipePayloadCache.ingest(logId, result, resultHash != null ? resultHash : contentHash(result));
+                    if (payload != null) {
+                        payloadsById.put(logId, payload);
+                    }
+                }, missing.toArray());
+            }
             
+            Set<String> seenHashes = new HashSet<>();
+            for (Long logId : logIds) {
+                RecipePayload payload = payloadsById.get(logId);
+                if (payload != null && seenHashes.add(payload.getResultHash())) {
+                    matchingRecipes.add(payload);
+                }
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -246,21 +637,291 @@ public class RecipeDAOImpl implements RecipeDAO {
         return matchingRecipes;
     }
 
+    // Prepare the recipe_logs side tables and the in-memory index once the application is up
+    @EventListener(ApplicationReadyEvent.class)
+    public void initRecipeLogs() {
+        applyRecipeLogSchema();
+        int removedLogs = 0;
+        if (!hasUniqueResultHash()) {
+            removedLogs += mergeDuplicateResultHashes();
+            applyRecipeLogSchema();
+        }
+        if (dedupeBackfillEnabled) {
+            removedLogs += dedupeRecipeLogs();
+        }
+        if (tokenBackfillEnabled) {
+            backfillRecipeLogTokens();
+        }
+        int renormalizedLogs = renormalizeRecipeLogsIfChanged();
+        if (!usesMemoryIndex()) {
+            backfillTokenGrams();
+        }
+        if (usesMemoryIndex() || semanticCacheEnabled) {
+            // A snapshot taken before rows were deleted or re-normalized would still hold the old rows
+            buildInMemoryIndexes(removedLogs == 0 && renormalizedLogs == 0);
+        } else {
+            loadTokenVocabulary();
+        }
+    }
+
+    private void applyRecipeLogSchema() {
+        try {
+            ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("db/recipe_logs.sql"), new ClassPathResource("db/meal_plan_pregen.sql"),
+                new ClassPathResource("db/meal_plans.sql"));
+            populator.setContinueOnError(true);
+            populator.execute(jdbcTemplate.getDataSource());
+        } catch (Exception e) {
+            System.err.println("Error applying recipe_logs schema: " + e.getMessage());
+        }
+    }
+
+    // One-time job: hash every legacy recipe_logs row. The first row with a given hash is kept,
+    // later copies are turned into recipe_log_hits rows and deleted (together with their tokens).
+    private int dedupeRecipeLogs() {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int hashed = 0;
+        int removed = 0;
+        try {
+            String sql = "SELECT id, uid, result FROM recipe_logs WHERE id > ? AND result_hash IS NULL " +
+                         "ORDER BY id LIMIT " + DEDUPE_BATCH_SIZE;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, lastId);
+                for (Map<String, Object> row : rows) {
+                    lastId = ((Number) row.get("id")).longValue();
+                    String resultHash = contentHash((String) row.get("result"));
+                    if (resultHash == null) {
+                        continue;
+                    }
+                    
+                    // The unique index rejects the hash when an earlier row (or a live insert) already has it
+                    try {
+                        jdbcTemplate.update("UPDATE recipe_logs SET result_hash = ? WHERE id = ?", resultHash, lastId);
+                        hashed++;
+                    } catch (DuplicateKeyException e) {
+                        removeDuplicateRecipeLog(String.valueOf(row.get("uid")), resultHash, lastId);
+                        removed++;
+                    }
+                }
+                if (rows.size() < DEDUPE_BATCH_SIZE) {
+                    break;
+                }
+            }
+            System.out.println("Recipe log dedupe done: " + hashed + " unique, " + removed + " duplicates removed in "
+                + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.err.println("Error deduplicating recipe logs after id " + lastId + ": " + e.getMessage());
+        }
+        return removed;
+    }
+
+    // A later copy of an already stored recipe becomes a hit on the stored one
+    private void removeDuplicateRecipeLog(String uid, String resultHash, long logId) {
+        insertRecipeHit(uid, resultHash, SOURCE_LEGACY);
+        jdbcTemplate.update("DELETE FROM recipe_log_tokens WHERE log_id = ?", logId);
+        jdbcTemplate.update("DELETE FROM recipe_logs WHERE id = ?", logId);
+    }
+
+    // Rows stored twice under one hash before result_hash was unique: keep the first of each, so the
+    // unique index can be created
+    private int mergeDuplicateResultHashes() {
+        int removed = 0;
+        try {
+            List<String> hashes = jdbcTemplate.queryForList("SELECT result_hash FROM recipe_logs WHERE result_hash IS NOT NULL " +
+                "GROUP BY result_hash HAVING COUNT(*) > 1", String.class);
+            for (String resultHash : hashes) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(
+                    "SELECT id, uid FROM recipe_logs WHERE result_hash = ? ORDER BY id", resultHash);
+                for (Map<String, Object> row : rows.subList(1, rows.size())) {
+                    removeDuplicateRecipeLog(String.valueOf(row.get("uid")), resultHash, ((Number) row.get("id")).longValue());
+                    removed++;
+                }
+            }
+            System.out.println("Merged " + removed + " recipe_logs rows with duplicate result hashes");
+        } catch (Exception e) {
+            System.err.println("Error merging duplicate recipe log hashes: " + e.getMessage());
+        }
+        return removed;
+    }
+
+    private boolean hasUniqueResultHash() {
+        try {
+            Integer count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.statistics " +
+                "WHERE table_schema = DATABASE() AND table_name = 'recipe_logs' AND index_name = 'uq_recipe_logs_result_hash'", Integer.class);
+            return count != null && count > 0;
+        } catch (Exception e) {
+            System.err.println("Error checking recipe_logs indexes: " + e.getMessage());
+            return true; // Nothing more can be done without the database
+        }
+    }
+
+    // One-time job: normalize every recipe_logs row without ingredient_norm (and re-token it), in id order
+    private void backfillRecipeLogTokens() {
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int backfilled = 0;
+        try {
+            String sql = "SELECT id, ingredient FROM recipe_logs WHERE id > ? AND ingredient_norm IS NULL " +
+                         "ORDER BY id LIMIT " + TOKEN_BACKFILL_BATCH_SIZE;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, lastId);
+                for (Map<String, Object> row : rows) {
+                    lastId = ((Number) row.get("id")).longValue();
+                    List<String> normalizedTokens = ingredientNormalizer.normalizeTokens((String) row.get("ingredient"));
+                    jdbcTemplate.update("UPDATE recipe_logs SET ingredient_norm = ? WHERE id = ?", String.join(" ", normalizedTokens), lastId);
+                    jdbcTemplate.update("DELETE FROM recipe_log_tokens WHERE log_id = ?", lastId);
+                    saveRecipeLogTokens(lastId, normalizedTokens);
+                }
+                backfilled += rows.size();
+                if (rows.size() < TOKEN_BACKFILL_BATCH_SIZE) {
+                    break;
+                }
+            }
+            System.out.println("Recipe log token backfill done: " + backfilled + " rows in "
+                + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.err.println("Error backfilling recipe log tokens after id " + lastId + ": " + e.getMessage());
+        }
+    }
+
+    // ingredient_norm and recipe_log_tokens are only comparable with requests normalized the same way. When the
+    // normalizer fingerprint differs from the one recorded in recipe_log_meta (or none is recorded yet), every
+    // normalized row is normalized again and re-tokened where it changed, then the new fingerprint is recorded.
+    // Interrupted, it starts over on the next startup; rows saved meanwhile already use the new normalization.
+    // Returns the rows changed, -1 when it failed part way.
+    private int renormalizeRecipeLogsIfChanged() {
+        String fingerprint = String.valueOf(ingredientNormalizer.fingerprint());
+        try {
+            List<String> stored = jdbcTemplate.queryForList("SELECT value FROM recipe_log_meta WHERE name = ?", String.class, META_NORMALIZER_FINGERPRINT);
+            if (!stored.isEmpty() && stored.get(0).equals(fingerprint)) {
+                return 0;
+            }
+        } catch (Exception e) {
+            System.err.println("Error reading the recipe_logs normalizer fingerprint: " + e.getMessage());
+            return 0; // Nothing more can be done without the database
+        }
+
+        long start = System.currentTimeMillis();
+        long lastId = 0;
+        int changed = 0;
+        try {
+            String sql = "SELECT id, ingredient, ingredient_norm FROM recipe_logs WHERE id > ? AND ingredient_norm IS NOT NULL " +
+                         "ORDER BY id LIMIT " + TOKEN_BACKFILL_BATCH_SIZE;
+            while (true) {
+                List<Map<String, Object>> rows = jdbcTemplate.queryForList(sql, lastId);
+                for (Map<String, Object> row : rows) {
+                    lastId = ((Number) row.get("id")).longValue();
+                    List<String> normalizedTokens = ingredientNormalizer.normalizeTokens((String) row.get("ingredient"));
+                    String normalized = String.join(" ", normalizedTokens);
+                    if (normalized.equals(row.get("ingredient_norm"))) {
+                        continue;
+                    }
+                    jdbcTemplate.update("UPDATE recipe_logs SET ingredient_norm = ? WHERE id = ?", normalized, lastId);
+                    jdbcTemplate.update("DELETE FROM recipe_log_tokens WHERE log_id = ?", lastId);
+                    saveRecipeLogTokens(lastId, normalizedTokens);
+                    changed++;
+                }
+                if (rows.size() < TOKEN_BACKFILL_BATCH_SIZE) {
+                    break;
+                }
+            }
+            jdbcTemplate.update("INSERT INTO recipe_log_meta (name, value) VALUES (?, ?) ON DUPLICATE KEY UPDATE value = VALUES(value)",
+                META_NORMALIZER_FINGERPRINT, fingerprint);
+            System.out.println("Recipe logs re-normalized for ingredient normalizer " + fingerprint + ": " + changed + " rows changed in "
+                + (System.currentTimeMillis() - start) + " ms");
+            return changed;
+        } catch (Exception e) {
+            System.err.println("Error re-normalizing recipe logs after id " + lastId + ": " + e.getMessage());
+            return -1;
+        }
+    }
+
+    // Spell correction needs the stored vocabulary even when the in-memory index is not built
+    private void loadTokenVocabulary() {
+        try {
+            List<String> vocabulary = jdbcTemplate.queryForList("SELECT DISTINCT token FROM recipe_log_tokens", String.class);
+            ingredientNormalizer.learn(vocabulary);
+        } catch (Exception e) {
+            System.err.println("Error loading ingredient vocabulary: " + e.getMessage());
+        }
+    }
+
+    private boolean usesMemoryIndex() {
+        return !STRATEGY_TOKENS.equals(matchStrategy);
+    }
+
+    // Restore the indexes from the snapshot file when possible, then one pass over the recipe_logs rows
+    // the snapshot does not cover, feeding the ingredient index and the semantic vector index
+    private void buildInMemoryIndexes(boolean snapshotAllowed) {
+        long start = System.currentTimeMillis();
+        boolean restored = snapshotAllowed && recipeIndexSnapshot.load(usesMemoryIndex(), semanticCacheEnabled);
+        if (restored) {
+            ingredientNormalizer.learn(recipeMatchIndex.vocabulary());
+            if (!usesMemoryIndex()) {
+                loadTokenVocabulary();
+            }
+        }
+
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            // Rows inserted after this point are added live by saveRecipelogs
+            long highWaterMark = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("SELECT COALESCE(MAX(id), 0) FROM recipe_logs");
+                 ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    highWaterMark = rs.getLong(1);
+                }
+            }
+
+            // Each index only needs the rows from where its restored snapshot section says to replay (0 when nothing
+            // was restored). Not the index's live mark: saveRecipelogs may already have added newer rows. Rows added
+            // both live and here, or both in the snapshot and here, are only indexed once.
+            long matchIndexMark = !usesMemoryIndex() ? Long.MAX_VALUE : restored ? recipeIndexSnapshot.getMatchReplayFrom() : 0;
+            long vectorIndexMark = !semanticCacheEnabled ? Long.MAX_VALUE : restored ? recipeIndexSnapshot.getVectorReplayFrom() : 0;
+            long replayFrom = Math.min(matchIndexMark, vectorIndexMark);
+            int replayed = 0;
+
+            String sql = "SELECT id, ingredient, ingredient_norm FROM recipe_logs WHERE id > ? AND id <= ? ORDER BY id";
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(matchFetchSize);
+                stmt.setLong(1, replayFrom);
+                stmt.setLong(2, highWaterMark);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        long id = rs.getLong("id");
+                        String normalized = normalizedIngredients(rs);
+                        List<String> normalizedTokens = RecipeMatchIndex.tokenize(normalized);
+                        if (id > matchIndexMark) {
+                            recipeMatchIndex.add(id, normalized);
+                        }
+                        if (id > vectorIndexMark) {
+                            recipeVectorIndex.add(id, normalizedTokens);
+                        }
+                        ingredientNormalizer.learn(normalizedTokens);
+                        replayed++;
+                    }
+                }
+            }
+            
+            if (usesMemoryIndex()) {
+                recipeMatchIndex.markReady(highWaterMark);
+            }
+            recipeIndexSnapshot.activate(usesMemoryIndex(), semanticCacheEnabled);
+            System.out.println("Recipe indexes built" + (restored ? " from snapshot" : "") + ": " + recipeMatchIndex.size() + " indexed, "
+                + recipeVectorIndex.size() + " vectors, " + replayed + " rows replayed in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            System.err.println("Error building recipe match index, falling back to full scans: " + e.getMessage());
+        }
+    }
+
     // Improved bidirectional matching algorithm
     private double calculateBidirectionalMatchScore(String storedIngredients, List<String> requestedIngredientsList) {
         if (storedIngredients == null || requestedIngredientsList.isEmpty()) {
             return 0.0;
         }
         
-        // Normalize stored ingredients
-        String normalizedStored = storedIngredients.toLowerCase().trim();
-        List<String> storedIngredientsList = java.util.Arrays.asList(
-            normalizedStored.split("[,\\s]+"));
-        
-        // Filter out empty strings
-        storedIngredientsList = storedIngredientsList.stream()
-            .filter(ing -> !ing.isEmpty())
-            .collect(Collectors.toList());
+        // Stored ingredients are already normalized, just split them
+        List<String> storedIngredientsList = RecipeMatchIndex.tokenize(storedIngredients);
         
         if (storedIngredientsList.isEmpty()) {
             return 0.0;
@@ -273,9 +934,7 @@ public class RecipeDAOImpl implements RecipeDAO {
         // Count how many requested ingredients are found in the recipe
         for (String reqIng : requestedIngredientsList) {
             for (String storedIng : storedIngredientsList) {
-                if (storedIng.equals(reqIng) || 
-                    storedIng.contains(reqIng) || 
-                    reqIng.contains(storedIng)) {
+                if (RecipeMatchIndex.tokensMatch(storedIng, reqIng)) {
                     requestedIngredientsFound++;
                     break;
                 }
@@ -285,9 +944,7 @@ public class RecipeDAOImpl implements RecipeDAO {
         // Count how many recipe ingredients match requested ingredients
         for (String storedIng : storedIngredientsList) {
             for (String reqIng : requestedIngredientsList) {
-                if (storedIng.equals(reqIng) || 
-                    storedIng.contains(reqIng) || 
-                    reqIng.contains(storedIng)) {
+                if (RecipeMatchIndex.tokensMatch(storedIng, reqIng)) {
                     storedIngredientsMatched++;
                     break;
                 }
@@ -435,6 +1092,167 @@ public class RecipeDAOImpl implements RecipeDAO {
         return mealPlans;
     }
 
+    @Override
+    public List<CatalogMeal> findMealPlanMeals(int limit) {
+        List<CatalogMeal> meals = new ArrayList<>();
+        
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            // finishMealPlan logs every meal with a "Meal plan: <type> for <day> - <title> | diet: <diet>" prompt;
+            // rows logged before the diet was recorded count as unrestricted
+            String sql = "SELECT prompt, result FROM recipe_logs WHERE prompt LIKE 'Meal plan: %' ORDER BY id DESC LIMIT ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                stmt.setFetchSize(matchFetchSize);
+                stmt.setInt(1, limit);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        try {
+                            Matcher diet = MEAL_PLAN_DIET.matcher(rs.getString("prompt"));
+                            String mealDiet = diet.find() ? diet.group(1) : LocalMealPlanner.DIET_ANY;
+                            meals.add(new CatalogMeal(objectMapper.readValue(rs.getString("result"), Meal.class), mealDiet));
+                        } catch (Exception e) {
+                            // Skip a row that isn't a meal object
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        
+        return meals;
+    }
+
+    @Override
+    public Map<String, Object> getMealPlan(long id, String uid, String mail) {
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            String sql = "SELECT meal_plan, version FROM meal_plans WHERE id = ? AND uid = ? AND email = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setLong(1, id);
+                stmt.setString(2, uid);
+                stmt.setString(3, mail);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return null;
+                    }
+                    Map<String, Object> mealPlan = new HashMap<>();
+                    mealPlan.put("meal_plan", rs.getString("meal_plan"));
+                    mealPlan.put("version", rs.getInt("version"));
+                    return mealPlan;
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public boolean updateMealPlan(long id, String mealPlanJson, int version) {
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            String sql = "UPDATE meal_plans SET meal_plan = ?, version = version + 1 WHERE id = ? AND version = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, mealPlanJson);
+                stmt.setLong(2, id);
+                stmt.setInt(3, version);
+                return stmt.executeUpdate() > 0;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public List<Map<String, Object>> findPregenCandidates(long loggedInAfter, String usedMealPlansSince, long pregeneratedAfter, int limit) {
+        List<Map<String, Object>> candidates = new ArrayList<>();
+        
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            // Logged in recently and asked for a meal plan recently (generated, shared or pre-generated)
+            String sql = "SELECT p.uid, p.mail FROM profile p " +
+                         "JOIN users u ON u.email = p.mail " +
+                         "LEFT JOIN meal_plan_pregen g ON g.uid = p.uid " +
+                         "WHERE u.last_login >= ? AND (g.uid IS NULL OR g.created_at < ?) " +
+                         "AND EXISTS (SELECT 1 FROM api_usage_logs a WHERE a.user_id = p.uid AND a.email = p.mail " +
+                         "AND a.endpoint IN ('meal-plan', 'meal-plan-cached', 'meal-plan-pregenerated') AND a.usage_date >= ?) " +
+                         "ORDER BY u.last_login DESC LIMIT ?";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setTimestamp(1, new Timestamp(loggedInAfter));
+                stmt.setTimestamp(2, new Timestamp(pregeneratedAfter));
+                stmt.setString(3, usedMealPlansSince);
+                stmt.setInt(4, limit);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        Map<String, Object> candidate = new HashMap<>();
+                        candidate.put("uid", rs.getString("uid"));
+                        candidate.put("mail", rs.getString("mail"));
+                        candidates.add(candidate);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        
+        return candidates;
+    }
+
+    @Override
+    public void savePregeneratedMealPlan(String uid, String mail, String profileSignature, String mealPlanJson) {
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            // One waiting plan per user; a newer one replaces it
+            String sql = "INSERT INTO meal_plan_pregen (uid, email, profile_signature, meal_plan, created_at) VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP) " +
+                         "ON DUPLICATE KEY UPDATE email = VALUES(email), profile_signature = VALUES(profile_signature), " +
+                         "meal_plan = VALUES(meal_plan), created_at = VALUES(created_at)";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                stmt.setString(1, uid);
+                stmt.setString(2, mail);
+                stmt.setString(3, profileSignature);
+                stmt.setString(4, mealPlanJson);
+                stmt.executeUpdate();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Map<String, Object> takePregeneratedMealPlan(String uid, String mail) {
+        try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
+            Map<String, Object> pregenerated = null;
+            String selectSql = "SELECT profile_signature, meal_plan, created_at FROM meal_plan_pregen WHERE uid = ? AND email = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(selectSql)) {
+                stmt.setString(1, uid);
+                stmt.setString(2, mail);
+                
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        pregenerated = new HashMap<>();
+                        pregenerated.put("profile_signature", rs.getString("profile_signature"));
+                        pregenerated.put("meal_plan", rs.getString("meal_plan"));
+                        pregenerated.put("created_at", rs.getTimestamp("created_at"));
+                    }
+                }
+            }
+            if (pregenerated == null) {
+                return null;
+            }
+            
+            // Only the request whose delete removed the row gets the plan
+            String deleteSql = "DELETE FROM meal_plan_pregen WHERE uid = ? AND created_at = ?";
+            try (PreparedStatement stmt = conn.prepareStatement(deleteSql)) {
+                stmt.setString(1, uid);
+                stmt.setTimestamp(2, (Timestamp) pregenerated.get("created_at"));
+                return stmt.executeUpdate() > 0 ? pregenerated : null;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     @Override
     public boolean deleteMealPlan(long id) {
         try (Connection conn = jdbcTemplate.getDataSource().getConnection()) {
@@ -0,0 +1,217 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Versioned binary snapshot of the in-memory recipe indexes, so a restart maps a file instead of
+// re-reading all of recipe_logs. After loading, only rows above each section's high-water mark, less a replay
+// margin, are replayed. The mark is the highest id indexed, and concurrent saves can index row 102 before row
+// 101; the margin covers rows still in flight when the snapshot was taken, and rows indexed twice are deduped.
+//
+// Layout (big-endian): magic, format version, normalizer fingerprint, section flags, created-at millis,
+// then the RecipeMatchIndex section and/or the RecipeVectorIndex section.
+@Component
+public class RecipeIndexSnapshot {
+
+    private static final int MAGIC = 0x4E535249; // "NSRI"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HAS_MATCH_INDEX = 1;
+    private static final int HAS_VECTOR_INDEX = 2;
+
+    @Value("${recipe.index.snapshot.enabled:true}")
+    private boolean enabled;
+
+    @Value("${recipe.index.snapshot.path:data/recipe-index.snap}")
+    private String path;
+
+    // Ids below a section's mark that are replayed anyway, for rows that were not indexed yet when it was written
+    @Value("${recipe.index.snapshot.replay-margin:1000}")
+    private long replayMargin;
+
+    @Autowired
+    private RecipeMatchIndex recipeMatchIndex;
+
+    @Autowired
+    private RecipeVectorIndex recipeVectorIndex;
+
+    @Autowired
+    private IngredientNormalizer ingredientNormalizer;
+
+    // Sections the running configuration keeps in memory; set once the indexes are built.
+    // The last written marks are set under writeLock but read by writePeriodically without it.
+    private volatile int activeSections;
+    private volatile long lastWrittenMatchMark = -1;
+    private volatile long lastWrittenVectorMark = -1;
+
+    // Where the startup replay starts for each section: its mark in the file less the replay margin (0 when
+    // nothing was loaded). Read from the file itself: live adds can raise the indexes' own marks before the replay.
+    private long matchReplayFrom;
+    private long vectorReplayFrom;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Restore the indexes from the snapshot file. Returns false (indexes untouched) when the file is missing,
+    // unreadable, from another format version, built with other synonyms, or lacks a section we need.
+    public boolean load(boolean withMatchIndex, boolean withVectorIndex) {
+        Path file = Paths.get(path);
+        if (!enabled || !Files.isReadable(file)) {
+            return false;
+        }
+        long start = System.currentTimeMillis();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+                System.err.println("Ignoring recipe index snapshot " + file + ": unknown format");
+                return false;
+            }
+            if (in.getInt() != ingredientNormalizer.fingerprint()) {
+                System.err.println("Ignoring recipe index snapshot " + file + ": ingredient normalization changed");
+                return false;
+            }
+            int sections = in.getInt();
+            if ((withMatchIndex && (sections & HAS_MATCH_INDEX) == 0) || (withVectorIndex && (sections & HAS_VECTOR_INDEX) == 0)) {
+                System.err.println("Ignoring recipe index snapshot " + file + ": missing index sections");
+                return false;
+            }
+            in.getLong(); // created-at, informational
+
+            // Sections are always present in this order; skip the ones not in use by reading into a throwaway index
+            long matchMark = 0;
+            long vectorMark = 0;
+            if ((sections & HAS_MATCH_INDEX) != 0) {
+                matchMark = (withMatchIndex ? recipeMatchIndex : new RecipeMatchIndex()).readSnapshot(in);
+            }
+            if ((sections & HAS_VECTOR_INDEX) != 0 && withVectorIndex) {
+                vectorMark = recipeVectorIndex.readSnapshot(in);
+            }
+
+            matchReplayFrom = withMatchIndex ? Math.max(0, matchMark - replayMargin) : 0;
+            vectorReplayFrom = Math.max(0, vectorMark - replayMargin);
+            lastWrittenMatchMark = withMatchIndex ? matchMark : 0;
+            lastWrittenVectorMark = vectorMark;
+            System.out.println("Recipe index snapshot loaded from " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+            return true;
+        } catch (Exception e) {
+            System.err.println("Error loading recipe index snapshot " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public long getMatchReplayFrom() {
+        return matchReplayFrom;
+    }
+
+    public long getVectorReplayFrom() {
+        return vectorReplayFrom;
+    }
+
+    // Called once the indexes are built; periodic snapshots start from here
+    public void activate(boolean withMatchIndex, boolean withVectorIndex) {
+        activeSections = (withMatchIndex ? HAS_MATCH_INDEX : 0) | (withVectorIndex ? HAS_VECTOR_INDEX : 0);
+    }
+
+    @Scheduled(initialDelayString = "${recipe.index.snapshot.interval-ms:600000}",
+               fixedDelayString = "${recipe.index.snapshot.interval-ms:600000}")
+    public void writePeriodically() {
+        int sections = activeSections;
+        if (!enabled || sections == 0) {
+            return;
+        }
+        long matchMark = recipeMatchIndex.getHighWaterMark();
+        long vectorMark = recipeVectorIndex.getHighWaterMark();
+        if (matchMark == lastWrittenMatchMark && vectorMark == lastWrittenVectorMark) {
+            return; // Nothing new since the last snapshot
+        }
+        write(sections);
+    }
+
+    // Write to a temp file and atomically move it over the previous snapshot. One writer at a time; a ReentrantLock
+    // rather than synchronized because the file I/O inside would pin a virtual thread's carrier for the whole write.
+    void write(int sections) {
+        writeLock.lock();
+        try {
+            writeFile(sections);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void writeFile(int sections) {
+        Path file = Paths.get(path);
+        long start = System.currentTimeMillis();
+        try {
+            Path dir = file.toAbsolutePath().getParent();
+            Files.createDirectories(dir);
+            Path temp = Files.createTempFile(dir, "recipe-index", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeInt(ingredientNormalizer.fingerprint());
+                out.writeInt(sections);
+                out.writeLong(System.currentTimeMillis());
+
+                long matchMark = recipeMatchIndex.getHighWaterMark();
+                long vectorMark = recipeVectorIndex.getHighWaterMark();
+                if ((sections & HAS_MATCH_INDEX) != 0) {
+                    recipeMatchIndex.writeSnapshot(out);
+                }
+                if ((sections & HAS_VECTOR_INDEX) != 0) {
+                    recipeVectorIndex.writeSnapshot(out);
+                }
+                lastWrittenMatchMark = matchMark;
+                lastWrittenVectorMark = vectorMark;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            System.out.println("Recipe index snapshot written to " + file + " in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.err.println("Error writing recipe index snapshot " + file + ": " + e.getMessage());
+        }
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Writes the count followed by the first count values
+    static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    // Reads count values (the count itself already consumed) into an array of at least capacity
+    static int[] readInts(ByteBuffer in, int count, int capacity) {
+        int[] values = new int[Math.max(count, capacity)];
+        in.asIntBuffer().get(values, 0, count);
+        in.position(in.position() + count * Integer.BYTES);
+        return values;
+    }
+}
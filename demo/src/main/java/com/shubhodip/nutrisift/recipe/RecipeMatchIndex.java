@@ -0,0 +1,375 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+// In-memory inverted index over recipe_logs.ingredient.
+// Every ingredient token is interned to an int id and maps to a posting list of recipe slots,
+// so a lookup only scores recipes that share at least one (substring-)matching token with the request.
+// A gram index over the token vocabulary resolves the lenient contains rule without scanning the vocabulary.
+@Component
+public class RecipeMatchIndex {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Token dictionary: token -> id and id -> token
+    private final Map<String, Integer> tokenIds = new HashMap<>();
+    private final List<String> tokens = new ArrayList<>();
+
+    // Vocabulary gram index: every distinct 1-, 2- and 3-gram of a token -> ids of the tokens containing it
+    private static final int GRAM_SIZE = 3;
+    private final Map<String, int[]> gramTokens = new HashMap<>();
+    private final Map<String, Integer> gramTokenCounts = new HashMap<>();
+
+    // Posting lists: token id -> recipe slots containing that token (each slot at most once)
+    private int[][] postings = new int[256][];
+    private int[] postingSizes = new int[256];
+
+    // Recipe slots: slot -> recipe_logs.id and slot -> token ids in stored order (duplicates kept)
+    private long[] logIds = new long[1024];
+    private int[][] recipeTokens = new int[1024][];
+    private int recipeCount;
+
+    // Highest recipe_logs.id added so far, and every id added: a row replayed at startup and added live is indexed once
+    private long highWaterMark;
+    private BitSet indexedIds = new BitSet();
+    private volatile boolean ready;
+
+    // Split (already normalized) ingredient text on commas/whitespace, dropping empties
+    public static List<String> tokenize(String ingredients) {
+        List<String> result = new ArrayList<>();
+        if (ingredients == null) {
+            return result;
+        }
+        for (String token : ingredients.toLowerCase().trim().split("[,\\s]+")) {
+            if (!token.isEmpty()) {
+                result.add(token);
+            }
+        }
+        return result;
+    }
+
+    // Lenient token match used by the bidirectional score
+    static boolean tokensMatch(String storedIng, String reqIng) {
+        return storedIng.equals(reqIng) || storedIng.contains(reqIng) || reqIng.contains(storedIng);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady(long highWaterMark) {
+        lock.writeLock().lock();
+        try {
+            this.highWaterMark = Math.max(this.highWaterMark, highWaterMark);
+            this.ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public long getHighWaterMark() {
+        lock.readLock().lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> vocabulary() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(tokens);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return recipeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Add one recipe_logs row to the index; adding the same row again does nothing
+    public void add(long logId, String ingredients) {
+        List<String> storedTokens = tokenize(ingredients);
+        if (storedTokens.isEmpty()) {
+            return; // Never matches anything (score is always 0.0)
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (indexedIds.get(Math.toIntExact(logId))) {
+                return;
+            }
+            int slot = recipeCount;
+            if (slot == logIds.length) {
+                logIds = Arrays.copyOf(logIds, slot * 2);
+                recipeTokens = Arrays.copyOf(recipeTokens, slot * 2);
+            }
+
+            int[] ids = new int[storedTokens.size()];
+            for (int i = 0; i < ids.length; i++) {
+                int tokenId = internToken(storedTokens.get(i));
+                ids[i] = tokenId;
+
+                // Only post the slot once per token even if the token repeats in this recipe
+                int size = postingSizes[tokenId];
+                if (size == 0 || postings[tokenId][size - 1] != slot) {
+                    appendPosting(tokenId, slot);
+                }
+            }
+
+            logIds[slot] = logId;
+            recipeTokens[slot] = ids;
+            indexedIds.set(Math.toIntExact(logId));
+            recipeCount++;
+            highWaterMark = Math.max(highWaterMark, logId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Score every indexed recipe sharing a matching token with the request and offer those >= threshold to topK.
+    // Scores are identical to the original full-scan bidirectional algorithm (0.3 requested / 0.7 stored).
+    public void search(List<String> requestedIngredientsList, double threshold, TopKRecipeScores topK) {
+        if (requestedIngredientsList.isEmpty()) {
+            return;
+        }
+
+        lock.readLock().lock();
+        try {
+            // Resolve each requested token to the vocabulary tokens it matches
+            BitSet[] requestedMatches = new BitSet[requestedIngredientsList.size()];
+            BitSet anyMatch = new BitSet(tokens.size());
+            for (int r = 0; r < requestedMatches.length; r++) {
+                requestedMatches[r] = matchingTokenIds(requestedIngredientsList.get(r));
+                anyMatch.or(requestedMatches[r]);
+            }
+
+            // Candidate recipes are the union of the posting lists of all matched tokens
+            BitSet candidates = new BitSet(recipeCount);
+            for (int tokenId = anyMatch.nextSetBit(0); tokenId >= 0; tokenId = anyMatch.nextSetBit(tokenId + 1)) {
+                int[] posting = postings[tokenId];
+                for (int i = 0; i < postingSizes[tokenId]; i++) {
+                    candidates.set(posting[i]);
+                }
+            }
+
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                double score = score(recipeTokens[slot], requestedMatches, anyMatch);
+                if (score >= threshold) {
+                    topK.offer(logIds[slot], score);
+                    if (topK.isSaturated()) {
+                        return; // Already holding K perfect matches
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private double score(int[] storedTokenIds, BitSet[] requestedMatches, BitSet anyMatch) {
+        // Count how many requested ingredients are found in the recipe
+        int requestedIngredientsFound = 0;
+        for (BitSet matches : requestedMatches) {
+            for (int tokenId : storedTokenIds) {
+                if (matches.get(tokenId)) {
+                    requestedIngredientsFound++;
+                    break;
+                }
+            }
+        }
+
+        // Count how many recipe ingredients match requested ingredients
+        int storedIngredientsMatched = 0;
+        for (int tokenId : storedTokenIds) {
+            if (anyMatch.get(tokenId)) {
+                storedIngredientsMatched++;
+            }
+        }
+
+        double requestedMatchRatio = (double) requestedIngredientsFound / requestedMatches.length;
+        double storedMatchRatio = (double) storedIngredientsMatched / storedTokenIds.length;
+        return (requestedMatchRatio * 0.3) + (storedMatchRatio * 0.7);
+    }
+
+    // Vocabulary tokens that match a requested token under the lenient equals/contains rule
+    private BitSet matchingTokenIds(String reqIng) {
+        BitSet matches = new BitSet(tokens.size());
+
+        // Stored tokens contained in (or equal to) the requested token are exactly its substrings
+        for (int begin = 0; begin < reqIng.length(); begin++) {
+            for (int end = begin + 1; end <= reqIng.length(); end++) {
+                Integer tokenId = tokenIds.get(reqIng.substring(begin, end));
+                if (tokenId != null) {
+                    matches.set(tokenId);
+                }
+            }
+        }
+
+        // Stored tokens containing the requested token contain all of its grams,
+        // so verifying the shortest gram posting list is enough
+        int gramSize = Math.min(GRAM_SIZE, reqIng.length());
+        String rarestGram = null;
+        int rarestCount = Integer.MAX_VALUE;
+        for (int i = 0; i + gramSize <= reqIng.length(); i++) {
+            String gram = reqIng.substring(i, i + gramSize);
+            int count = gramTokenCounts.getOrDefault(gram, 0);
+            if (count < rarestCount) {
+                rarestGram = gram;
+                rarestCount = count;
+            }
+        }
+        if (rarestGram != null && rarestCount > 0) {
+            int[] candidates = gramTokens.get(rarestGram);
+            for (int i = 0; i < rarestCount; i++) {
+                if (tokens.get(candidates[i]).contains(reqIng)) {
+                    matches.set(candidates[i]);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private void indexGrams(String token, int tokenId) {
+        Set<String> grams = new HashSet<>();
+        for (int n = 1; n <= GRAM_SIZE; n++) {
+            for (int i = 0; i + n <= token.length(); i++) {
+                grams.add(token.substring(i, i + n));
+            }
+        }
+        for (String gram : grams) {
+            int count = gramTokenCounts.getOrDefault(gram, 0);
+            int[] ids = gramTokens.get(gram);
+            if (ids == null) {
+                ids = new int[4];
+            } else if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count] = tokenId;
+            gramTokens.put(gram, ids);
+            gramTokenCounts.put(gram, count + 1);
+        }
+    }
+
+    private int internToken(String token) {
+        Integer existing = tokenIds.get(token);
+        if (existing != null) {
+            return existing;
+        }
+        int tokenId = tokens.size();
+        tokens.add(token);
+        tokenIds.put(token, tokenId);
+        if (tokenId == postings.length) {
+            postings = Arrays.copyOf(postings, tokenId * 2);
+            postingSizes = Arrays.copyOf(postingSizes, tokenId * 2);
+        }
+        postings[tokenId] = new int[4];
+        indexGrams(token, tokenId);
+        return tokenId;
+    }
+
+    private void appendPosting(int tokenId, int slot) {
+        int size = postingSizes[tokenId];
+        if (size == postings[tokenId].length) {
+            postings[tokenId] = Arrays.copyOf(postings[tokenId], size * 2);
+        }
+        postings[tokenId][size] = slot;
+        postingSizes[tokenId] = size + 1;
+    }
+
+    // Snapshot section: high-water mark, token dictionary, recipe slots (log id + token ids), posting lists
+    void writeSnapshot(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeLong(highWaterMark);
+            out.writeInt(tokens.size());
+            for (String token : tokens) {
+                RecipeIndexSnapshot.writeString(out, token);
+            }
+            out.writeInt(recipeCount);
+            for (int slot = 0; slot < recipeCount; slot++) {
+                out.writeLong(logIds[slot]);
+                RecipeIndexSnapshot.writeInts(out, recipeTokens[slot], recipeTokens[slot].length);
+            }
+            for (int tokenId = 0; tokenId < tokens.size(); tokenId++) {
+                RecipeIndexSnapshot.writeInts(out, postings[tokenId], postingSizes[tokenId]);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Replace the index contents with a snapshot section read from a mapped buffer; returns the snapshot's
+    // high-water mark. Everything is parsed before the swap, so a truncated file leaves the index untouched.
+    long readSnapshot(ByteBuffer in) {
+        long snapshotMark = in.getLong();
+        int tokenCount = in.getInt();
+        List<String> snapshotTokens = new ArrayList<>(tokenCount);
+        for (int tokenId = 0; tokenId < tokenCount; tokenId++) {
+            snapshotTokens.add(RecipeIndexSnapshot.readString(in));
+        }
+
+        int snapshotRecipeCount = in.getInt();
+        long[] snapshotLogIds = new long[Math.max(1024, snapshotRecipeCount)];
+        int[][] snapshotRecipeTokens = new int[snapshotLogIds.length][];
+        BitSet snapshotIndexedIds = new BitSet();
+        for (int slot = 0; slot < snapshotRecipeCount; slot++) {
+            snapshotLogIds[slot] = in.getLong();
+            snapshotIndexedIds.set(Math.toIntExact(snapshotLogIds[slot]));
+            int length = in.getInt();
+            snapshotRecipeTokens[slot] = RecipeIndexSnapshot.readInts(in, length, length);
+        }
+
+        int[][] snapshotPostings = new int[Math.max(256, tokenCount)][];
+        int[] snapshotPostingSizes = new int[snapshotPostings.length];
+        for (int tokenId = 0; tokenId < tokenCount; tokenId++) {
+            int size = in.getInt();
+            snapshotPostings[tokenId] = RecipeIndexSnapshot.readInts(in, size, Math.max(4, size));
+            snapshotPostingSizes[tokenId] = size;
+        }
+
+        lock.writeLock().lock();
+        try {
+            tokenIds.clear();
+            tokens.clear();
+            gramTokens.clear();
+            gramTokenCounts.clear();
+            for (int tokenId = 0; tokenId < tokenCount; tokenId++) {
+                String token = snapshotTokens.get(tokenId);
+                tokens.add(token);
+                tokenIds.put(token, tokenId);
+                indexGrams(token, tokenId);
+            }
+            highWaterMark = snapshotMark;
+            recipeCount = snapshotRecipeCount;
+            logIds = snapshotLogIds;
+            recipeTokens = snapshotRecipeTokens;
+            postings = snapshotPostings;
+            postingSizes = snapshotPostingSizes;
+            indexedIds = snapshotIndexedIds;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return snapshotMark;
+    }
+}
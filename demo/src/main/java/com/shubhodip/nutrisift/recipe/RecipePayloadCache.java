@@ -0,0 +1,97 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Logged recipes ready to be written to a response: parsed once, required fields defaulted,
+// serialized once to UTF-8. A cache hit in /recipe is then a byte copy instead of a parse + two serializations.
+// recipe_logs rows are never updated, so entries only leave the cache through LRU eviction.
+@Component
+public class RecipePayloadCache {
+
+    @Value("${recipe.payload-cache.max-entries:10000}")
+    private int maxEntries;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // recipe_logs.id -> payload, in access order for LRU eviction (reads reorder it, so every access takes the lock;
+    // a ReentrantLock rather than synchronized so contended virtual threads unmount instead of pinning their carrier)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<Long, RecipePayload> payloads = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, RecipePayload> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    public static class RecipePayload {
+        private final long logId;
+        private final String resultHash;
+        private final byte[] json;
+
+        public RecipePayload(long logId, String resultHash, byte[] json) {
+            this.logId = logId;
+            this.resultHash = resultHash;
+            this.json = json;
+        }
+
+        public long getLogId() { return logId; }
+        public String getResultHash() { return resultHash; }
+        public byte[] getJson() { return json; }
+    }
+
+    // Fields every recipe response carries, with the placeholder used when the model left them out
+    public static void applyDefaults(Map<String, Object> recipeMap) {
+        recipeMap.putIfAbsent("calories", Recipe.NOT_AVAILABLE);
+        recipeMap.putIfAbsent("diet", Recipe.NOT_SPECIFIED);
+        recipeMap.putIfAbsent("origin", Recipe.NOT_SPECIFIED);
+        recipeMap.putIfAbsent("course", Recipe.NOT_SPECIFIED);
+        recipeMap.putIfAbsent("cuisine", Recipe.NOT_SPECIFIED);
+    }
+
+    public RecipePayload get(long logId) {
+        lock.lock();
+        try {
+            return payloads.get(logId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return payloads.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Build (and cache) the payload of one recipe_logs row; null when the stored result is not a JSON object
+    @SuppressWarnings("unchecked")
+    public RecipePayload ingest(long logId, String resultJson, String resultHash) {
+        try {
+            Map<String, Object> recipeMap = objectMapper.readValue(resultJson, LinkedHashMap.class);
+            applyDefaults(recipeMap);
+            RecipePayload payload = new RecipePayload(logId, resultHash, objectMapper.writeValueAsBytes(recipeMap));
+            lock.lock();
+            try {
+                payloads.put(logId, payload);
+            } finally {
+                lock.unlock();
+            }
+            return payload;
+        } catch (Exception e) {
+            System.err.println("Skipping recipe log " + logId + " with unreadable result: " + e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import jakarta.annotation.PostConstruct;
+
+// Recipes generated for filter-only /recipe/search requests, pooled per canonical filter tuple (diet, cuisine,
+// course, calorieRange, origin) so later searches with the same filters are served without a Cohere call.
+// Each user has a compact seen-set, a Bloom filter of pool key and title, and is only handed recipes it says
+// they haven't seen; a false positive just skips a recipe. Pools keep their newest recipes up to a bound and
+// the least recently used pools and seen-sets are evicted. ChatController refills a pool in the background
+// when it holds few recipes or its newest recipe is getting old, whoever is being served from it.
+@Component
+public class RecipeSearchPool {
+
+    @Value("${recipe.search-pool.max-pools:500}")
+    private int maxPools;
+
+    @Value("${recipe.search-pool.max-recipes-per-pool:200}")
+    private int maxRecipesPerPool;
+
+    // Refill once the pool holds fewer recipes than this
+    @Value("${recipe.search-pool.low-watermark:20}")
+    private int lowWatermark;
+
+    // Refill once the pool's newest recipe is older than this
+    @Value("${recipe.search-pool.max-age-ms:86400000}")
+    private long maxAgeMs;
+
+    @Value("${recipe.search-pool.max-users:20000}")
+    private int maxUsers;
+
+    // Recipes a seen-set is sized for at the false positive rate below; a full one starts over
+    @Value("${recipe.search-pool.seen-capacity:1000}")
+    private int seenCapacity;
+
+    @Value("${recipe.search-pool.seen-fpp:0.01}")
+    private double seenFpp;
+
+    // Background refill calls running at once, across all pools
+    @Value("${recipe.search-pool.max-refills:2}")
+    private int maxRefills;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Pool key -> pool and uid -> seen-set, both in access order for LRU eviction, guarded by one lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Pool> pools = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Pool> eldest) {
+            return size() > maxPools;
+        }
+    };
+    private final Map<String, SeenFilter> seen = new LinkedHashMap<>(1024, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SeenFilter> eldest) {
+            return size() > maxUsers;
+        }
+    };
+
+    private Semaphore refillPermits;
+    private final Set<String> refilling = new HashSet<>();
+
+    private static class PooledRecipe {
+        private final String titleKey;
+        private final String json;
+
+        private PooledRecipe(String titleKey, String json) {
+            this.titleKey = titleKey;
+            this.json = json;
+        }
+    }
+
+    // Oldest first; titles keeps one recipe per title. newestAt is when a recipe was last added.
+    private static class Pool {
+        private final List<PooledRecipe> recipes = new ArrayList<>();
+        private final Set<String> titles = new HashSet<>();
+        private long newestAt;
+    }
+
+    @PostConstruct
+    private void init() {
+        refillPermits = new Semaphore(maxRefills);
+    }
+
+    // Canonical filter tuple; null when the request has a free-text query, which the pool can't serve
+    public static String key(RecipeSearchRequest request) {
+        if (request.getQuery() != null && !request.getQuery().trim().isEmpty()) {
+            return null;
+        }
+        return String.join("|",
+            canonical(request.getDiet()),
+            canonical(request.getCuisine()),
+            canonical(request.getCourse()),
+            canonical(request.getCalorieRange()),
+            canonical(request.getOrigin()));
+    }
+
+    // Pool recipes generated for key, as seen by uid who is being served them
+    public void add(String key, String uid, List<Recipe> recipes) {
+        List<PooledRecipe> pooled = new ArrayList<>();
+        for (Recipe recipe : recipes) {
+            if (recipe.getTitle() == null || recipe.getTitle().isBlank()) {
+                continue;
+            }
+            try {
+                pooled.add(new PooledRecipe(recipe.getTitle().trim().toLowerCase(), objectMapper.writeValueAsString(recipe)));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        lock.lock();
+        try {
+            Pool pool = pools.computeIfAbsent(key, k -> new Pool());
+            SeenFilter seenFilter = uid != null ? seenFilter(uid) : null;
+            for (PooledRecipe recipe : pooled) {
+                if (seenFilter != null) {
+                    seenFilter.add(key + "|" + recipe.titleKey);
+                }
+                if (!pool.titles.add(recipe.titleKey)) {
+                    continue;
+                }
+                pool.recipes.add(recipe);
+                pool.newestAt = System.currentTimeMillis();
+                if (pool.recipes.size() > maxRecipesPerPool) {
+                    pool.titles.remove(pool.recipes.remove(0).titleKey);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Between min and max recipes from key's pool uid hasn't seen, newest first, marked seen now;
+    // null when fewer than min are left for them
+    public List<Recipe> take(String key, String uid, int min, int max) {
+        List<String> taken = new ArrayList<>();
+        lock.lock();
+        try {
+            Pool pool = pools.get(key);
+            if (pool == null) {
+                return null;
+            }
+            SeenFilter seenFilter = seenFilter(uid);
+            List<String> seenKeys = new ArrayList<>();
+            for (int i = pool.recipes.size() - 1; i >= 0 && taken.size() < max; i--) {
+                PooledRecipe recipe = pool.recipes.get(i);
+                String seenKey = key + "|" + recipe.titleKey;
+                if (!seenFilter.mightContain(seenKey)) {
+                    taken.add(recipe.json);
+                    seenKeys.add(seenKey);
+                }
+            }
+            if (taken.size() < min) {
+                return null;
+            }
+            for (String seenKey : seenKeys) {
+                seenFilter.add(seenKey);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        List<Recipe> recipes = new ArrayList<>();
+        for (String json : taken) {
+            try {
+                recipes.add(objectMapper.readValue(json, Recipe.class));
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+        return recipes;
+    }
+
+    // Whether key's pool should be topped up: it is below the low watermark or its newest recipe is too old.
+    // Depends only on the pool, so one user who has seen it all can't keep triggering refills.
+    public boolean needsRefill(String key) {
+        lock.lock();
+        try {
+            Pool pool = pools.get(key);
+            if (pool == null) {
+                return false;
+            }
+            return pool.recipes.size() < lowWatermark || System.currentTimeMillis() - pool.newestAt > maxAgeMs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Claim key's refill; false when it is already being refilled or the refill budget is spent.
+    // A successful claim must be ended with endRefill.
+    public boolean startRefill(String key) {
+        lock.lock();
+        try {
+            if (refilling.contains(key) || !refillPermits.tryAcquire()) {
+                return false;
+            }
+            refilling.add(key);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void endRefill(String key) {
+        lock.lock();
+        try {
+            if (refilling.remove(key)) {
+                refillPermits.release();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            int size = 0;
+            for (Pool pool : pools.values()) {
+                size += pool.recipes.size();
+            }
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called holding the lock
+    private SeenFilter seenFilter(String uid) {
+        SeenFilter seenFilter = seen.computeIfAbsent(uid, k -> new SeenFilter(seenCapacity, seenFpp));
+        if (seenFilter.isFull()) {
+            // Past capacity the false positive rate climbs until nothing looks unseen; start over instead
+            seenFilter = new SeenFilter(seenCapacity, seenFpp);
+            seen.put(uid, seenFilter);
+        }
+        return seenFilter;
+    }
+
+    private static String canonical(String value) {
+        if (value == null || value.isBlank()) {
+            return "any";
+        }
+        return value.trim().toLowerCase().replaceAll("\\s+", " ");
+    }
+
+    // Bloom filter over strings: k bit positions per item from one 64-bit hash by double hashing
+    static class SeenFilter {
+        private final long[] bits;
+        private final int bitCount;
+        private final int hashCount;
+        private final int capacity;
+        private int added;
+
+        SeenFilter(int capacity, double fpp) {
+            this.capacity = capacity;
+            this.bitCount = Math.max(64, (int) Math.ceil(-capacity * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.bits = new long[(bitCount + 63) / 64];
+        }
+
+        void add(String item) {
+            long hash = hash(item);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bitCount);
+                bits[bit >>> 6] |= 1L << bit;
+            }
+            added++;
+        }
+
+        boolean mightContain(String item) {
+            long hash = hash(item);
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32);
+            for (int i = 0; i < hashCount; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean isFull() {
+            return added >= capacity;
+        }
+
+        // FNV-1a over the chars, then the SplitMix64 finalizer to spread the bits
+        private static long hash(String item) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < item.length(); i++) {
+                hash ^= item.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+            hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+            return hash ^ (hash >>> 31);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Offline semantic cache over logged recipes.
+// Each normalized ingredient set is feature-hashed (whole tokens + character trigrams) into a sparse,
+// L2-normalized vector, and an HNSW graph answers "closest logged recipe" by cosine similarity.
+// No external embedding API is involved.
+@Component
+public class RecipeVectorIndex {
+
+    private static final int DIMENSION_BITS = 20;
+    private static final int DIMENSION_MASK = (1 << DIMENSION_BITS) - 1;
+    private static final float TOKEN_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.5f;
+
+    @Value("${recipe.semantic-cache.m:16}")
+    private int m = 16;
+
+    @Value("${recipe.semantic-cache.ef-construction:64}")
+    private int efConstruction = 64;
+
+    @Value("${recipe.semantic-cache.ef-search:50}")
+    private int efSearch = 50;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    // Node storage: node -> recipe_logs.id, vector and per-layer neighbour lists
+    private long[] logIds = new long[1024];
+    private SparseVector[] vectors = new SparseVector[1024];
+    private int[][][] neighbors = new int[1024][][];
+    private int nodeCount;
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    // Highest recipe_logs.id added so far, and every id added: a row replayed at startup and added live is one node
+    private long highWaterMark;
+    private BitSet indexedIds = new BitSet();
+
+    public static class SparseVector {
+        private final int[] indices;   // sorted ascending
+        private final float[] values;
+
+        SparseVector(int[] indices, float[] values) {
+            this.indices = indices;
+            this.values = values;
+        }
+
+        public boolean isEmpty() {
+            return indices.length == 0;
+        }
+
+        // Cosine similarity (both vectors are unit length)
+        public double dot(SparseVector other) {
+            double sum = 0;
+            int i = 0;
+            int j = 0;
+            while (i < indices.length && j < other.indices.length) {
+                if (indices[i] == other.indices[j]) {
+                    sum += values[i++] * other.values[j++];
+                } else if (indices[i] < other.indices[j]) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return sum;
+        }
+    }
+
+    public static class Match {
+        private final long logId;
+        private final double similarity;
+
+        public Match(long logId, double similarity) {
+            this.logId = logId;
+            this.similarity = similarity;
+        }
+
+        public long getLogId() { return logId; }
+        public double getSimilarity() { return similarity; }
+    }
+
+    // Feature-hash normalized ingredient tokens into a unit-length sparse vector
+    public static SparseVector encode(List<String> tokens) {
+        TreeMap<Integer, Float> features = new TreeMap<>();
+        for (String token : tokens) {
+            addFeature(features, "t:" + token, TOKEN_WEIGHT);
+            String padded = "^" + token + "$";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                addFeature(features, "g:" + padded.substring(i, i + 3), TRIGRAM_WEIGHT);
+            }
+        }
+
+        double norm = 0;
+        for (float value : features.values()) {
+            norm += value * value;
+        }
+        norm = Math.sqrt(norm);
+
+        int[] indices = new int[features.size()];
+        float[] values = new float[features.size()];
+        int k = 0;
+        for (var feature : features.entrySet()) {
+            if (feature.getValue() == 0f) {
+                continue; // Hash collisions cancelled out
+            }
+            indices[k] = feature.getKey();
+            values[k] = (float) (feature.getValue() / norm);
+            k++;
+        }
+        return new SparseVector(Arrays.copyOf(indices, k), Arrays.copyOf(values, k));
+    }
+
+    private static void addFeature(TreeMap<Integer, Float> features, String feature, float weight) {
+        int hash = mix(feature.hashCode());
+        // The top bit picks the sign so collisions tend to cancel instead of inflating similarity
+        float signed = hash < 0 ? -weight : weight;
+        features.merge(hash & DIMENSION_MASK, signed, Float::sum);
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long getHighWaterMark() {
+        lock.readLock().lock();
+        try {
+            return highWaterMark;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(long logId, List<String> tokens) {
+        SparseVector vector = encode(tokens);
+        if (vector.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (indexedIds.get(Math.toIntExact(logId))) {
+                return;
+            }
+            int node = nodeCount;
+            if (node == logIds.length) {
+                logIds = Arrays.copyOf(logIds, node * 2);
+                vectors = Arrays.copyOf(vectors, node * 2);
+                neighbors = Arrays.copyOf(neighbors, node * 2);
+            }
+            int level = randomLevel();
+            logIds[node] = logId;
+            vectors[node] = vector;
+            neighbors[node] = new int[level + 1][0];
+            indexedIds.set(Math.toIntExact(logId));
+            nodeCount++;
+            highWaterMark = Math.max(highWaterMark, logId);
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return;
+            }
+
+            // Descend greedily through the layers above the new node's level
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > level; layer--) {
+                current = greedyClosest(vector, current, layer);
+            }
+
+            // Connect the node on every layer it lives on
+            for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+                List<Match> candidates = searchLayer(vector, current, efConstruction, layer);
+                int[] selected = closestNodes(candidates, m);
+                neighbors[node][layer] = selected;
+                for (int neighbor : selected) {
+                    connect(neighbor, node, layer);
+                }
+                current = nodeOf(candidates.get(0));
+            }
+
+            if (level > maxLevel) {
+                entryPoint = node;
+                maxLevel = level;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Closest logged recipe to the given normalized tokens, or null if the index is empty
+    public Match nearest(List<String> tokens) {
+        SparseVector query = encode(tokens);
+        if (query.isEmpty()) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return null;
+            }
+            int current = entryPoint;
+            for (int layer = maxLevel; layer > 0; layer--) {
+                current = greedyClosest(query, current, layer);
+            }
+            List<Match> results = searchLayer(query, current, Math.max(efSearch, 1), 0);
+            Match best = results.get(0);
+            return new Match(logIds[nodeOf(best)], best.getSimilarity());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int randomLevel() {
+        double ml = 1.0 / Math.log(Math.max(m, 2));
+        return (int) (-Math.log(1.0 - random.nextDouble()) * ml);
+    }
+
+    private int greedyClosest(SparseVector query, int start, int layer) {
+        int current = start;
+        double currentSimilarity = query.dot(vectors[current]);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int neighbor : neighborsOf(current, layer)) {
+                double similarity = query.dot(vectors[neighbor]);
+                if (similarity > currentSimilarity) {
+                    current = neighbor;
+                    currentSimilarity = similarity;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Best-first search of one layer; returns up to ef nodes sorted by similarity (highest first).
+    // Match.logId temporarily carries the node number here.
+    private List<Match> searchLayer(SparseVector query, int start, int ef, int layer) {
+        BitSet visited = new BitSet(nodeCount);
+        PriorityQueue<Match> candidates = new PriorityQueue<>(Comparator.comparingDouble(Match::getSimilarity).reversed());
+        PriorityQueue<Match> results = new PriorityQueue<>(Comparator.comparingDouble(Match::getSimilarity));
+
+        Match first = new Match(start, query.dot(vectors[start]));
+        visited.set(start);
+        candidates.add(first);
+        results.add(first);
+
+        while (!candidates.isEmpty()) {
+            Match candidate = candidates.poll();
+            if (results.size() >= ef && candidate.getSimilarity() < results.peek().getSimilarity()) {
+                break;
+            }
+            for (int neighbor : neighborsOf(nodeOf(candidate), layer)) {
+                if (visited.get(neighbor)) {
+                    continue;
+                }
+                visited.set(neighbor);
+                double similarity = query.dot(vectors[neighbor]);
+                if (results.size() < ef || similarity > results.peek().getSimilarity()) {
+                    Match match = new Match(neighbor, similarity);
+                    candidates.add(match);
+                    results.add(match);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        List<Match> sorted = new ArrayList<>(results);
+        sorted.sort(Comparator.comparingDouble(Match::getSimilarity).reversed());
+        return sorted;
+    }
+
+    private int[] closestNodes(List<Match> candidates, int limit) {
+        int[] selected = new int[Math.min(limit, candidates.size())];
+        for (int i = 0; i < selected.length; i++) {
+            selected[i] = nodeOf(candidates.get(i));
+        }
+        return selected;
+    }
+
+    // Add a back link, pruning to the closest neighbours when the list is full
+    private void connect(int node, int newNeighbor, int layer) {
+        int maxNeighbors = layer == 0 ? 2 * m : m;
+        int[] current = neighbors[node][layer];
+        int[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = newNeighbor;
+
+        if (updated.length > maxNeighbors) {
+            SparseVector base = vectors[node];
+            List<Match> ranked = new ArrayList<>(updated.length);
+            for (int neighbor : updated) {
+                ranked.add(new Match(neighbor, base.dot(vectors[neighbor])));
+            }
+            ranked.sort(Comparator.comparingDouble(Match::getSimilarity).reversed());
+            updated = closestNodes(ranked, maxNeighbors);
+        }
+        neighbors[node][layer] = updated;
+    }
+
+    private int[] neighborsOf(int node, int layer) {
+        int[][] layers = neighbors[node];
+        return layer < layers.length ? layers[layer] : new int[0];
+    }
+
+    private static int nodeOf(Match match) {
+        return (int) match.getLogId();
+    }
+
+    // Snapshot section: high-water mark, entry point, then per node its log id, sparse vector and neighbour lists
+    void writeSnapshot(DataOutputStream out) throws IOException {
+        lock.readLock().lock();
+        try {
+            out.writeLong(highWaterMark);
+            out.writeInt(nodeCount);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < nodeCount; node++) {
+                out.writeLong(logIds[node]);
+                SparseVector vector = vectors[node];
+                RecipeIndexSnapshot.writeInts(out, vector.indices, vector.indices.length);
+                for (float value : vector.values) {
+                    out.writeFloat(value);
+                }
+                out.writeInt(neighbors[node].length);
+                for (int[] layer : neighbors[node]) {
+                    RecipeIndexSnapshot.writeInts(out, layer, layer.length);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Replace the graph with a snapshot section read from a mapped buffer; returns the snapshot's high-water mark
+    long readSnapshot(ByteBuffer in) {
+        // Parse fully before swapping in, so a truncated file leaves the index untouched
+        long snapshotMark = in.getLong();
+        int snapshotCount = in.getInt();
+        int snapshotEntryPoint = in.getInt();
+        int snapshotMaxLevel = in.getInt();
+
+        int capacity = Math.max(1024, snapshotCount);
+        long[] snapshotLogIds = new long[capacity];
+        SparseVector[] snapshotVectors = new SparseVector[capacity];
+        int[][][] snapshotNeighbors = new int[capacity][][];
+        BitSet snapshotIndexedIds = new BitSet();
+        for (int node = 0; node < snapshotCount; node++) {
+            snapshotLogIds[node] = in.getLong();
+            snapshotIndexedIds.set(Math.toIntExact(snapshotLogIds[node]));
+            int nnz = in.getInt();
+            int[] indices = RecipeIndexSnapshot.readInts(in, nnz, nnz);
+            float[] values = new float[nnz];
+            for (int i = 0; i < nnz; i++) {
+                values[i] = in.getFloat();
+            }
+            snapshotVectors[node] = new SparseVector(indices, values);
+
+            int layers = in.getInt();
+            snapshotNeighbors[node] = new int[layers][];
+            for (int layer = 0; layer < layers; layer++) {
+                int size = in.getInt();
+                snapshotNeighbors[node][layer] = RecipeIndexSnapshot.readInts(in, size, size);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            highWaterMark = snapshotMark;
+            nodeCount = snapshotCount;
+            entryPoint = snapshotEntryPoint;
+            maxLevel = snapshotMaxLevel;
+            logIds = snapshotLogIds;
+            vectors = snapshotVectors;
+            neighbors = snapshotNeighbors;
+            indexedIds = snapshotIndexedIds;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        return snapshotMark;
+    }
+}
@@ -0,0 +1,114 @@
+package com.shubhodip.nutrisift.recipe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Bounded min-heap of the K best (recipe_logs.id, score) pairs seen so far.
+// Only row ids are held, the result JSON is loaded afterwards for the winners alone.
+public class TopKRecipeScores {
+
+    private static final double PERFECT_SCORE = 1.0;
+
+    private final int capacity;
+    private final long[] logIds;
+    private final double[] scores;
+    private int size;
+    private int perfectMatches;
+
+    public TopKRecipeScores(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.logIds = new long[this.capacity];
+        this.scores = new double[this.capacity];
+    }
+
+    // Returns true if the candidate made it into the top K
+    public boolean offer(long logId, double score) {
+        if (size < capacity) {
+            logIds[size] = logId;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            // Replace the current worst entry (ties keep the earlier candidate)
+            if (scores[0] >= PERFECT_SCORE) {
+                perfectMatches--;
+            }
+            logIds[0] = logId;
+            scores[0] = score;
+            siftDown(0);
+        } else {
+            return false;
+        }
+        if (score >= PERFECT_SCORE) {
+            perfectMatches++;
+        }
+        return true;
+    }
+
+    // Once K perfect matches are held nothing later can displace them, so the scan can stop
+    public boolean isSaturated() {
+        return perfectMatches >= capacity;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double minScore() {
+        return size == 0 ? 0.0 : scores[0];
+    }
+
+    // Row ids ordered by score, highest first
+    public List<Long> logIdsByScore() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        List<Long> result = new ArrayList<>(size);
+        for (int i : order) {
+            result.add(logIds[i]);
+        }
+        return result;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[i] >= scores[parent]) {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            int right = left + 1;
+            int smallest = i;
+            if (left < size && scores[left] < scores[smallest]) smallest = left;
+            if (right < size && scores[right] < scores[smallest]) smallest = right;
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long id = logIds[a];
+        logIds[a] = logIds[b];
+        logIds[b] = id;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
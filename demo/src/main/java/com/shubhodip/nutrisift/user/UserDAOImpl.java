@@ -160,7 +160,7 @@ public class UserDAOImpl implements UserDAO {
                      "pincode = ? " +
                      "WHERE mail = ?";
         
-        return jdbcTemplate.update(sql, 
+        int rowsUpdated = jdbcTemplate.update(sql, 
             profile.getWeight(),
             profile.getHeight(),
             profile.getBmi(),
@@ -175,6 +175,16 @@ public class UserDAOImpl implements UserDAO {
             profile.getPincode(),
             profile.getMail()
         );
+        
+        // A meal plan pre-generated for the old profile no longer fits
+        if (rowsUpdated > 0) {
+            try {
+                jdbcTemplate.update("DELETE FROM meal_plan_pregen WHERE email = ?", profile.getMail());
+            } catch (Exception e) {
+                System.err.println("Error discarding pre-generated meal plan: " + e.getMessage());
+            }
+        }
+        return rowsUpdated;
     }
 
     private static class UserRowMapper implements RowMapper<User> {
@@ -0,0 +1,12 @@
+-- Meal plans generated ahead of time by MealPlanPregenerator. Applied on startup by RecipeDAOImpl; every statement must be idempotent.
+
+-- At most one waiting plan per user, removed when it is served. profile_signature is MealPlanCache.signature of the
+-- profile the plan was generated for; a plan whose signature no longer matches the profile is discarded.
+CREATE TABLE IF NOT EXISTS meal_plan_pregen (
+    uid VARCHAR(64) NOT NULL PRIMARY KEY,
+    email VARCHAR(255) NOT NULL,
+    profile_signature TEXT NOT NULL,
+    meal_plan LONGTEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_meal_plan_pregen_email (email)
+);
@@ -0,0 +1,4 @@
+-- Columns added to meal_plans. Applied on startup by RecipeDAOImpl; every statement must be idempotent.
+
+-- Bumped by every update, so a regeneration only overwrites the plan it read (compare-and-set)
+ALTER TABLE meal_plans ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0;
@@ -0,0 +1,46 @@
+-- Side tables for recipe_logs. Applied on startup by RecipeDAOImpl; every statement must be idempotent.
+
+-- Distinct ingredient tokens per recipe_logs row, used to filter match candidates inside the database
+CREATE TABLE IF NOT EXISTS recipe_log_tokens (
+    log_id BIGINT NOT NULL,
+    token VARCHAR(191) NOT NULL,
+    PRIMARY KEY (log_id, token),
+    INDEX idx_recipe_log_tokens_token (token, log_id)
+);
+
+-- 3-grams of every distinct token in recipe_log_tokens, so "stored token contains requested token" is an index seek
+-- on one gram of the requested token instead of a LIKE '%token%' over the whole token index
+CREATE TABLE IF NOT EXISTS recipe_log_token_grams (
+    gram CHAR(3) NOT NULL,
+    token VARCHAR(191) NOT NULL,
+    PRIMARY KEY (gram, token),
+    INDEX idx_recipe_log_token_grams_token (token)
+);
+
+-- Content hash of the normalized result JSON; new rows are only inserted for unseen hashes
+-- Unique, so two concurrent inserts of the same recipe can't both land (legacy rows keep NULL until hashed).
+-- Fails while duplicate hashes exist; RecipeDAOImpl merges them and applies this file again.
+ALTER TABLE recipe_logs ADD COLUMN IF NOT EXISTS result_hash CHAR(64) NULL;
+CREATE UNIQUE INDEX IF NOT EXISTS uq_recipe_logs_result_hash ON recipe_logs (result_hash);
+DROP INDEX IF EXISTS idx_recipe_logs_result_hash ON recipe_logs;
+
+-- One compact row per recipe served or generated, pointing at the unique recipe by hash
+CREATE TABLE IF NOT EXISTS recipe_log_hits (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    uid VARCHAR(64) NOT NULL,
+    recipe_hash CHAR(64) NOT NULL,
+    served_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    source VARCHAR(20) NOT NULL,
+    INDEX idx_recipe_log_hits_hash (recipe_hash),
+    INDEX idx_recipe_log_hits_uid (uid, served_at)
+);
+
+-- Ingredients after IngredientNormalizer, precomputed at write time (space separated tokens)
+ALTER TABLE recipe_logs ADD COLUMN IF NOT EXISTS ingredient_norm TEXT NULL;
+
+-- What the stored data was written under, e.g. the IngredientNormalizer fingerprint of ingredient_norm and
+-- recipe_log_tokens; rows are re-normalized on startup when it no longer matches
+CREATE TABLE IF NOT EXISTS recipe_log_meta (
+    name VARCHAR(64) NOT NULL PRIMARY KEY,
+    value VARCHAR(255) NOT NULL
+);
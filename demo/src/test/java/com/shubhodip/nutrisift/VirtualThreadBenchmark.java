@@ -0,0 +1,114 @@
+package com.shubhodip.nutrisift;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+
+import com.shubhodip.nutrisift.jdbc.BoundedDataSource;
+import com.sun.net.httpserver.HttpServer;
+
+// Throughput of thread-per-request handling on platform threads (a fixed pool the size of Tomcat's default
+// 200 workers) against virtual threads (one per request, JDBC behind BoundedDataSource). Each request does a short
+// query on a 10-connection pool and then a blocking upstream call to a local HTTP server standing in for Cohere.
+// Not part of the default test run: mvn -Pbenchmark test (results also go to target/benchmark).
+class VirtualThreadBenchmark {
+
+	private static final int REQUESTS = 4000;
+	private static final int PLATFORM_THREADS = 200;
+	private static final int POOL_SIZE = 10;
+	private static final long QUERY_MS = 2;
+	private static final long UPSTREAM_MS = 100;
+
+	@Test
+	void platformVersusVirtualThreads() throws Exception {
+		HttpServer upstream = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		upstream.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+		upstream.createContext("/v2/chat", exchange -> {
+			try {
+				Thread.sleep(UPSTREAM_MS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			byte[] body = "{\"message\":{\"content\":[{\"text\":\"ok\"}]}}".getBytes();
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		upstream.start();
+		URI uri = URI.create("http://127.0.0.1:" + upstream.getAddress().getPort() + "/v2/chat");
+
+		try (HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build()) {
+			// Warm up both paths once
+			run("warm-up", Executors.newFixedThreadPool(PLATFORM_THREADS), pooledDataSource(), client, uri, 500);
+			run("warm-up", Executors.newVirtualThreadPerTaskExecutor(), new BoundedDataSource(pooledDataSource(), POOL_SIZE, 30_000), client, uri, 500);
+
+			double platform = run("platform", Executors.newFixedThreadPool(PLATFORM_THREADS), pooledDataSource(), client, uri, REQUESTS);
+			double virtual = run("virtual", Executors.newVirtualThreadPerTaskExecutor(), new BoundedDataSource(pooledDataSource(), POOL_SIZE, 30_000), client, uri, REQUESTS);
+
+			String result = String.format("requests=%d upstream=%d ms query=%d ms pool=%d%nplatform (%d threads): %.0f req/s%nvirtual: %.0f req/s (%.1fx)%n",
+				REQUESTS, UPSTREAM_MS, QUERY_MS, POOL_SIZE, PLATFORM_THREADS, platform, virtual, virtual / platform);
+			System.out.print(result);
+			Path dir = Paths.get("target", "benchmark");
+			Files.createDirectories(dir);
+			Files.writeString(dir.resolve("virtual-threads.txt"), result);
+		} finally {
+			upstream.stop(0);
+		}
+	}
+
+	private double run(String mode, ExecutorService executor, DataSource dataSource, HttpClient client, URI uri, int requests) throws Exception {
+		long start = System.nanoTime();
+		try (executor) {
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < requests; i++) {
+				futures.add(executor.submit(() -> {
+					try (Connection connection = dataSource.getConnection()) {
+						Thread.sleep(QUERY_MS);
+					}
+					HttpRequest request = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString("{}")).build();
+					return client.send(request, HttpResponse.BodyHandlers.ofString()).statusCode();
+				}));
+			}
+			for (Future<Integer> future : futures) {
+				assertEquals(200, future.get(), mode + " request failed");
+			}
+		}
+		return requests / ((System.nanoTime() - start) / 1e9);
+	}
+
+	// Stand-in for the connection pool: POOL_SIZE connections, callers beyond that block until one is returned
+	private static DataSource pooledDataSource() {
+		Semaphore connections = new Semaphore(POOL_SIZE, true);
+		return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[] {DataSource.class}, (proxy, method, args) -> {
+			if (!"getConnection".equals(method.getName())) {
+				return null;
+			}
+			connections.acquire();
+			return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class}, (connection, call, callArgs) -> {
+				if ("close".equals(call.getName())) {
+					connections.release();
+				}
+				return null;
+			});
+		});
+	}
+}
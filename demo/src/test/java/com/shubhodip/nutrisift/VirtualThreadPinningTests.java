@@ -0,0 +1,279 @@
+package com.shubhodip.nutrisift;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shubhodip.nutrisift.cohere.SingleFlight;
+import com.shubhodip.nutrisift.jdbc.BoundedDataSource;
+import com.shubhodip.nutrisift.recipe.IngredientNormalizer;
+import com.shubhodip.nutrisift.recipe.RecipeDAOImpl;
+import com.shubhodip.nutrisift.recipe.RecipeIndexSnapshot;
+import com.shubhodip.nutrisift.recipe.RecipeMatchIndex;
+import com.shubhodip.nutrisift.recipe.RecipePayloadCache;
+import com.shubhodip.nutrisift.recipe.RecipePayloadCache.RecipePayload;
+import com.shubhodip.nutrisift.recipe.RecipeVectorIndex;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+
+// Pinned-carrier report for virtual-thread mode: runs the lock-guarded and JDBC paths on contended virtual threads
+// under a JFR recording of jdk.VirtualThreadPinned. The recording and a text report are left in target/jfr.
+// JDK 21 only records a pin when a virtual thread parks while pinned, so every workload parks inside the critical
+// sections it checks: snapshot writes wait on index locks held by concurrent adds, DAO calls sleep in a stub driver
+// while holding a bounded connection. Fails on any pinned event whose stack goes through application classes.
+// The control runs the same DAO call inside a monitor and must be reported as application code, so a synchronized
+// section around any of these paths would fail the test.
+class VirtualThreadPinningTests {
+
+	private static final String APP_PACKAGE = "com.shubhodip.nutrisift.";
+	private static final long RUN_TIMEOUT_SECONDS = 60;
+
+	@Test
+	void noPinnedCarriersInApplicationCode() throws Exception {
+		Path dir = Paths.get("target", "jfr");
+		Files.createDirectories(dir);
+		Path file = dir.resolve("virtual-thread-pinning.jfr");
+
+		try (Recording recording = new Recording()) {
+			recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(1)).withStackTrace();
+			recording.start();
+			exercisePayloadCache();
+			exerciseBoundedDataSource();
+			exerciseSingleFlight();
+			exerciseCircuitBreaker();
+			exerciseIndexSnapshot(dir);
+			exerciseRecipeDAO();
+			pinDeliberately();
+			recording.stop();
+			recording.dump(file);
+		}
+
+		List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+		List<RecordedEvent> control = events.stream().filter(VirtualThreadPinningTests::isControl).toList();
+		List<RecordedEvent> application = events.stream().filter(e -> !isControl(e) && inApplicationCode(e)).toList();
+		writeReport(dir.resolve("virtual-thread-pinning.txt"), events, application);
+
+		assertFalse(control.isEmpty(), "JFR recorded no jdk.VirtualThreadPinned event for the deliberate pin, the check is blind");
+		assertTrue(control.stream().allMatch(VirtualThreadPinningTests::inApplicationCode), "The deliberate pin in RecipeDAOImpl was not attributed to application code");
+		assertTrue(application.isEmpty(), application.size() + " pinned virtual thread(s) in application code, see target/jfr/virtual-thread-pinning.txt");
+	}
+
+	// Concurrent ingest/get on the LRU payload cache
+	private void exercisePayloadCache() throws Exception {
+		RecipePayloadCache cache = new RecipePayloadCache();
+		ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper());
+		ReflectionTestUtils.setField(cache, "maxEntries", 64);
+		runOnVirtualThreads(200, i -> {
+			cache.ingest(i % 100, "{\"title\":\"Recipe " + i + "\",\"ingredients\":[\"rice\"]}", "h" + i);
+			cache.get(i % 100);
+			Thread.sleep(2);
+		});
+	}
+
+	// Many more callers than permits, each holding its connection across a blocking "query"
+	private void exerciseBoundedDataSource() throws Exception {
+		BoundedDataSource dataSource = new BoundedDataSource(stubDataSource(), 4, 10_000);
+		runOnVirtualThreads(100, i -> {
+			try (Connection connection = dataSource.getConnection()) {
+				Thread.sleep(5);
+			}
+		});
+	}
+
+	// Followers join the leader's call
+	private void exerciseSingleFlight() throws Exception {
+		SingleFlight<String> flights = new SingleFlight<>("test", 10_000);
+		runOnVirtualThreads(50, i -> flights.executeAsync("key-" + (i % 5),
+				() -> CompletableFuture.supplyAsync(() -> "done", CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS))).join());
+	}
+
+	// Contended trial admission and outcome recording on the Cohere circuit breaker
+	private void exerciseCircuitBreaker() throws Exception {
+		Class<?> type = Class.forName("com.shubhodip.nutrisift.cohere.CohereClient$CircuitBreaker");
+		Constructor<?> constructor = type.getDeclaredConstructor(int.class, long.class);
+		constructor.setAccessible(true);
+		Object breaker = constructor.newInstance(3, 1L);
+		runOnVirtualThreads(200, i -> {
+			long ticket = (Long) ReflectionTestUtils.invokeMethod(breaker, "allowRequest");
+			Thread.sleep(1);
+			if (i % 3 == 0) {
+				ReflectionTestUtils.invokeMethod(breaker, "recordFailure");
+			} else {
+				ReflectionTestUtils.invokeMethod(breaker, "recordSuccess");
+			}
+			ReflectionTestUtils.invokeMethod(breaker, "releaseTrial", ticket);
+		});
+	}
+
+	// Snapshot writers queue on the writer lock and wait on the index locks held by concurrent adds
+	private void exerciseIndexSnapshot(Path dir) throws Exception {
+		RecipeMatchIndex matchIndex = new RecipeMatchIndex();
+		RecipeVectorIndex vectorIndex = new RecipeVectorIndex();
+		RecipeIndexSnapshot snapshot = new RecipeIndexSnapshot();
+		ReflectionTestUtils.setField(snapshot, "enabled", true);
+		ReflectionTestUtils.setField(snapshot, "path", dir.resolve("recipe-index.snap").toString());
+		ReflectionTestUtils.setField(snapshot, "recipeMatchIndex", matchIndex);
+		ReflectionTestUtils.setField(snapshot, "recipeVectorIndex", vectorIndex);
+		ReflectionTestUtils.setField(snapshot, "ingredientNormalizer", new IngredientNormalizer());
+		runOnVirtualThreads(400, i -> {
+			if (i % 20 == 0) {
+				ReflectionTestUtils.invokeMethod(snapshot, "write", 3);
+			} else {
+				List<String> tokens = List.of("rice", "onion", "spice" + (i % 37));
+				matchIndex.add(i, String.join(" ", tokens));
+				vectorIndex.add(i, tokens);
+			}
+		});
+	}
+
+	// Hit recording through JdbcTemplate and the bounded pool, each statement blocking in the driver
+	private void exerciseRecipeDAO() throws Exception {
+		RecipeDAOImpl recipeDAO = recipeDAO();
+		runOnVirtualThreads(100, i -> recipeDAO.recordRecipeHit("uid-" + i, new RecipePayload(i, "hash-" + i, new byte[0]), "cache"));
+	}
+
+	// Control: the DAO call inside a monitor parks in the stub driver while pinned, which JDK 21 always reports
+	private void pinDeliberately() throws Exception {
+		RecipeDAOImpl recipeDAO = recipeDAO();
+		Object monitor = new Object();
+		runOnVirtualThreads(2, i -> {
+			synchronized (monitor) {
+				recipeDAO.recordRecipeHit("uid-" + i, new RecipePayload(i, "hash-" + i, new byte[0]), "cache");
+			}
+		});
+	}
+
+	private static boolean isControl(RecordedEvent event) {
+		return frames(event).anyMatch(f -> f.contains("pinDeliberately"));
+	}
+
+	private static RecipeDAOImpl recipeDAO() {
+		RecipeDAOImpl recipeDAO = new RecipeDAOImpl();
+		ReflectionTestUtils.setField(recipeDAO, "jdbcTemplate", new JdbcTemplate(new BoundedDataSource(stubDataSource(), 4, 10_000)));
+		return recipeDAO;
+	}
+
+	private interface Task {
+		void run(int index) throws Exception;
+	}
+
+	// Bounded: once every carrier is pinned by a thread waiting on a lock held by an unmounted one, nothing runs again
+	private static void runOnVirtualThreads(int count, Task task) throws Exception {
+		ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < count; i++) {
+				int index = i;
+				futures.add(executor.submit(() -> {
+					task.run(index);
+					return null;
+				}));
+			}
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(RUN_TIMEOUT_SECONDS);
+			for (Future<?> future : futures) {
+				try {
+					future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+				} catch (TimeoutException e) {
+					fail("Virtual threads made no progress in " + RUN_TIMEOUT_SECONDS + " s, their carriers are likely pinned");
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	// Driver stand-in: statements take a few ms, as a round trip to the database would
+	private static DataSource stubDataSource() {
+		return stub(DataSource.class, (proxy, method, args) -> {
+			if ("getConnection".equals(method.getName())) {
+				return stub(Connection.class, (connection, call, callArgs) -> {
+					if (call.getName().startsWith("prepareStatement")) {
+						return stub(PreparedStatement.class, (statement, statementCall, statementArgs) -> {
+							if ("executeUpdate".equals(statementCall.getName())) {
+								Thread.sleep(5);
+								return 1;
+							}
+							return defaultValue(statementCall.getReturnType());
+						});
+					}
+					return defaultValue(call.getReturnType());
+				});
+			}
+			return defaultValue(method.getReturnType());
+		});
+	}
+
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+	private static Object defaultValue(Class<?> type) {
+		if (type == boolean.class) {
+			return false;
+		}
+		if (type == int.class) {
+			return 0;
+		}
+		if (type == long.class) {
+			return 0L;
+		}
+		return null;
+	}
+
+	private static boolean inApplicationCode(RecordedEvent event) {
+		return frames(event).anyMatch(f -> f.startsWith(APP_PACKAGE) && !f.startsWith(VirtualThreadPinningTests.class.getName()));
+	}
+
+	private static Stream<String> frames(RecordedEvent event) {
+		if (event.getStackTrace() == null) {
+			return Stream.empty();
+		}
+		return event.getStackTrace().getFrames().stream().map(VirtualThreadPinningTests::frameName);
+	}
+
+	private static String frameName(RecordedFrame frame) {
+		return frame.getMethod().getType().getName() + "." + frame.getMethod().getName();
+	}
+
+	private static void writeReport(Path report, List<RecordedEvent> events, List<RecordedEvent> application) throws IOException {
+		StringBuilder text = new StringBuilder();
+		text.append("jdk.VirtualThreadPinned events: ").append(events.size()).append('\n');
+		text.append("in application code: ").append(application.size()).append('\n');
+		for (RecordedEvent event : events) {
+			text.append('\n').append(event.getDuration().toMillis()).append(" ms pinned\n");
+			text.append(frames(event).limit(20).map(f -> "    at " + f).collect(Collectors.joining("\n"))).append('\n');
+		}
+		Files.writeString(report, text);
+	}
+}
@@ -0,0 +1,167 @@
+package com.shubhodip.nutrisift.cohere;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.shubhodip.nutrisift.cohere.AdaptiveConcurrencyLimiter.Permit;
+
+// Limit adjustment and the waiting queue, driven without Cohere: permits are taken and released by hand
+class AdaptiveConcurrencyLimiterTests {
+
+	@Test
+	void limitGrowsAdditivelyOnlyWhileItIsUsed() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 6, 0.5, 1000.0, 10, 10, 4, 10_000);
+
+		// One call at a time never gets near the limit, so it isn't raised
+		for (int i = 0; i < 50; i++) {
+			limiter.release(limiter.acquire("recipe", "u", 1).join(), true);
+		}
+		assertEquals(4, limiter.getLimit());
+
+		// Saturated: +1/limit per uncongested call, so about one limit's worth of calls per step
+		for (int round = 0; round < 3; round++) {
+			runFull(limiter);
+		}
+		assertEquals(5, limiter.getLimit());
+		for (int round = 0; round < 50; round++) {
+			runFull(limiter);
+		}
+		assertEquals(6, limiter.getLimit(), "capped at maxLimit");
+	}
+
+	@Test
+	void congestionCutsTheLimitMultiplicatively() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 3, 50, 0.75, 1000.0, 10, 10, 4, 10_000);
+
+		congested(limiter, true);
+		assertEquals(15, limiter.getLimit());
+		// A retry that later succeeded still counts as congestion
+		congested(limiter, false);
+		assertEquals(11, limiter.getLimit());
+		for (int i = 0; i < 20; i++) {
+			congested(limiter, true);
+		}
+		assertEquals(3, limiter.getLimit(), "floored at minLimit");
+
+		// A failure that says nothing about load leaves it alone
+		limiter.release(limiter.acquire("recipe", "u", 1).join(), false);
+		assertEquals(3, limiter.getLimit());
+	}
+
+	@Test
+	void expiredWaiterIsRejectedAndNeverTakesTheSlot() throws Exception {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 1000.0, 10, 10, 4, 50);
+		Permit held = limiter.acquire("recipe", "a", 1).join();
+
+		CompletableFuture<Permit> waiter = limiter.acquire("recipe", "b", 1);
+		ExecutionException failure = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+		assertInstanceOf(CohereUnavailableException.class, failure.getCause());
+		assertEquals(0, limiter.getQueueDepth());
+		assertEquals(0, limiter.getWaitingFlows());
+		assertEquals(1, limiter.getRejectedCount());
+
+		limiter.release(held, true);
+		assertEquals(0, limiter.getInFlight());
+		assertTrue(limiter.acquire("recipe", "c", 1).isDone());
+	}
+
+	@Test
+	void cancelledWaiterGivesUpItsPlace() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 1000.0, 10, 10, 4, 10_000);
+		Permit held = limiter.acquire("recipe", "a", 1).join();
+
+		CompletableFuture<Permit> cancelled = limiter.acquire("recipe", "b", 1);
+		CompletableFuture<Permit> next = limiter.acquire("recipe", "c", 1);
+		assertEquals(2, limiter.getQueueDepth());
+		cancelled.cancel(false);
+		assertEquals(1, limiter.getQueueDepth());
+		assertEquals(0, limiter.getRejectedCount());
+
+		// The freed slot goes to the next waiter, not the cancelled one
+		limiter.release(held, true);
+		assertTrue(next.isDone() && !next.isCompletedExceptionally());
+		assertEquals(1, limiter.getInFlight());
+		limiter.release(next.join(), true);
+		assertEquals(0, limiter.getInFlight());
+		assertFalse(limiter.getQueueDepth() > 0);
+	}
+
+	@Test
+	void deficitRoundRobinSharesCapacityByCostAcrossUsers() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 1000.0, 20, 10, 4, 10_000);
+		Permit held = limiter.acquire("recipe", "holder", 1).join();
+
+		// a queues first with expensive calls, b with cheap ones; the quantum is 4 credits per turn
+		List<String> admitted = new ArrayList<>();
+		List<Permit> granted = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			queue(limiter, "a", 4, admitted, granted);
+		}
+		for (int i = 0; i < 6; i++) {
+			queue(limiter, "b", 1, admitted, granted);
+		}
+		assertEquals(2, limiter.getWaitingFlows());
+
+		// One slot, passed on call by call: each release admits the next waiter right away
+		granted.add(held);
+		while (!granted.isEmpty()) {
+			limiter.release(granted.remove(0), true);
+		}
+
+		// Each turn is worth 4 credits: one of a's calls or four of b's, until b runs dry
+		assertEquals(List.of("a", "b", "b", "b", "b", "a", "b", "b", "a", "a", "a", "a"), admitted);
+		assertEquals(0, limiter.getWaitingFlows());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	@Test
+	void oneUserCantFillTheWholeQueue() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, 1, 0.5, 1000.0, 20, 3, 4, 10_000);
+		limiter.acquire("recipe", "holder", 1).join();
+		for (int i = 0; i < 3; i++) {
+			assertFalse(limiter.acquire("recipe", "a", 1).isDone());
+		}
+		CompletableFuture<Permit> overflow = limiter.acquire("recipe", "a", 1);
+		assertTrue(overflow.isCompletedExceptionally());
+		assertFalse(limiter.acquire("recipe", "b", 1).isDone(), "other users still get a place");
+		assertEquals(1, limiter.getRejectedCount());
+	}
+
+	private static void queue(AdaptiveConcurrencyLimiter limiter, String uid, int cost, List<String> admitted, List<Permit> granted) {
+		CompletableFuture<Permit> waiter = limiter.acquire("recipe", uid, cost);
+		assertFalse(waiter.isDone());
+		waiter.thenAccept(permit -> {
+			admitted.add(uid);
+			granted.add(permit);
+		});
+	}
+
+	// Takes every permit of the current limit, then releases them all uncongested
+	private static void runFull(AdaptiveConcurrencyLimiter limiter) {
+		List<Permit> permits = new ArrayList<>();
+		int limit = limiter.getLimit();
+		for (int i = 0; i < limit; i++) {
+			permits.add(limiter.acquire("recipe", "u", 1).join());
+		}
+		for (Permit permit : permits) {
+			limiter.release(permit, true);
+		}
+	}
+
+	private static void congested(AdaptiveConcurrencyLimiter limiter, boolean succeeded) {
+		Permit permit = limiter.acquire("recipe", "u", 1).join();
+		permit.markCongested();
+		limiter.release(permit, succeeded);
+	}
+}
@@ -0,0 +1,49 @@
+package com.shubhodip.nutrisift.cohere;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+// One half-open trial at a time, and a trial that ends without an outcome hands the slot back
+class CircuitBreakerTests {
+
+	@Test
+	void releasedTrialLetsTheNextCallTry() throws Exception {
+		CohereClient.CircuitBreaker breaker = new CohereClient.CircuitBreaker(1, 0);
+		assertEquals(0, breaker.allowRequest());
+		breaker.recordFailure();
+		Thread.sleep(1);
+
+		long trial = breaker.allowRequest();
+		assertTrue(trial > 0);
+		assertEquals(-1, breaker.allowRequest());
+
+		breaker.releaseTrial(trial);
+		long next = breaker.allowRequest();
+		assertTrue(next > trial);
+		assertEquals("half-open", breaker.state());
+	}
+
+	@Test
+	void staleTicketDoesNotReleaseALaterTrial() throws Exception {
+		CohereClient.CircuitBreaker breaker = new CohereClient.CircuitBreaker(1, 0);
+		breaker.recordFailure();
+		Thread.sleep(1);
+
+		long first = breaker.allowRequest();
+		breaker.recordFailure(); // the trial's own outcome, re-opening the circuit
+		breaker.releaseTrial(first);
+		Thread.sleep(1);
+
+		long second = breaker.allowRequest();
+		breaker.releaseTrial(first);
+		assertTrue(second > first);
+		assertEquals(-1, breaker.allowRequest());
+
+		breaker.recordSuccess();
+		breaker.releaseTrial(second);
+		assertEquals("closed", breaker.state());
+		assertEquals(0, breaker.allowRequest());
+	}
+}
@@ -0,0 +1,413 @@
+package com.shubhodip.nutrisift.cohere;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Local stand-in for Cohere's POST /v2/chat, for tests and offline load testing of every LLM path.
+// Serves canned recipe, search-array, 7-day and one-day meal-plan and replacement-meal replies (picked from the prompt), plain or streamed as
+// SSE content deltas, with an injectable latency distribution and 429 / 5xx / truncated / malformed rates.
+// JDK only, so it runs embedded in a test or standalone:
+//   mvn -Pcohere-stand-in package -DskipTests
+//   java -jar target/demo-0.0.1-SNAPSHOT-cohere-stand-in.jar --port=8089 --latency=lognormal:1500:0.5 --rate-429=0.05
+//   COHERE_API_URL=http://localhost:8089/v2/chat mvn spring-boot:run
+public class CohereStandIn implements AutoCloseable {
+
+    public static final String KIND_RECIPE = "recipe";
+    public static final String KIND_SEARCH = "search";
+    public static final String KIND_MEAL_PLAN = "meal-plan";
+    public static final String KIND_MEAL_PLAN_DAY = "meal-plan-day";
+    public static final String KIND_REPLACEMENT_MEALS = "replacement-meals";
+
+    private static final Pattern STREAM_FLAG = Pattern.compile("\"stream\"\\s*:\\s*true");
+    private static final Pattern PLAN_DAY = Pattern.compile("one-day meal plan for (\\w+)");
+    private static final Pattern REPLACEMENT_COUNT = Pattern.compile("Replace exactly these (\\d+) meals");
+    private static final String[] DAYS = {"Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday"};
+    private static final String[] MEAL_TYPES = {"Breakfast", "Morning Snack", "Lunch", "Afternoon Snack", "Dinner"};
+
+    private final HttpServer server;
+    private volatile FaultProfile profile;
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<String, AtomicLong> requestsByKind = new ConcurrentHashMap<>();
+    private final AtomicLong replacementTitles = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    // Time to first byte, in ms
+    public interface Latency {
+        long sampleMs();
+
+        static Latency none() {
+            return () -> 0;
+        }
+
+        static Latency fixed(long ms) {
+            return () -> ms;
+        }
+
+        static Latency uniform(long minMs, long maxMs) {
+            return () -> ThreadLocalRandom.current().nextLong(minMs, maxMs + 1);
+        }
+
+        // Long-tailed like a real LLM: median medianMs, sigma the spread of ln(latency)
+        static Latency logNormal(long medianMs, double sigma) {
+            return () -> Math.round(medianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+        }
+
+        // fixed:MS, uniform:MIN:MAX or lognormal:MEDIAN:SIGMA
+        static Latency parse(String spec) {
+            String[] parts = spec.split(":");
+            switch (parts[0]) {
+                case "none":
+                    return none();
+                case "fixed":
+                    return fixed(Long.parseLong(parts[1]));
+                case "uniform":
+                    return uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+                case "lognormal":
+                    return logNormal(Long.parseLong(parts[1]), Double.parseDouble(parts[2]));
+                default:
+                    throw new IllegalArgumentException("Unknown latency distribution: " + spec);
+            }
+        }
+    }
+
+    // What the stand-in does to each request. Rates are probabilities in [0, 1], drawn independently per request.
+    public static class FaultProfile {
+        private Latency latency = Latency.none();
+        private double rateLimitRate;
+        private double serverErrorRate;
+        private double truncatedRate;
+        private double malformedRate;
+        private int retryAfterSeconds;
+        private int streamChunkChars = 16;
+        private long streamChunkDelayMs = 5;
+
+        public FaultProfile latency(Latency latency) {
+            this.latency = latency;
+            return this;
+        }
+
+        public FaultProfile rateLimitRate(double rate) {
+            this.rateLimitRate = rate;
+            return this;
+        }
+
+        public FaultProfile serverErrorRate(double rate) {
+            this.serverErrorRate = rate;
+            return this;
+        }
+
+        // Reply cut off halfway (plain: half the JSON; streamed: the stream ends without message-end)
+        public FaultProfile truncatedRate(double rate) {
+            this.truncatedRate = rate;
+            return this;
+        }
+
+        // Reply that isn't the requested JSON at all
+        public FaultProfile malformedRate(double rate) {
+            this.malformedRate = rate;
+            return this;
+        }
+
+        // Retry-After header on 429s; 0 sends none
+        public FaultProfile retryAfterSeconds(int seconds) {
+            this.retryAfterSeconds = seconds;
+            return this;
+        }
+
+        public FaultProfile streamChunks(int chars, long delayMs) {
+            this.streamChunkChars = chars;
+            this.streamChunkDelayMs = delayMs;
+            return this;
+        }
+    }
+
+    private CohereStandIn(HttpServer server, FaultProfile profile) {
+        this.server = server;
+        this.profile = profile;
+    }
+
+    // port 0 picks a free port
+    public static CohereStandIn start(int port, FaultProfile profile) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 1024);
+        CohereStandIn standIn = new CohereStandIn(server, profile);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext("/v2/chat", standIn::handle);
+        server.start();
+        return standIn;
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v2/chat";
+    }
+
+    // Swap the fault profile of a running stand-in
+    public void setProfile(FaultProfile profile) {
+        this.profile = profile;
+    }
+
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    public long getRequestCount(String kind) {
+        AtomicLong count = requestsByKind.get(kind);
+        return count != null ? count.get() : 0;
+    }
+
+    // Most requests being handled at once since the last reset, a clock-free way to see calls overlap
+    public int getMaxConcurrentRequests() {
+        return maxInFlight.get();
+    }
+
+    public void resetMaxConcurrentRequests() {
+        maxInFlight.set(inFlight.get());
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String kind = kindOf(body);
+            requests.incrementAndGet();
+            requestsByKind.computeIfAbsent(kind, k -> new AtomicLong()).incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                respond(exchange, kind, body);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, String kind, String body) throws IOException {
+        FaultProfile current = profile;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        if (random.nextDouble() < current.rateLimitRate) {
+            if (current.retryAfterSeconds > 0) {
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(current.retryAfterSeconds));
+            }
+            sendPlain(exchange, 429, "{\"message\":\"You are using a Trial key, which is limited\"}");
+            return;
+        }
+        if (random.nextDouble() < current.serverErrorRate) {
+            sendPlain(exchange, 503, "{\"message\":\"service unavailable\"}");
+            return;
+        }
+
+        sleep(current.latency.sampleMs());
+        String text;
+        if (random.nextDouble() < current.malformedRate) {
+            text = "I'm sorry, here is the recipe you asked for: {\"title\": \"Half a thought\", \"ingredients\": [oops";
+        } else {
+            text = cannedReply(kind, body);
+        }
+        boolean truncated = random.nextDouble() < current.truncatedRate;
+
+        if (STREAM_FLAG.matcher(body).find()) {
+            stream(exchange, text, truncated, current);
+        } else {
+            if (truncated) {
+                text = text.substring(0, text.length() / 2);
+            }
+            sendPlain(exchange, 200, "{\"id\":\"stand-in-" + requests.get() + "\",\"finish_reason\":\"COMPLETE\","
+                + "\"message\":{\"role\":\"assistant\",\"content\":[{\"type\":\"text\",\"text\":" + quote(text) + "}]}}");
+        }
+    }
+
+    private static void stream(HttpExchange exchange, String text, boolean truncated, FaultProfile profile) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        event(out, "message-start", "{\"type\":\"message-start\",\"id\":\"stand-in\"}");
+        event(out, "content-start", "{\"type\":\"content-start\",\"index\":0}");
+        int end = truncated ? text.length() / 2 : text.length();
+        for (int i = 0; i < end; i += profile.streamChunkChars) {
+            String delta = text.substring(i, Math.min(end, i + profile.streamChunkChars));
+            event(out, "content-delta", "{\"type\":\"content-delta\",\"index\":0,\"delta\":{\"message\":{\"content\":{\"text\":" + quote(delta) + "}}}}");
+            sleep(profile.streamChunkDelayMs);
+        }
+        if (!truncated) {
+            event(out, "content-end", "{\"type\":\"content-end\",\"index\":0}");
+            event(out, "message-end", "{\"type\":\"message-end\",\"delta\":{\"finish_reason\":\"COMPLETE\"}}");
+        }
+    }
+
+    private static void event(OutputStream out, String name, String data) throws IOException {
+        out.write(("event: " + name + "\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private static void sendPlain(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    // Which ChatController prompt this is
+    static String kindOf(String body) {
+        if (body.contains("Suggest replacement meals")) {
+            return KIND_REPLACEMENT_MEALS;
+        }
+        if (PLAN_DAY.matcher(body).find()) {
+            return KIND_MEAL_PLAN_DAY;
+        }
+        if (body.contains("7-day meal plan")) {
+            return KIND_MEAL_PLAN;
+        }
+        if (body.contains("8-10 unique and different recipes")) {
+            return KIND_SEARCH;
+        }
+        return KIND_RECIPE;
+    }
+
+    // Replies wrapped in prose and a code fence the way the model answers, so the extractors are exercised too.
+    // Every one-day plan has the same breakfast, so fanned-out plans always have repeats to replace.
+    private String cannedReply(String kind, String body) {
+        switch (kind) {
+            case KIND_MEAL_PLAN_DAY: {
+                Matcher day = PLAN_DAY.matcher(body);
+                day.find();
+                return "Here is the plan for " + day.group(1) + ":\n```json\n" + dayJson(day.group(1), "Masala Oats") + "\n```";
+            }
+            case KIND_REPLACEMENT_MEALS: {
+                Matcher count = REPLACEMENT_COUNT.matcher(body);
+                int meals = count.find() ? Integer.parseInt(count.group(1)) : 1;
+                StringBuilder replacements = new StringBuilder("[");
+                for (int i = 0; i < meals; i++) {
+                    if (i > 0) {
+                        replacements.append(", ");
+                    }
+                    replacements.append(mealJson("Breakfast", "Replacement Dish " + replacementTitles.incrementAndGet(), 300));
+                }
+                return "Here are the replacements:\n```json\n" + replacements.append("]") + "\n```";
+            }
+            case KIND_SEARCH: {
+                StringBuilder recipes = new StringBuilder("[");
+                for (int i = 1; i <= 8; i++) {
+                    if (i > 1) {
+                        recipes.append(", ");
+                    }
+                    recipes.append(recipeJson("Stand-in Recipe " + i, i));
+                }
+                return "Here are 8 recipes:\n```json\n" + recipes.append("]") + "\n```";
+            }
+            case KIND_MEAL_PLAN: {
+                StringBuilder plan = new StringBuilder("{\"weeklyPlan\": [");
+                for (int d = 0; d < DAYS.length; d++) {
+                    if (d > 0) {
+                        plan.append(", ");
+                    }
+                    plan.append(dayJson(DAYS[d], null));
+                }
+                return "Here is your personalized meal plan:\n```json\n" + plan.append("]}") + "\n```\nEnjoy your week!";
+            }
+            default:
+                return "Here's a recipe you can make:\n```json\n" + recipeJson("Stand-in Recipe", 0) + "\n```";
+        }
+    }
+
+    // breakfast: a fixed breakfast title, or null for one unique to the day
+    private static String dayJson(String day, String breakfast) {
+        StringBuilder meals = new StringBuilder("{\"day\": \"").append(day).append("\", \"meals\": [");
+        for (int m = 0; m < MEAL_TYPES.length; m++) {
+            if (m > 0) {
+                meals.append(", ");
+            }
+            String title = m == 0 && breakfast != null ? breakfast : day + " " + MEAL_TYPES[m] + " Dish";
+            meals.append(mealJson(MEAL_TYPES[m], title, 150 + 100 * m));
+        }
+        return meals.append("]}").toString();
+    }
+
+    private static String mealJson(String type, String title, int calories) {
+        return "{\"type\": \"" + type + "\", \"title\": \"" + title + "\", "
+            + "\"description\": \"A stand-in dish\", \"instructions\": [\"Prepare\", \"Cook\", \"Serve\"], "
+            + "\"calories\": \"" + calories + "\", \"origin\": {\"country\": \"India\", \"region\": \"Bengali\"}, "
+            + "\"ingredients\": [\"rice\", \"lentils\", \"spinach\"]}";
+    }
+
+    private static String recipeJson(String title, int index) {
+        return "{\"title\": \"" + title + "\", \"ingredients\": [\"2 cups rice\", \"1 onion\", \"salt {to taste}\"], "
+            + "\"steps\": [\"Rinse the rice.\", \"Fry the onion until golden.\", \"Simmer together for 20 minutes.\"], "
+            + "\"calories\": \"" + (350 + index * 10) + "\", \"diet\": \"vegetarian\", \"origin\": \"India\", "
+            + "\"course\": \"main dish\", \"cuisine\": \"Indian\", \"prepTime\": \"10\", \"cookTime\": \"25\"}";
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 16).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Standalone: --port=8089 --latency=lognormal:1500:0.5 --rate-429=0.05 --rate-5xx=0.01 --truncated=0.01
+    //             --malformed=0.01 --retry-after=1 --chunk-chars=16 --chunk-delay-ms=20
+    public static void main(String[] args) throws Exception {
+        int port = 8089;
+        FaultProfile profile = new FaultProfile();
+        for (String arg : args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            String value = option.length > 1 ? option[1] : "";
+            switch (option[0]) {
+                case "port": port = Integer.parseInt(value); break;
+                case "latency": profile.latency(Latency.parse(value)); break;
+                case "rate-429": profile.rateLimitRate(Double.parseDouble(value)); break;
+                case "rate-5xx": profile.serverErrorRate(Double.parseDouble(value)); break;
+                case "truncated": profile.truncatedRate(Double.parseDouble(value)); break;
+                case "malformed": profile.malformedRate(Double.parseDouble(value)); break;
+                case "retry-after": profile.retryAfterSeconds(Integer.parseInt(value)); break;
+                case "chunk-chars": profile.streamChunkChars = Integer.parseInt(value); break;
+                case "chunk-delay-ms": profile.streamChunkDelayMs = Long.parseLong(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        CohereStandIn standIn = start(port, profile);
+        System.out.println("Cohere stand-in listening on " + standIn.getUrl());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,109 @@
+package com.shubhodip.nutrisift.cohere;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.shubhodip.nutrisift.recipe.MealPlan;
+import com.shubhodip.nutrisift.recipe.Recipe;
+
+// CohereClient against the local stand-in: every payload kind, plain and streamed, parses into the typed
+// classes and injected faults surface the way the controllers expect.
+@SpringBootTest(properties = {
+		"cohere.retry.base-delay-ms=10",
+		"cohere.retry.max-delay-ms=50",
+		"meal-plan.pregen.enabled=false"
+})
+class CohereStandInTests {
+
+	private static CohereStandIn standIn;
+
+	@Autowired
+	private CohereClient cohereClient;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@DynamicPropertySource
+	static void cohereUrl(DynamicPropertyRegistry registry) throws IOException {
+		standIn = CohereStandIn.start(0, new CohereStandIn.FaultProfile());
+		registry.add("cohere.api.url", standIn::getUrl);
+	}
+
+	@AfterEach
+	void resetProfile() {
+		standIn.setProfile(new CohereStandIn.FaultProfile());
+	}
+
+	@AfterAll
+	static void stopStandIn() {
+		standIn.close();
+	}
+
+	@Test
+	void recipePromptReturnsParseableRecipe() throws IOException {
+		String text = cohereClient.chat(CohereClient.ENDPOINT_RECIPE, "u1",
+				cohereClient.newChatRequest("Suggest a creative recipe using only these ingredients: rice, onion"));
+
+		Recipe recipe = ModelJsonReader.readFirstObject(objectMapper.readerFor(Recipe.class), text);
+		assertNotNull(recipe);
+		assertEquals("Stand-in Recipe", recipe.getTitle());
+		assertEquals(3, recipe.getSteps().size());
+	}
+
+	@Test
+	void streamedSearchYieldsEveryRecipe() {
+		List<String> elements = new ArrayList<>();
+		JsonArrayElementExtractor extractor = new JsonArrayElementExtractor(elements::add);
+
+		cohereClient.chatStream(CohereClient.ENDPOINT_SEARCH, "u1",
+				cohereClient.newChatRequest("Find me 8-10 unique and different recipes with rice"), extractor::feed);
+
+		assertEquals(8, elements.size());
+	}
+
+	@Test
+	void asyncMealPlanCoversTheWeek() throws Exception {
+		String text = cohereClient.chatAsync(CohereClient.ENDPOINT_MEAL_PLAN, "u1",
+				cohereClient.newChatRequest("Create a personalized 7-day meal plan for a vegetarian")).get();
+
+		ObjectReader reader = objectMapper.readerFor(MealPlan.class);
+		MealPlan plan = ModelJsonReader.readFirstObject(reader, text);
+		assertNotNull(plan);
+		assertEquals(7, plan.getWeeklyPlan().size());
+		assertEquals(5, plan.getWeeklyPlan().get(0).getMeals().size());
+	}
+
+	@Test
+	void rateLimitedEveryTimeBecomesUnavailable() {
+		standIn.setProfile(new CohereStandIn.FaultProfile().rateLimitRate(1.0));
+		long before = standIn.getRequestCount();
+
+		assertThrows(CohereUnavailableException.class, () -> cohereClient.chat(CohereClient.ENDPOINT_RECIPE, "u2",
+				cohereClient.newChatRequest("Suggest a creative recipe using only these ingredients: eggs")));
+		assertTrue(standIn.getRequestCount() - before > 1, "429s should be retried");
+	}
+
+	@Test
+	void truncatedReplyFailsToParse() {
+		standIn.setProfile(new CohereStandIn.FaultProfile().truncatedRate(1.0));
+		String text = cohereClient.chat(CohereClient.ENDPOINT_MEAL_PLAN, "u3",
+				cohereClient.newChatRequest("Create a personalized 7-day meal plan for a vegan"));
+
+		assertThrows(IOException.class, () -> ModelJsonReader.readFirstObject(objectMapper.readerFor(MealPlan.class), text));
+	}
+}
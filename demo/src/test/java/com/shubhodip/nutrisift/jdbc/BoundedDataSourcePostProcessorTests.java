@@ -0,0 +1,56 @@
+package com.shubhodip.nutrisift.jdbc;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+// DataSources are only wrapped in virtual-thread mode, and each wrapper's permits are reported as gauges.
+class BoundedDataSourcePostProcessorTests {
+
+	@Test
+	void wrappedDataSourceReportsItsPermits() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		BoundedDataSourcePostProcessor postProcessor = postProcessor(true, registry);
+		Object dataSource = postProcessor.postProcessAfterInitialization(new SimpleDriverDataSource(), "dataSource");
+		assertTrue(dataSource instanceof BoundedDataSource);
+		postProcessor.afterSingletonsInstantiated();
+
+		assertEquals(3, registry.get("jdbc.bulkhead.available").tag("name", "dataSource").gauge().value());
+		assertEquals(0, registry.get("jdbc.bulkhead.waiting").tag("name", "dataSource").gauge().value());
+
+		// The driver-less target fails to connect; the permit taken for it must come back
+		assertThrows(Exception.class, () -> ((BoundedDataSource) dataSource).getConnection());
+		assertEquals(3, registry.get("jdbc.bulkhead.available").tag("name", "dataSource").gauge().value());
+	}
+
+	@Test
+	void platformThreadsLeaveTheDataSourceAlone() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		BoundedDataSourcePostProcessor postProcessor = postProcessor(false, registry);
+		SimpleDriverDataSource dataSource = new SimpleDriverDataSource();
+		assertSame(dataSource, postProcessor.postProcessAfterInitialization(dataSource, "dataSource"));
+		postProcessor.afterSingletonsInstantiated();
+
+		assertTrue(registry.find("jdbc.bulkhead.available").gauges().isEmpty());
+	}
+
+	private static BoundedDataSourcePostProcessor postProcessor(boolean virtualThreads, MeterRegistry registry) {
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+		beanFactory.addBean("meterRegistry", registry);
+		BoundedDataSourcePostProcessor postProcessor = new BoundedDataSourcePostProcessor();
+		ReflectionTestUtils.setField(postProcessor, "meterRegistry", beanFactory.getBeanProvider(MeterRegistry.class));
+		ReflectionTestUtils.setField(postProcessor, "virtualThreads", virtualThreads);
+		ReflectionTestUtils.setField(postProcessor, "maxConnections", 3);
+		ReflectionTestUtils.setField(postProcessor, "acquireTimeoutMs", 1000L);
+		return postProcessor;
+	}
+}
@@ -0,0 +1,38 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Stored-side normalization folds quantities, plurals and synonyms; its fingerprint follows the synonym
+// dictionary but not the request-side spell correction settings.
+class IngredientNormalizerTests {
+
+	@Test
+	void normalizeFoldsQuantitiesPluralsAndSynonyms() {
+		IngredientNormalizer normalizer = normalizer("bell_pepper=capsicum", 2);
+		assertEquals(List.of("tomato", "capsicum", "onion"), normalizer.normalizeTokens("2 cups Tomatoes, bell-peppers; 1 chopped onion"));
+	}
+
+	@Test
+	void fingerprintFollowsTheSynonymsOnly() {
+		int fingerprint = normalizer("bell_pepper=capsicum", 2).fingerprint();
+		assertEquals(fingerprint, normalizer("bell_pepper=capsicum", 1).fingerprint());
+		assertNotEquals(fingerprint, normalizer("bell_pepper=capsicum\nbrinjal=eggplant", 2).fingerprint());
+		assertNotEquals(fingerprint, normalizer("bell_pepper=pepper", 2).fingerprint());
+	}
+
+	private static IngredientNormalizer normalizer(String synonyms, int maxEditDistance) {
+		IngredientNormalizer normalizer = new IngredientNormalizer();
+		ReflectionTestUtils.setField(normalizer, "synonymsResource", new ByteArrayResource(synonyms.getBytes(StandardCharsets.UTF_8)));
+		ReflectionTestUtils.setField(normalizer, "maxEditDistance", maxEditDistance);
+		normalizer.loadSynonyms();
+		return normalizer;
+	}
+}
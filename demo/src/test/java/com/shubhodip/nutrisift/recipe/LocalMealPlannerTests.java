@@ -0,0 +1,159 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Plans are composed only from catalog meals of a diet at least as strict as the user's, never repeat a title
+// within a meal type, and with a calorie goal each day lands as close to it as any choice of candidates can.
+class LocalMealPlannerTests {
+
+	@Test
+	void dayCaloriesAreAsCloseToTheGoalAsBruteForceFinds() {
+		MealCatalog catalog = catalog();
+		Random random = new Random(42);
+		List<List<Integer>> calories = new ArrayList<>();
+		for (String type : LocalMealPlanner.MEAL_TYPES) {
+			List<Integer> slotCalories = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				int kcal = 10 * (10 + random.nextInt(70));
+				slotCalories.add(kcal);
+				catalog.add(meal(type, type + " " + i, kcal), LocalMealPlanner.DIET_VEGAN);
+			}
+			calories.add(slotCalories);
+		}
+		int goal = 1870;
+		MealPlan plan = planner(catalog).plan(profile("Vegan", goal));
+		assertNotNull(plan);
+
+		// The first day has every meal to choose from
+		int total = 0;
+		for (Meal meal : plan.getWeeklyPlan().get(0).getMeals()) {
+			total += LocalMealPlanner.calories(meal);
+		}
+		assertEquals(closest(calories, 0, 0, goal), Math.abs(total - goal));
+		assertNoTitleRepeatsWithinAType(plan);
+	}
+
+	@Test
+	void mealsFromLessStrictPlansAreNotOfferedEvenWithoutAGiveawayWord() {
+		MealCatalog catalog = catalog();
+		for (String type : LocalMealPlanner.MEAL_TYPES) {
+			for (int i = 0; i < 7; i++) {
+				if (type.equals("Breakfast") && i == 0) {
+					// Nothing in the word lists gives ham or chorizo away, only the plan's diet does
+					Meal ham = meal(type, "Ham Sandwich", 300);
+					ham.getIngredients().add("2 slices ham");
+					ham.getIngredients().add("chorizo");
+					catalog.add(ham, LocalMealPlanner.DIET_ANY);
+				} else if (type.equals("Lunch") && i == 0) {
+					catalog.add(meal(type, "Anchovy Pasta", 500), LocalMealPlanner.DIET_PESCATARIAN);
+				} else {
+					catalog.add(meal(type, type + " " + i, 300), i % 2 == 0 ? LocalMealPlanner.DIET_VEGAN : LocalMealPlanner.DIET_VEGETARIAN);
+				}
+			}
+		}
+		LocalMealPlanner planner = planner(catalog);
+
+		MealPlan vegetarian = planner.plan(profile("Vegetarian", 0));
+		assertNotNull(vegetarian);
+		assertFalse(titles(vegetarian).contains("Ham Sandwich"));
+		assertFalse(titles(vegetarian).contains("Anchovy Pasta"));
+		assertEquals(2, LocalMealPlanner.countOpenSlots(vegetarian));
+
+		// Seven meals per type and seven days: an omnivore gets every one of them
+		MealPlan omnivore = planner.plan(profile("No preference", 0));
+		assertNotNull(omnivore);
+		assertTrue(titles(omnivore).contains("Ham Sandwich"));
+		assertTrue(titles(omnivore).contains("Anchovy Pasta"));
+		assertEquals(0, LocalMealPlanner.countOpenSlots(omnivore));
+		assertNoTitleRepeatsWithinAType(omnivore);
+
+		MealPlan vegan = planner.plan(profile("Vegan", 0));
+		assertNull(vegan); // At most 4 of 7 meals per type are from vegan plans: too many open slots
+	}
+
+	@Test
+	void dietOfFollowsTheDietaryPreference() {
+		assertEquals(LocalMealPlanner.DIET_VEGAN, LocalMealPlanner.dietOf(profile("Vegan", 0)));
+		assertEquals(LocalMealPlanner.DIET_VEGETARIAN, LocalMealPlanner.dietOf(profile("Vegetarian, gluten-free", 0)));
+		assertEquals(LocalMealPlanner.DIET_PESCATARIAN, LocalMealPlanner.dietOf(profile("Pescetarian", 0)));
+		assertEquals(LocalMealPlanner.DIET_ANY, LocalMealPlanner.dietOf(profile("Non-vegetarian", 0)));
+		assertEquals(LocalMealPlanner.DIET_ANY, LocalMealPlanner.dietOf(profile(null, 0)));
+	}
+
+	// Smallest |total - goal| over one candidate per slot
+	private static int closest(List<List<Integer>> calories, int slot, int total, int goal) {
+		if (slot == calories.size()) {
+			return Math.abs(total - goal);
+		}
+		int best = Integer.MAX_VALUE;
+		for (int kcal : calories.get(slot)) {
+			best = Math.min(best, closest(calories, slot + 1, total + kcal, goal));
+		}
+		return best;
+	}
+
+	private static void assertNoTitleRepeatsWithinAType(MealPlan plan) {
+		Set<String> seen = new HashSet<>();
+		for (DayPlan dayPlan : plan.getWeeklyPlan()) {
+			for (Meal meal : dayPlan.getMeals()) {
+				if (meal.getTitle() != null) {
+					assertTrue(seen.add(meal.getType() + "|" + meal.getTitle()), meal.getTitle());
+				}
+			}
+		}
+	}
+
+	private static Set<String> titles(MealPlan plan) {
+		Set<String> titles = new HashSet<>();
+		for (DayPlan dayPlan : plan.getWeeklyPlan()) {
+			for (Meal meal : dayPlan.getMeals()) {
+				titles.add(meal.getTitle());
+			}
+		}
+		return titles;
+	}
+
+	private static MealCatalog catalog() {
+		MealCatalog catalog = new MealCatalog();
+		ReflectionTestUtils.setField(catalog, "maxMealsPerType", 2000);
+		ReflectionTestUtils.setField(catalog, "ready", true);
+		return catalog;
+	}
+
+	private static LocalMealPlanner planner(MealCatalog catalog) {
+		LocalMealPlanner planner = new LocalMealPlanner();
+		ReflectionTestUtils.setField(planner, "mealCatalog", catalog);
+		ReflectionTestUtils.setField(planner, "candidatesPerSlot", 40);
+		ReflectionTestUtils.setField(planner, "maxOpenSlots", 7);
+		ReflectionTestUtils.setField(planner, "calorieStep", 10);
+		return planner;
+	}
+
+	private static UserProfile profile(String diet, int calorieGoal) {
+		UserProfile profile = new UserProfile();
+		profile.setDietaryPreference(diet);
+		profile.setCalorieGoal(calorieGoal);
+		return profile;
+	}
+
+	private static Meal meal(String type, String title, int calories) {
+		Meal meal = new Meal();
+		meal.setType(type);
+		meal.setTitle(title);
+		meal.setCalories(calories + " kcal");
+		return meal;
+	}
+}
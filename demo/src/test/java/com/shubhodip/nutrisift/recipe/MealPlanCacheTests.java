@@ -0,0 +1,122 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Profiles that would produce the same prompt share a signature, and each signature's pool rotates: a user is
+// never handed a plan twice, the oldest plan goes once the pool is full, and expired plans are not served.
+class MealPlanCacheTests {
+
+	@Test
+	void signatureIgnoresCaseSpacingAndListOrder() {
+		MealPlanCache cache = cache(10, 5, 604800000L);
+		UserProfile a = profile("Vegetarian", "Peanuts, dairy", 2000, "Weight loss", "Bengali;Italian", "Kolkata");
+		UserProfile b = profile("  vegetarian ", "dairy,peanuts", 2000, "weight   loss", "italian / bengali", "kolkata");
+		assertEquals(cache.signature(a), cache.signature(b));
+	}
+
+	@Test
+	void signatureBucketsTheCalorieGoalAndTreatsNoneAsEmpty() {
+		MealPlanCache cache = cache(10, 5, 604800000L);
+		assertEquals(cache.signature(profile("Vegan", "none", 1950, null, null, null)),
+			cache.signature(profile("Vegan", null, 2040, null, null, null)));
+		assertNotEquals(cache.signature(profile("Vegan", null, 2000, null, null, null)),
+			cache.signature(profile("Vegan", null, 2200, null, null, null)));
+		// A missing city signs as the prompt's default
+		assertEquals(cache.signature(profile("Vegan", null, 0, null, null, null)),
+			cache.signature(profile("Vegan", null, 0, null, null, "Kolkata")));
+	}
+
+	@Test
+	void signatureChangesWithEveryPromptField() {
+		MealPlanCache cache = cache(10, 5, 604800000L);
+		String base = cache.signature(profile("Vegan", "soy", 2000, "energy", "thai", "Pune"));
+		assertNotEquals(base, cache.signature(profile("Vegetarian", "soy", 2000, "energy", "thai", "Pune")));
+		assertNotEquals(base, cache.signature(profile("Vegan", "nuts", 2000, "energy", "thai", "Pune")));
+		assertNotEquals(base, cache.signature(profile("Vegan", "soy", 2000, "muscle gain", "thai", "Pune")));
+		assertNotEquals(base, cache.signature(profile("Vegan", "soy", 2000, "energy", "mexican", "Pune")));
+		assertNotEquals(base, cache.signature(profile("Vegan", "soy", 2000, "energy", "thai", "Delhi")));
+	}
+
+	@Test
+	void aUserIsNeverHandedThePlanTheyWereServed() {
+		MealPlanCache cache = cache(10, 5, 604800000L);
+		cache.put("sig", "u1", plan("Monday"));
+
+		assertNull(cache.take("sig", "u1"));
+		MealPlan taken = cache.take("sig", "u2");
+		assertNotNull(taken);
+		assertEquals("Monday", taken.getWeeklyPlan().get(0).getDay());
+		assertNull(cache.take("sig", "u2"));
+		assertNull(cache.take("other", "u2"));
+	}
+
+	@Test
+	void newPlansReplaceTheOldestOnceThePoolIsFull() {
+		MealPlanCache cache = cache(10, 2, 604800000L);
+		cache.put("sig", "u1", plan("Monday"));
+		cache.put("sig", "u1", plan("Tuesday"));
+		cache.put("sig", "u1", plan("Wednesday"));
+
+		assertEquals(2, cache.size());
+		assertEquals("Tuesday", cache.take("sig", "u2").getWeeklyPlan().get(0).getDay());
+		assertEquals("Wednesday", cache.take("sig", "u2").getWeeklyPlan().get(0).getDay());
+		assertNull(cache.take("sig", "u2"));
+	}
+
+	@Test
+	void expiredPlansAreNotServed() {
+		MealPlanCache cache = cache(10, 5, -1);
+		cache.put("sig", "u1", plan("Monday"));
+		assertNull(cache.take("sig", "u2"));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void leastRecentlyUsedSignatureIsEvicted() {
+		MealPlanCache cache = cache(2, 5, 604800000L);
+		cache.put("a", "u1", plan("Monday"));
+		cache.put("b", "u1", plan("Monday"));
+		assertNull(cache.take("a", "u1")); // Touches a, so b is now the eldest
+		cache.put("c", "u1", plan("Monday"));
+
+		assertNotNull(cache.take("a", "u2"));
+		assertNull(cache.take("b", "u2"));
+		assertNotNull(cache.take("c", "u2"));
+	}
+
+	private static MealPlanCache cache(int maxProfiles, int poolSize, long ttlMs) {
+		MealPlanCache cache = new MealPlanCache();
+		ReflectionTestUtils.setField(cache, "maxProfiles", maxProfiles);
+		ReflectionTestUtils.setField(cache, "poolSize", poolSize);
+		ReflectionTestUtils.setField(cache, "ttlMs", ttlMs);
+		ReflectionTestUtils.setField(cache, "calorieBucket", 200);
+		return cache;
+	}
+
+	private static UserProfile profile(String diet, String allergies, int calorieGoal, String healthGoals, String cuisines, String city) {
+		UserProfile profile = new UserProfile();
+		profile.setDietaryPreference(diet);
+		profile.setAllergies(allergies);
+		profile.setCalorieGoal(calorieGoal);
+		profile.setHealthGoals(healthGoals);
+		profile.setCuisinePreferences(cuisines);
+		profile.setCity(city);
+		return profile;
+	}
+
+	private static MealPlan plan(String day) {
+		DayPlan dayPlan = new DayPlan();
+		dayPlan.setDay(day);
+		MealPlan mealPlan = new MealPlan();
+		mealPlan.setWeeklyPlan(List.of(dayPlan));
+		return mealPlan;
+	}
+}
@@ -0,0 +1,97 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import com.shubhodip.nutrisift.cohere.CohereStandIn;
+
+// MealPlanFanOut against the local Cohere stand-in: the seven day calls overlap, repeated meals are
+// re-requested together, and single meals or days of a stored plan are replaced in place.
+@SpringBootTest(properties = {
+		"cohere.retry.base-delay-ms=10",
+		"cohere.retry.max-delay-ms=50",
+		"meal-plan.pregen.enabled=false"
+})
+class MealPlanFanOutTests {
+
+	private static CohereStandIn standIn;
+
+	@Autowired
+	private MealPlanFanOut mealPlanFanOut;
+
+	@DynamicPropertySource
+	static void cohereUrl(DynamicPropertyRegistry registry) throws IOException {
+		standIn = CohereStandIn.start(0, new CohereStandIn.FaultProfile());
+		registry.add("cohere.api.url", standIn::getUrl);
+	}
+
+	@AfterEach
+	void resetProfile() {
+		standIn.setProfile(new CohereStandIn.FaultProfile());
+	}
+
+	@AfterAll
+	static void stopStandIn() {
+		standIn.close();
+	}
+
+	@Test
+	void fannedOutMealPlanRunsDaysConcurrentlyAndReplacesRepeats() throws Exception {
+		// Every stand-in day has the same breakfast; the latency keeps each call open long enough to overlap
+		standIn.setProfile(new CohereStandIn.FaultProfile().latency(CohereStandIn.Latency.fixed(300)));
+		standIn.resetMaxConcurrentRequests();
+
+		MealPlan plan = mealPlanFanOut.generate("u4", "Diet: vegetarian", Runnable::run).get();
+
+		assertEquals(7, plan.getWeeklyPlan().size());
+		assertEquals(MealPlanFanOut.DAYS.get(6), plan.getWeeklyPlan().get(6).getDay());
+		Set<String> breakfasts = new HashSet<>();
+		for (DayPlan day : plan.getWeeklyPlan()) {
+			assertEquals(5, day.getMeals().size());
+			breakfasts.add(day.getMeals().get(0).getTitle());
+		}
+		assertEquals(7, breakfasts.size(), "repeated breakfasts should have been replaced");
+		assertEquals(1, standIn.getRequestCount(CohereStandIn.KIND_REPLACEMENT_MEALS));
+		// All seven days in flight together, not one after another
+		assertEquals(MealPlanFanOut.DAYS.size(), standIn.getMaxConcurrentRequests());
+	}
+
+	@Test
+	void regeneratingOneMealOrDayLeavesTheRestOfThePlan() throws Exception {
+		MealPlan plan = mealPlanFanOut.generate("u5", "Diet: vegetarian", Runnable::run).get();
+		String mondayLunch = plan.getWeeklyPlan().get(0).getMeals().get(2).getTitle();
+		String wednesdayBreakfast = plan.getWeeklyPlan().get(2).getMeals().get(0).getTitle();
+
+		mealPlanFanOut.regenerateMeal("u5", "Diet: vegetarian", plan, "tuesday", "Dinner", Runnable::run).get();
+		assertEquals(mondayLunch, plan.getWeeklyPlan().get(0).getMeals().get(2).getTitle());
+		assertEquals("Dinner", plan.getWeeklyPlan().get(1).getMeals().get(4).getType());
+		assertTrue(plan.getWeeklyPlan().get(1).getMeals().get(4).getTitle().startsWith("Replacement Dish"));
+
+		mealPlanFanOut.regenerateDay("u5", "Diet: vegetarian", plan, "Wednesday", Runnable::run).get();
+		assertEquals(7, plan.getWeeklyPlan().size());
+		assertEquals("Wednesday", plan.getWeeklyPlan().get(2).getDay());
+		assertEquals(5, plan.getWeeklyPlan().get(2).getMeals().size());
+		// The stand-in's new day repeats Monday's breakfast, so that meal is re-requested as well
+		assertNotEquals(wednesdayBreakfast, plan.getWeeklyPlan().get(2).getMeals().get(0).getTitle());
+		assertEquals(mondayLunch, plan.getWeeklyPlan().get(0).getMeals().get(2).getTitle());
+
+		ExecutionException missing = assertThrows(ExecutionException.class,
+				() -> mealPlanFanOut.regenerateMeal("u5", "Diet: vegetarian", plan, "Funday", "Dinner", Runnable::run).get());
+		assertTrue(missing.getCause() instanceof IllegalArgumentException);
+	}
+}
@@ -0,0 +1,46 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// Recipes and meals bind whatever shape the model writes their text fields in: objects and arrays are
+// flattened to their values, a lone string stands for a one-element list, plain strings pass unchanged.
+class ModelTextDeserializerTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void objectShapedRecipeFieldsAreFlattened() throws Exception {
+		Recipe recipe = objectMapper.readValue("{\"title\": \"Khichdi\", "
+				+ "\"ingredients\": [{\"name\": \"rice\", \"quantity\": \"1 cup\"}, \"2 cups water\", 3], "
+				+ "\"steps\": \"Cook everything together\", "
+				+ "\"calories\": 350, "
+				+ "\"origin\": {\"country\": \"India\", \"region\": \"Bengal\"}, "
+				+ "\"cuisine\": [\"Indian\", \"Bengali\"]}", Recipe.class);
+
+		assertEquals("Khichdi", recipe.getTitle());
+		assertEquals(List.of("rice, 1 cup", "2 cups water", "3"), recipe.getIngredients());
+		assertEquals(List.of("Cook everything together"), recipe.getSteps());
+		assertEquals("350", recipe.getCalories());
+		assertEquals("India, Bengal", recipe.getOrigin());
+		assertEquals("Indian, Bengali", recipe.getCuisine());
+		assertEquals(Recipe.NOT_SPECIFIED, recipe.getDiet());
+	}
+
+	@Test
+	void objectShapedMealFieldsAreFlattened() throws Exception {
+		Meal meal = objectMapper.readValue("{\"type\": \"Lunch\", \"title\": \"Dal\", "
+				+ "\"instructions\": [{\"step\": 1, \"text\": \"Boil the lentils\"}], "
+				+ "\"ingredients\": [{\"item\": \"lentils\", \"amount\": {\"value\": 100, \"unit\": \"g\"}}], "
+				+ "\"origin\": {\"country\": \"India\"}}", Meal.class);
+
+		assertEquals(List.of("1, Boil the lentils"), meal.getInstructions());
+		assertEquals(List.of("lentils, 100, g"), meal.getIngredients());
+		assertEquals("India", meal.getOrigin().getCountry());
+	}
+}
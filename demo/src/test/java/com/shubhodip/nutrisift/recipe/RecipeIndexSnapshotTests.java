@@ -0,0 +1,137 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Writing the indexes to the mapped snapshot file and loading them into fresh indexes gives back the same
+// answers and high-water marks; re-adding rows the snapshot already holds changes nothing, and the replay
+// margin picks up a row that was still in flight below the mark when the snapshot was written.
+class RecipeIndexSnapshotTests {
+
+	private static final String[] VOCABULARY = {
+			"rice", "onion", "tomato", "garlic", "ginger", "chicken", "paneer", "potato", "peas", "cumin", "lentil", "spinach"
+	};
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void writeThenLoadRoundTripsBothSections() throws Exception {
+		Random random = new Random(3);
+		RecipeMatchIndex matchIndex = new RecipeMatchIndex();
+		RecipeVectorIndex vectorIndex = new RecipeVectorIndex();
+		for (int id = 1; id <= 300; id++) {
+			List<String> tokens = randomTokens(random);
+			matchIndex.add(id, String.join(" ", tokens));
+			vectorIndex.add(id, tokens);
+		}
+		Path file = dir.resolve("recipe-index.snap");
+		snapshot(file, matchIndex, vectorIndex).write(3);
+		assertTrue(Files.size(file) > 0);
+
+		RecipeMatchIndex loadedMatchIndex = new RecipeMatchIndex();
+		RecipeVectorIndex loadedVectorIndex = new RecipeVectorIndex();
+		// A live add before the load is replaced by the snapshot contents and doesn't move the replay start
+		loadedMatchIndex.add(500, "rice");
+		RecipeIndexSnapshot loaded = snapshot(file, loadedMatchIndex, loadedVectorIndex);
+		assertTrue(loaded.load(true, true));
+
+		assertEquals(300, loaded.getMatchReplayFrom());
+		assertEquals(300, loaded.getVectorReplayFrom());
+		assertEquals(matchIndex.size(), loadedMatchIndex.size());
+		assertEquals(vectorIndex.size(), loadedVectorIndex.size());
+		assertEquals(matchIndex.vocabulary(), loadedMatchIndex.vocabulary());
+		for (int q = 0; q < 30; q++) {
+			List<String> request = randomTokens(random);
+			assertEquals(search(matchIndex, request), search(loadedMatchIndex, request));
+			assertEquals(vectorIndex.nearest(request).getLogId(), loadedVectorIndex.nearest(request).getLogId());
+		}
+
+		// Replayed rows the snapshot already covers are not indexed twice
+		loadedMatchIndex.add(1, "rice onion");
+		loadedVectorIndex.add(1, List.of("rice", "onion"));
+		assertEquals(matchIndex.size(), loadedMatchIndex.size());
+		assertEquals(vectorIndex.size(), loadedVectorIndex.size());
+	}
+
+	@Test
+	void replayMarginCoversARowIndexedAfterAHigherOne() {
+		RecipeMatchIndex matchIndex = new RecipeMatchIndex();
+		RecipeVectorIndex vectorIndex = new RecipeVectorIndex();
+		// Row 250 was saved but not indexed yet when the snapshot was taken; the mark is already 300
+		for (int id = 1; id <= 300; id++) {
+			if (id != 250) {
+				matchIndex.add(id, "rice onion");
+				vectorIndex.add(id, List.of("rice", "onion"));
+			}
+		}
+		Path file = dir.resolve("gap.snap");
+		snapshot(file, matchIndex, vectorIndex).write(3);
+
+		RecipeMatchIndex loadedMatchIndex = new RecipeMatchIndex();
+		RecipeVectorIndex loadedVectorIndex = new RecipeVectorIndex();
+		RecipeIndexSnapshot loaded = snapshot(file, loadedMatchIndex, loadedVectorIndex);
+		ReflectionTestUtils.setField(loaded, "replayMargin", 100L);
+		assertTrue(loaded.load(true, true));
+		assertEquals(200, loaded.getMatchReplayFrom());
+		assertEquals(200, loaded.getVectorReplayFrom());
+
+		// The startup replay of every row above the replay start
+		for (long id = loaded.getMatchReplayFrom() + 1; id <= 300; id++) {
+			loadedMatchIndex.add(id, "rice onion");
+		}
+		for (long id = loaded.getVectorReplayFrom() + 1; id <= 300; id++) {
+			loadedVectorIndex.add(id, List.of("rice", "onion"));
+		}
+		assertEquals(300, loadedMatchIndex.size());
+		assertEquals(300, loadedVectorIndex.size());
+	}
+
+	@Test
+	void snapshotWithoutANeededSectionIsIgnored() {
+		RecipeMatchIndex matchIndex = new RecipeMatchIndex();
+		matchIndex.add(1, "rice onion");
+		Path file = dir.resolve("match-only.snap");
+		snapshot(file, matchIndex, new RecipeVectorIndex()).write(1);
+
+		RecipeMatchIndex loadedMatchIndex = new RecipeMatchIndex();
+		assertFalse(snapshot(file, loadedMatchIndex, new RecipeVectorIndex()).load(true, true));
+		assertEquals(0, loadedMatchIndex.size());
+	}
+
+	private static RecipeIndexSnapshot snapshot(Path file, RecipeMatchIndex matchIndex, RecipeVectorIndex vectorIndex) {
+		RecipeIndexSnapshot snapshot = new RecipeIndexSnapshot();
+		ReflectionTestUtils.setField(snapshot, "enabled", true);
+		ReflectionTestUtils.setField(snapshot, "path", file.toString());
+		ReflectionTestUtils.setField(snapshot, "recipeMatchIndex", matchIndex);
+		ReflectionTestUtils.setField(snapshot, "recipeVectorIndex", vectorIndex);
+		ReflectionTestUtils.setField(snapshot, "ingredientNormalizer", new IngredientNormalizer());
+		return snapshot;
+	}
+
+	private static HashSet<Long> search(RecipeMatchIndex index, List<String> request) {
+		TopKRecipeScores topK = new TopKRecipeScores(1000);
+		index.search(request, 0.5, topK);
+		return new HashSet<>(topK.logIdsByScore());
+	}
+
+	private static List<String> randomTokens(Random random) {
+		int count = 2 + random.nextInt(4);
+		String[] tokens = new String[count];
+		for (int i = 0; i < count; i++) {
+			tokens[i] = VOCABULARY[random.nextInt(VOCABULARY.length)];
+		}
+		return List.of(tokens);
+	}
+}
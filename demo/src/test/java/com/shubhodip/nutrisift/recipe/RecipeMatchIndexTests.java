@@ -0,0 +1,117 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+// The inverted index finds exactly the recipes the original full-scan bidirectional score accepts.
+class RecipeMatchIndexTests {
+
+	private static final String[] VOCABULARY = {
+			"rice", "basmati", "onion", "red", "tomato", "garlic", "ginger", "chicken", "paneer", "potato",
+			"peas", "cumin", "turmeric", "salt", "oil", "butter", "egg", "flour", "milk", "sugar"
+	};
+
+	@Test
+	void searchMatchesFullScanScores() {
+		Random random = new Random(42);
+		RecipeMatchIndex index = new RecipeMatchIndex();
+		List<String> corpus = new ArrayList<>();
+		for (int id = 1; id <= 500; id++) {
+			String ingredients = randomIngredients(random, 2 + random.nextInt(5));
+			corpus.add(ingredients);
+			index.add(id, ingredients);
+		}
+		index.markReady(corpus.size());
+
+		for (int q = 0; q < 50; q++) {
+			List<String> request = RecipeMatchIndex.tokenize(randomIngredients(random, 1 + random.nextInt(4)));
+			Set<Long> expected = new HashSet<>();
+			for (int i = 0; i < corpus.size(); i++) {
+				if (fullScanScore(RecipeMatchIndex.tokenize(corpus.get(i)), request) >= 0.8) {
+					expected.add((long) i + 1);
+				}
+			}
+
+			TopKRecipeScores topK = new TopKRecipeScores(corpus.size());
+			index.search(request, 0.8, topK);
+			assertEquals(expected, new HashSet<>(topK.logIdsByScore()), "request " + request);
+		}
+	}
+
+	@Test
+	void lenientMatchesResolveThroughTheGramIndex() {
+		// Requested tokens that are substrings or superstrings of stored ones, including one- and two-letter tokens
+		String[] stored = { "tomatoes", "tomato", "oil", "boiled", "rice", "ricebran", "ab", "a", "cashewnut", "nut" };
+		RecipeMatchIndex index = new RecipeMatchIndex();
+		for (int i = 0; i < stored.length; i++) {
+			index.add(i + 1, stored[i]);
+		}
+
+		for (String request : new String[] { "tomato", "toma", "oil", "boiledrice", "ice", "a", "b", "nut", "cashew", "xyz" }) {
+			Set<Long> expected = new HashSet<>();
+			for (int i = 0; i < stored.length; i++) {
+				if (RecipeMatchIndex.tokensMatch(stored[i], request)) {
+					expected.add((long) i + 1);
+				}
+			}
+			TopKRecipeScores topK = new TopKRecipeScores(stored.length);
+			index.search(List.of(request), 0.0, topK);
+			assertEquals(expected, new HashSet<>(topK.logIdsByScore()), "request " + request);
+		}
+	}
+
+	@Test
+	void recipesWithoutTokensAreNotIndexed() {
+		RecipeMatchIndex index = new RecipeMatchIndex();
+		index.add(1, " , ");
+		index.add(2, "rice onion");
+		assertEquals(1, index.size());
+		assertEquals(2, index.getHighWaterMark());
+		assertTrue(index.vocabulary().containsAll(List.of("rice", "onion")));
+	}
+
+	private static String randomIngredients(Random random, int count) {
+		StringBuilder ingredients = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				ingredients.append(random.nextBoolean() ? ", " : " ");
+			}
+			ingredients.append(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+		}
+		return ingredients.toString();
+	}
+
+	// The original per-row scoring: 0.3 for requested ingredients found, 0.7 for stored ingredients matched
+	static double fullScanScore(List<String> stored, List<String> requested) {
+		if (stored.isEmpty() || requested.isEmpty()) {
+			return 0.0;
+		}
+		int requestedFound = 0;
+		for (String reqIng : requested) {
+			for (String storedIng : stored) {
+				if (RecipeMatchIndex.tokensMatch(storedIng, reqIng)) {
+					requestedFound++;
+					break;
+				}
+			}
+		}
+		int storedMatched = 0;
+		for (String storedIng : stored) {
+			for (String reqIng : requested) {
+				if (RecipeMatchIndex.tokensMatch(storedIng, reqIng)) {
+					storedMatched++;
+					break;
+				}
+			}
+		}
+		return (double) requestedFound / requested.size() * 0.3 + (double) storedMatched / stored.size() * 0.7;
+	}
+}
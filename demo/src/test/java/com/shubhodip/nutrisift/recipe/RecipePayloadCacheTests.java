@@ -0,0 +1,75 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+// The cached payload is the stored recipe with the required fields defaulted, serialized once; unreadable rows
+// are not cached and the least recently used entry goes first.
+class RecipePayloadCacheTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void ingestDefaultsMissingFieldsAndKeepsStoredOnes() throws Exception {
+		RecipePayloadCache cache = cache(10);
+		RecipePayloadCache.RecipePayload payload = cache.ingest(7, "{\"title\":\"Dal\",\"diet\":\"vegan\"}", "h7");
+
+		assertEquals(7, payload.getLogId());
+		assertEquals("h7", payload.getResultHash());
+		Map<?, ?> recipe = objectMapper.readValue(payload.getJson(), Map.class);
+		assertEquals("Dal", recipe.get("title"));
+		assertEquals("vegan", recipe.get("diet"));
+		assertEquals(Recipe.NOT_AVAILABLE, recipe.get("calories"));
+		assertEquals(Recipe.NOT_SPECIFIED, recipe.get("cuisine"));
+		assertSame(payload, cache.get(7));
+	}
+
+	@Test
+	void unreadableResultIsNotCached() {
+		RecipePayloadCache cache = cache(10);
+		assertNull(cache.ingest(1, "not json", "h1"));
+		assertNull(cache.ingest(2, "[1, 2]", "h2"));
+		assertNull(cache.get(1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	void leastRecentlyUsedEntryIsEvicted() {
+		RecipePayloadCache cache = cache(2);
+		cache.ingest(1, "{\"title\":\"a\"}", "h1");
+		cache.ingest(2, "{\"title\":\"b\"}", "h2");
+		assertNotNull(cache.get(1)); // 2 is now the eldest
+		cache.ingest(3, "{\"title\":\"c\"}", "h3");
+
+		assertEquals(2, cache.size());
+		assertNull(cache.get(2));
+		assertNotNull(cache.get(1));
+		assertNotNull(cache.get(3));
+	}
+
+	@Test
+	void reingestingARowReplacesItsPayload() {
+		RecipePayloadCache cache = cache(10);
+		cache.ingest(1, "{\"title\":\"a\"}", "h1");
+		RecipePayloadCache.RecipePayload replaced = cache.ingest(1, "{\"title\":\"a\"}", "h1");
+		assertEquals(1, cache.size());
+		assertArrayEquals(replaced.getJson(), cache.get(1).getJson());
+	}
+
+	private RecipePayloadCache cache(int maxEntries) {
+		RecipePayloadCache cache = new RecipePayloadCache();
+		ReflectionTestUtils.setField(cache, "maxEntries", maxEntries);
+		ReflectionTestUtils.setField(cache, "objectMapper", objectMapper);
+		return cache;
+	}
+}
@@ -0,0 +1,136 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+// Pooled search results are only handed to users whose seen-set doesn't hold them, refills depend on the
+// pool alone, and the least recently used pools and seen-sets are evicted.
+class RecipeSearchPoolTests {
+
+	@Test
+	void pooledSearchResultsAreOnlyServedToUsersWhoHaventSeenThem() {
+		RecipeSearchPool pool = pool(500, 20000, 1000);
+		RecipeSearchRequest request = new RecipeSearchRequest();
+		request.setDiet(" Vegan");
+		request.setCuisine("any");
+		String key = RecipeSearchPool.key(request);
+		pool.add(key, "pool-a", recipes("Recipe", 8));
+
+		// The user the results were generated for has seen them all
+		assertNull(pool.take(key, "pool-a", 8, 10));
+
+		List<Recipe> served = pool.take(key, "pool-b", 8, 10);
+		assertNotNull(served);
+		assertEquals(8, served.size());
+		assertEquals("Recipe 8", served.get(0).getTitle());
+		assertNull(pool.take(key, "pool-b", 8, 10));
+
+		// Same filters in another spelling share the pool, a free-text query never uses it
+		RecipeSearchRequest sameFilters = new RecipeSearchRequest();
+		sameFilters.setDiet("vegan");
+		assertEquals(key, RecipeSearchPool.key(sameFilters));
+		sameFilters.setQuery("curry");
+		assertNull(RecipeSearchPool.key(sameFilters));
+	}
+
+	@Test
+	void refillDependsOnThePoolsSizeAndAgeNotOnWhoIsServed() throws Exception {
+		RecipeSearchPool pool = pool(500, 20000, 1000);
+		ReflectionTestUtils.setField(pool, "lowWatermark", 10);
+		pool.add("k", "u1", recipes("Recipe", 8));
+		assertTrue(pool.needsRefill("k"));
+
+		pool.add("k", null, recipes("More", 8));
+		// u1 has seen half the pool and u2 none of it; neither changes the answer
+		assertFalse(pool.needsRefill("k"));
+		assertNotNull(pool.take("k", "u2", 8, 10));
+		assertFalse(pool.needsRefill("k"));
+		assertFalse(pool.needsRefill("missing"));
+
+		ReflectionTestUtils.setField(pool, "maxAgeMs", 0L);
+		Thread.sleep(5);
+		assertTrue(pool.needsRefill("k"));
+	}
+
+	@Test
+	void onlyOneRefillPerPoolAndNoMoreThanTheBudget() {
+		RecipeSearchPool pool = pool(500, 20000, 1000);
+		assertTrue(pool.startRefill("a"));
+		assertFalse(pool.startRefill("a"));
+		assertTrue(pool.startRefill("b"));
+		assertFalse(pool.startRefill("c")); // max-refills is 2
+		pool.endRefill("a");
+		assertTrue(pool.startRefill("c"));
+	}
+
+	@Test
+	void leastRecentlyUsedPoolIsEvicted() {
+		RecipeSearchPool pool = pool(2, 20000, 1000);
+		pool.add("a", null, recipes("A", 8));
+		pool.add("b", null, recipes("B", 8));
+		assertNotNull(pool.take("a", "u1", 1, 1)); // b is now the eldest
+		pool.add("c", null, recipes("C", 8));
+
+		assertEquals(16, pool.size());
+		assertNull(pool.take("b", "u1", 1, 10));
+		assertNotNull(pool.take("a", "u2", 1, 10));
+		assertNotNull(pool.take("c", "u2", 1, 10));
+	}
+
+	@Test
+	void leastRecentlyUsedSeenSetIsEvicted() {
+		RecipeSearchPool pool = pool(500, 2, 1000);
+		pool.add("k", "u1", recipes("Recipe", 8));
+		assertNotNull(pool.take("k", "u2", 8, 10));
+		assertNotNull(pool.take("k", "u3", 8, 10)); // u1's seen-set was the eldest of three
+
+		// u1 no longer has a seen-set, so everything looks unseen again
+		assertNotNull(pool.take("k", "u1", 8, 10));
+	}
+
+	@Test
+	void aFullSeenSetStartsOver() {
+		RecipeSearchPool pool = pool(500, 20000, 9);
+		pool.add("k", "u1", recipes("Recipe", 8));
+		assertNull(pool.take("k", "u1", 1, 10));
+
+		// The ninth recipe fills u1's seen-set; past capacity it is replaced by an empty one
+		pool.add("k", "u1", recipes("Extra", 1));
+		List<Recipe> served = pool.take("k", "u1", 8, 10);
+		assertNotNull(served);
+		assertEquals(9, served.size());
+	}
+
+	private static RecipeSearchPool pool(int maxPools, int maxUsers, int seenCapacity) {
+		RecipeSearchPool pool = new RecipeSearchPool();
+		ReflectionTestUtils.setField(pool, "maxPools", maxPools);
+		ReflectionTestUtils.setField(pool, "maxRecipesPerPool", 200);
+		ReflectionTestUtils.setField(pool, "lowWatermark", 20);
+		ReflectionTestUtils.setField(pool, "maxAgeMs", 86400000L);
+		ReflectionTestUtils.setField(pool, "maxUsers", maxUsers);
+		ReflectionTestUtils.setField(pool, "seenCapacity", seenCapacity);
+		ReflectionTestUtils.setField(pool, "seenFpp", 0.01);
+		ReflectionTestUtils.setField(pool, "maxRefills", 2);
+		ReflectionTestUtils.invokeMethod(pool, "init");
+		return pool;
+	}
+
+	private static List<Recipe> recipes(String prefix, int count) {
+		List<Recipe> recipes = new ArrayList<>();
+		for (int i = 1; i <= count; i++) {
+			Recipe recipe = new Recipe();
+			recipe.setTitle(prefix + " " + i);
+			recipes.add(recipe);
+		}
+		return recipes;
+	}
+}
@@ -0,0 +1,78 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The HNSW graph finds (almost always) the same nearest recipe as a brute-force cosine scan.
+class RecipeVectorIndexTests {
+
+	private static final String[] VOCABULARY = {
+			"rice", "basmati", "onion", "shallot", "tomato", "garlic", "ginger", "chicken", "paneer", "potato",
+			"peas", "cumin", "turmeric", "coriander", "chili", "butter", "egg", "flour", "milk", "sugar",
+			"lentil", "spinach", "cauliflower", "mustard", "yogurt", "cardamom", "cinnamon", "lamb", "prawn", "coconut"
+	};
+
+	@Test
+	void nearestMatchesBruteForceOnAFixedSet() {
+		Random random = new Random(11);
+		RecipeVectorIndex index = new RecipeVectorIndex();
+		List<RecipeVectorIndex.SparseVector> vectors = new ArrayList<>();
+		for (int id = 1; id <= 2000; id++) {
+			List<String> tokens = randomTokens(random, 3 + random.nextInt(6));
+			vectors.add(RecipeVectorIndex.encode(tokens));
+			index.add(id, tokens);
+		}
+		assertEquals(2000, index.size());
+		assertEquals(2000, index.getHighWaterMark());
+
+		int queries = 200;
+		int found = 0;
+		for (int q = 0; q < queries; q++) {
+			List<String> tokens = randomTokens(random, 2 + random.nextInt(5));
+			RecipeVectorIndex.SparseVector query = RecipeVectorIndex.encode(tokens);
+			double best = -1;
+			for (RecipeVectorIndex.SparseVector vector : vectors) {
+				best = Math.max(best, query.dot(vector));
+			}
+
+			RecipeVectorIndex.Match match = index.nearest(tokens);
+			assertNotNull(match);
+			assertEquals(query.dot(vectors.get((int) match.getLogId() - 1)), match.getSimilarity(), 1e-6);
+			if (match.getSimilarity() >= best - 1e-6) {
+				found++;
+			}
+		}
+		assertTrue(found >= queries * 0.95, "recall@1 " + found + "/" + queries);
+	}
+
+	@Test
+	void exactIngredientSetIsItsOwnNearest() {
+		RecipeVectorIndex index = new RecipeVectorIndex();
+		index.add(1, List.of("rice", "onion", "peas"));
+		index.add(2, List.of("chicken", "garlic", "ginger"));
+		RecipeVectorIndex.Match match = index.nearest(List.of("peas", "onion", "rice"));
+		assertEquals(1, match.getLogId());
+		assertEquals(1.0, match.getSimilarity(), 1e-6);
+	}
+
+	@Test
+	void emptyIndexHasNoMatch() {
+		assertNull(new RecipeVectorIndex().nearest(List.of("rice")));
+	}
+
+	private static List<String> randomTokens(Random random, int count) {
+		List<String> tokens = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			tokens.add(VOCABULARY[random.nextInt(VOCABULARY.length)]);
+		}
+		return tokens;
+	}
+}
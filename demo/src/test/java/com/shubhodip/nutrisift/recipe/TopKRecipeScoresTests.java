@@ -0,0 +1,60 @@
+package com.shubhodip.nutrisift.recipe;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+// The bounded heap keeps exactly the K best scores, returns them best first and stops a scan at K perfect matches.
+class TopKRecipeScoresTests {
+
+	@Test
+	void keepsTheKBestScoresInOrder() {
+		Random random = new Random(7);
+		List<double[]> offered = new ArrayList<>();
+		TopKRecipeScores topK = new TopKRecipeScores(10);
+		for (long id = 1; id <= 1000; id++) {
+			// Distinct scores so the expected order is unambiguous
+			double score = random.nextDouble() * 0.99 + id * 1e-9;
+			offered.add(new double[] { id, score });
+			topK.offer(id, score);
+		}
+
+		offered.sort(Comparator.comparingDouble((double[] entry) -> entry[1]).reversed());
+		List<Long> expected = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			expected.add((long) offered.get(i)[0]);
+		}
+		assertEquals(expected, topK.logIdsByScore());
+		assertEquals(offered.get(9)[1], topK.minScore());
+	}
+
+	@Test
+	void rejectsCandidatesNoBetterThanTheWorstHeld() {
+		TopKRecipeScores topK = new TopKRecipeScores(2);
+		assertTrue(topK.isEmpty());
+		assertTrue(topK.offer(1, 0.9));
+		assertTrue(topK.offer(2, 0.85));
+		assertFalse(topK.offer(3, 0.85)); // Ties keep the earlier candidate
+		assertTrue(topK.offer(4, 0.95));
+		assertEquals(List.of(4L, 1L), topK.logIdsByScore());
+		assertEquals(2, topK.size());
+	}
+
+	@Test
+	void saturatesOnceKPerfectMatchesAreHeld() {
+		TopKRecipeScores topK = new TopKRecipeScores(3);
+		topK.offer(1, 0.9);
+		topK.offer(2, 1.0);
+		topK.offer(3, 1.0);
+		assertFalse(topK.isSaturated());
+		topK.offer(4, 1.0); // Displaces 0.9
+		assertTrue(topK.isSaturated());
+	}
+}